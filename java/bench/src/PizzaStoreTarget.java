@@ -0,0 +1,182 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import pizzastore.bench.Target;
+
+/**
+ * This class gives the benchmarks of pizzastore.bench access to the store
+ * (see Target).
+ *
+ */
+public class PizzaStoreTarget implements Target {
+
+   // scripts of sql/src bundled into the benchmark jar, in the order they run.
+   private static final String[] SCHEMA = { "create_tables.sql", "create_indexes.sql", "triggers.sql" };
+
+   private PizzaStore _esql = null;
+
+   public void connect(String dbname, String port, String user) throws SQLException {
+      this._esql = new PizzaStore(dbname, port, user, "");
+   }//end connect
+
+   public void populate(String dbname, String port, String user, long orders) throws SQLException, IOException {
+      String url = PizzaStore.connectionURL(dbname, port);
+      Connection conn = DriverManager.getConnection(url, user, "");
+      try {
+         Statement stmt = conn.createStatement();
+         for (String script : SCHEMA) {
+            stmt.execute(new String(resource(script), StandardCharsets.UTF_8));
+         }//end for
+         stmt.close();
+      }finally {
+         conn.close();
+      }//end try
+
+      // DataGenerator reads the menu from a file
+      File items = File.createTempFile("items", ".csv");
+      items.deleteOnExit();
+      OutputStream out = new FileOutputStream(items);
+      try {
+         out.write(resource("items.csv"));
+      }finally {
+         out.close();
+      }//end try
+
+      DataGenerator generator = new DataGenerator(DataGenerator.DEFAULT_SEED, orders, DataGenerator.defaultUsers(orders),
+                                                  DataGenerator.DEFAULT_STORES, DataGenerator.DEFAULT_DAYS,
+                                                  LocalDate.parse(DataGenerator.DEFAULT_START), items);
+      ConnectionPool pool = new ConnectionPool(url, user, "", 1, BulkLoader.DEFAULT_THREADS + 1);
+      try {
+         pool.setLeakThresholdMillis(Long.MAX_VALUE / 2);
+         new BulkLoader(pool, BulkLoader.DEFAULT_BATCH_ROWS, BulkLoader.DEFAULT_THREADS).load(generator);
+         // the bulk load bypasses commitOrder, which keeps the rollups
+         SalesAnalytics.backfill(new PizzaStore(pool));
+      }finally {
+         pool.close();
+      }//end try
+   }//end populate
+
+   private static byte[] resource(String name) throws IOException {
+      InputStream in = PizzaStoreTarget.class.getResourceAsStream("/pizzastore/bench/" + name);
+      if (in == null) {
+         throw new IOException("Missing resource " + name);
+      }//end if
+      try {
+         ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+         byte[] buffer = new byte[8192];
+         for (int n; (n = in.read(buffer)) > 0; ) {
+            bytes.write(buffer, 0, n);
+         }//end for
+         return bytes.toByteArray();
+      }finally {
+         in.close();
+      }//end try
+   }//end resource
+
+   public int executeQuery(String query, Object... params) throws SQLException {
+      return this._esql.executeQuery(query, params);
+   }//end executeQuery
+
+   public boolean executeExists(String query, Object... params) throws SQLException {
+      return this._esql.executeExists(query, params);
+   }//end executeExists
+
+   public List<List<String>> executeQueryAndReturnResult(String query, Object... params) throws SQLException {
+      return this._esql.executeQueryAndReturnResult(query, params);
+   }//end executeQueryAndReturnResult
+
+   public int executeQueryAndPrintResult(String query, Object... params) throws SQLException {
+      return this._esql.executeQueryAndPrintResult(query, params);
+   }//end executeQueryAndPrintResult
+
+   public List<?> menuOfType(String typeOfItem) throws SQLException {
+      return this._esql.getMenuCatalog().snapshot().ofType(typeOfItem);
+   }//end menuOfType
+
+   public List<?> menuAtMost(BigDecimal price) throws SQLException {
+      return this._esql.getMenuCatalog().snapshot().atMost(price);
+   }//end menuAtMost
+
+   public List<?> findStores(String city, String state, double minScore, int limit) throws SQLException {
+      return this._esql.getStoreLocator().search(city, state, true, minScore, limit);
+   }//end findStores
+
+   public int placeOrder(String login, int storeID, Map<String, Integer> quantities) throws SQLException {
+      return this._esql.commitOrder(login, storeID, quantities).getOrderID();
+   }//end placeOrder
+
+   public boolean login(String login, String password) throws SQLException {
+      try {
+         return UserProfile.authenticate(this._esql, login, password) != null;
+      }catch (LoginRateLimiter.Throttled e) {
+         throw new SQLException(e.getMessage());
+      }catch (Credentials.Busy e) {
+         throw new SQLException(e.getMessage());
+      }//end try
+   }//end login
+
+   public void setPassword(String login, String password) throws SQLException {
+      try {
+         UserProfile.changePassword(this._esql, login, password);
+      }catch (Credentials.Busy e) {
+         throw new SQLException(e.getMessage());
+      }//end try
+   }//end setPassword
+
+   public int orderHistory(String login, int pages) throws SQLException {
+      OrderHistoryPager pager = new OrderHistoryPager(this._esql, login, OrderHistoryPager.DEFAULT_PAGE_SIZE);
+      int orders = pager.first().size();
+      for (int page = 1; page < pages && pager.hasNext(); ++page) {
+         orders += pager.next().size();
+      }//end for
+      return orders;
+   }//end orderHistory
+
+   public int orderDetail(int orderID) throws SQLException {
+      OrderDetail order = this._esql.getOrderDetails().get(orderID);
+      return order == null ? 0 : order.getLines().size();
+   }//end orderDetail
+
+   public long printTable(OutputStream out, String format, String[] header, String[][] rows, int count) {
+      TablePrinter printer = new TablePrinter(out, TablePrinter.Format.valueOf(format), TablePrinter.DEFAULT_PAGE_SIZE);
+      printer.setHeader(header);
+      for (int r = 0; r < count; ++r) {
+         printer.add(rows[r % rows.length]);
+      }//end for
+      return printer.finish();
+   }//end printTable
+
+   public void close() {
+      if (this._esql != null) {
+         this._esql.cleanup();
+         this._esql = null;
+      }//end if
+   }//end close
+
+}//end PizzaStoreTarget
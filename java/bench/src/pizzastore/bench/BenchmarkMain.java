@@ -0,0 +1,64 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+package pizzastore.bench;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the usual JMH command line options, always with
+ * the GC profiler so every result comes with its allocation rate. Keep a
+ * baseline with "-rf json -rff baseline.json" and compare against it before
+ * deploying.
+ *
+ * With -Dpizzastore.bench.embedded=true the benchmarks run against a
+ * throwaway Postgres started here instead of a local server: the schema of
+ * sql/src is created and pizzastore.bench.orders generated orders are
+ * loaded before the first fork starts.
+ *
+ */
+public class BenchmarkMain {
+
+   public static final boolean EMBEDDED = Boolean.getBoolean("pizzastore.bench.embedded");
+
+   // orders generated into the embedded database.
+   public static final long ORDERS = Long.getLong("pizzastore.bench.orders", 100000L);
+
+   public static void main(String[] args) throws Exception {
+      ChainedOptionsBuilder options = new OptionsBuilder()
+         .parent(new CommandLineOptions(args))
+         .addProfiler(GCProfiler.class);
+      if (!EMBEDDED) {
+         new Runner(options.build()).run();
+         return;
+      }//end if
+
+      EmbeddedPostgres server = EmbeddedPostgres.builder().start();
+      try {
+         String port = Integer.toString(server.getPort());
+         Target.create().populate("postgres", port, "postgres", ORDERS);
+         // the forks read their connection settings from these
+         options.jvmArgsAppend("-Dpizzastore.bench.db=postgres", "-Dpizzastore.bench.port=" + port,
+                               "-Dpizzastore.bench.user=postgres");
+         new Runner(options.build()).run();
+      }finally {
+         server.close();
+      }//end try
+   }//end main
+
+}//end BenchmarkMain
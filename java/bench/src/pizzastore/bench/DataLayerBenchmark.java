@@ -0,0 +1,155 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+package pizzastore.bench;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the data-layer calls behind the console menus, each with the
+ * query the menu actually runs. Throughput gives operations per ms and
+ * SampleTime the latency distribution (p50, p90, p99, ...); BenchmarkMain
+ * adds the allocation rate (gc.alloc.rate.norm is bytes per operation).
+ *
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DataLayerBenchmark {
+
+   // the role test of viewAllOrders, viewRecentOrders and viewOrderInfo.
+   static final String IS_CUSTOMER =
+      "SELECT * FROM Users WHERE role = 'customer' and login = ?";
+
+   // the role lookup after logging in.
+   static final String ROLE =
+      "SELECT role FROM Users WHERE login = ?";
+
+   // viewStores.
+   static final String STORES =
+      "SELECT address, city, state, storeID, reviewScore, isOpen FROM Store";
+
+   // the store search of placeOrder and viewStores run in SQL, on storeLocationIndex.
+   static final String STORE_SEARCH =
+      "SELECT storeID, address, city, state, isOpen, reviewScore FROM Store " +
+      "WHERE lower(state) = lower(?) AND lower(city) = lower(?) AND isOpen = 'yes' AND reviewScore >= ? " +
+      "ORDER BY reviewScore DESC, storeID LIMIT 10";
+
+   // LogIn: the profile whose password hash is then verified (see LoginBenchmark).
+   static final String LOGIN =
+      "SELECT login, password, phoneNum, role FROM Users WHERE login = ?";
+
+   // viewOrderInfo before OrderDetail.
+   static final String ORDER_HEADER =
+      "SELECT orderTimestamp, totalPrice, orderStatus FROM FoodOrder F WHERE orderID = ?";
+   static final String ORDER_ITEMS =
+      "SELECT I.itemName, O.quantity FROM ItemsInOrder O JOIN Items I ON I.itemID = O.itemID WHERE orderID = ?";
+
+   @Benchmark
+   public int executeQuery(StoreState store) throws SQLException {
+      return store.target.executeQuery(IS_CUSTOMER, store.anyCredentials()[0]);
+   }//end executeQuery
+
+   @Benchmark
+   public boolean executeExists(StoreState store) throws SQLException {
+      return store.target.executeExists(IS_CUSTOMER, store.anyCredentials()[0]);
+   }//end executeExists
+
+   @Benchmark
+   public List<List<String>> executeQueryAndReturnResult(StoreState store) throws SQLException {
+      return store.target.executeQueryAndReturnResult(ROLE, store.anyCredentials()[0]);
+   }//end executeQueryAndReturnResult
+
+   @Benchmark
+   public int executeQueryAndPrintResult(StoreState store) throws SQLException {
+      return store.target.executeQueryAndPrintResult(STORES);
+   }//end executeQueryAndPrintResult
+
+   @Benchmark
+   public List<List<String>> loginLookup(StoreState store) throws SQLException {
+      return store.target.executeQueryAndReturnResult(LOGIN, store.anyCredentials()[0]);
+   }//end loginLookup
+
+   @Benchmark
+   public int orderHistory(StoreState store) throws SQLException {
+      // viewAllOrders: the newest three pages
+      return store.target.orderHistory(store.anyCredentials()[0], 3);
+   }//end orderHistory
+
+   @Benchmark
+   public int orderDetail(StoreState store) throws SQLException {
+      return store.target.orderDetail(store.anyOrderID());
+   }//end orderDetail
+
+   @Benchmark
+   public int orderDetailTwoQueries(StoreState store) throws SQLException {
+      // what viewOrderInfo ran before OrderDetail: the order, then its items
+      int orderID = store.anyOrderID();
+      store.target.executeQueryAndReturnResult(ORDER_HEADER, orderID);
+      return store.target.executeQueryAndReturnResult(ORDER_ITEMS, orderID).size();
+   }//end orderDetailTwoQueries
+
+   @Benchmark
+   @OutputTimeUnit(TimeUnit.MICROSECONDS)
+   public void menuFilter(StoreState store, Blackhole bh) throws SQLException {
+      bh.consume(store.target.menuOfType("entree"));
+      bh.consume(store.target.menuAtMost(BigDecimal.valueOf(ThreadLocalRandom.current().nextInt(200, 1300), 2)));
+   }//end menuFilter
+
+   @Benchmark
+   @OutputTimeUnit(TimeUnit.MICROSECONDS)
+   public void storeSearch(StoreState store, Blackhole bh) throws SQLException {
+      // placeOrder: the best open stores of a city, then of a state
+      String minScore = minScore();
+      bh.consume(store.target.findStores("Denver", "Colorado", Double.parseDouble(minScore), 10));
+      bh.consume(store.target.findStores(null, "California", Double.parseDouble(minScore), 10));
+   }//end storeSearch
+
+   @Benchmark
+   @OutputTimeUnit(TimeUnit.MICROSECONDS)
+   public List<List<String>> storeSearchQuery(StoreState store) throws SQLException {
+      return store.target.executeQueryAndReturnResult(STORE_SEARCH, "Colorado", "Denver", minScore());
+   }//end storeSearchQuery
+
+   private static String minScore() {
+      return Integer.toString(1 + ThreadLocalRandom.current().nextInt(4));
+   }//end minScore
+
+   @Benchmark
+   public int placeOrder(StoreState store) throws SQLException {
+      Map<String, Integer> quantities = new LinkedHashMap<String, Integer>();
+      int lines = 1 + ThreadLocalRandom.current().nextInt(3);
+      for (int i = 0; i < lines; ++i) {
+         quantities.put(store.anyItemName(), 1 + ThreadLocalRandom.current().nextInt(2));
+      }//end for
+      String[] credentials = store.anyCredentials();
+      return store.target.placeOrder(credentials[0], store.anyStoreID(), quantities);
+   }//end placeOrder
+
+}//end DataLayerBenchmark
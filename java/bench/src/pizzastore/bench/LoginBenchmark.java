@@ -0,0 +1,86 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+package pizzastore.bench;
+
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures LogIn, the profile read plus the password verification on the
+ * Credentials pool, from several sessions at once: the throughput is the
+ * logins per second the store sustains. Run it with different
+ * -Dpizzastore.auth.iterations and -Dpizzastore.auth.threads to size the
+ * work factor and the pool, and with -t for the number of sessions.
+ *
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Threads(8)
+@Fork(1)
+public class LoginBenchmark {
+
+   // users given a known password; few, because setting one costs a hash.
+   static final int USERS = Integer.getInteger("pizzastore.bench.loginUsers", 32);
+
+   /**
+    * Gives the first USERS sampled logins the password "bench-" + login,
+    * hashed with the current work factor.
+    */
+   @State(Scope.Benchmark)
+   public static class Logins {
+      String[] logins;
+
+      @Setup(Level.Trial)
+      public void open(StoreState store) throws SQLException {
+         this.logins = new String[Math.min(USERS, store.credentials.length)];
+         for (int i = 0; i < this.logins.length; ++i) {
+            this.logins[i] = store.credentials[i][0];
+            store.target.setPassword(this.logins[i], password(this.logins[i]));
+         }//end for
+      }//end open
+
+      String anyLogin() {
+         return this.logins[ThreadLocalRandom.current().nextInt(this.logins.length)];
+      }//end anyLogin
+   }//end Logins
+
+   static String password(String login) {
+      return "bench-" + login;
+   }//end password
+
+   @Benchmark
+   public boolean login(StoreState store, Logins logins) throws SQLException {
+      String login = logins.anyLogin();
+      if (!store.target.login(login, password(login))) {
+         throw new IllegalStateException("Login failed for " + login);
+      }//end if
+      return true;
+   }//end login
+
+}//end LoginBenchmark
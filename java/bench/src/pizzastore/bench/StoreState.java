@@ -0,0 +1,122 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+package pizzastore.bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * A store connected to the benchmark database, plus a sample of its logins,
+ * stores and items to draw parameters from. The database must already hold
+ * data, loaded with BulkLoader or DataGenerator; placeOrder adds orders to
+ * it, so use a database of its own.
+ *
+ * Connection settings: pizzastore.bench.db, pizzastore.bench.port and
+ * pizzastore.bench.user (default: the course database of the current user).
+ *
+ */
+@State(Scope.Benchmark)
+public class StoreState {
+
+   public static final String DB =
+      System.getProperty("pizzastore.bench.db", System.getProperty("user.name") + "_project_phase_3_DB");
+   public static final String PORT =
+      System.getProperty("pizzastore.bench.port", System.getenv("PGPORT") != null ? System.getenv("PGPORT") : "5432");
+   public static final String USER =
+      System.getProperty("pizzastore.bench.user", System.getProperty("user.name"));
+
+   Target target;
+
+   // login and password of the sampled users.
+   String[][] credentials;
+   int[] storeIDs;
+   String[] itemNames;
+   int maxOrderID;
+
+   private PrintStream _stdout;
+
+   @Setup(Level.Trial)
+   public void open() throws Exception {
+      this._stdout = System.out;
+      // the store reports on System.out; keep that out of the results
+      System.setOut(new PrintStream(new NullOutputStream()));
+      this.target = Target.create();
+      this.target.connect(DB, PORT, USER);
+
+      List<List<String>> users = this.target.executeQueryAndReturnResult(
+         "SELECT login, password FROM Users ORDER BY login LIMIT 1000");
+      List<List<String>> stores = this.target.executeQueryAndReturnResult(
+         "SELECT storeID FROM Store ORDER BY storeID LIMIT 1000");
+      List<List<String>> items = this.target.executeQueryAndReturnResult(
+         "SELECT itemName FROM Items");
+      if (users.isEmpty() || stores.isEmpty() || items.isEmpty()) {
+         throw new IllegalStateException("No data in " + DB + ": load it with BulkLoader or DataGenerator first");
+      }//end if
+
+      this.credentials = new String[users.size()][];
+      for (int i = 0; i < this.credentials.length; ++i) {
+         this.credentials[i] = new String[] { users.get(i).get(0), users.get(i).get(1) };
+      }//end for
+      this.storeIDs = new int[stores.size()];
+      for (int i = 0; i < this.storeIDs.length; ++i) {
+         this.storeIDs[i] = Integer.parseInt(stores.get(i).get(0).trim());
+      }//end for
+      String maxOrderID = this.target.executeQueryAndReturnResult("SELECT max(orderID) FROM FoodOrder").get(0).get(0);
+      this.maxOrderID = maxOrderID == null ? 0 : Integer.parseInt(maxOrderID.trim());
+      this.itemNames = new String[items.size()];
+      for (int i = 0; i < this.itemNames.length; ++i) {
+         this.itemNames[i] = items.get(i).get(0);
+      }//end for
+   }//end open
+
+   @TearDown(Level.Trial)
+   public void close() {
+      if (this.target != null) {
+         this.target.close();
+      }//end if
+      System.setOut(this._stdout);
+   }//end close
+
+   String[] anyCredentials() {
+      return this.credentials[ThreadLocalRandom.current().nextInt(this.credentials.length)];
+   }//end anyCredentials
+
+   int anyStoreID() {
+      return this.storeIDs[ThreadLocalRandom.current().nextInt(this.storeIDs.length)];
+   }//end anyStoreID
+
+   int anyOrderID() {
+      return 1 + ThreadLocalRandom.current().nextInt(Math.max(this.maxOrderID, 1));
+   }//end anyOrderID
+
+   String anyItemName() {
+      return this.itemNames[ThreadLocalRandom.current().nextInt(this.itemNames.length)];
+   }//end anyItemName
+
+   private static final class NullOutputStream extends OutputStream {
+      @Override
+      public void write(int b) { }
+
+      @Override
+      public void write(byte[] b, int off, int len) { }
+   }//end NullOutputStream
+
+}//end StoreState
@@ -0,0 +1,104 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+package pizzastore.bench;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the throughput of the original per-cell System.out.print loop of
+ * executeQueryAndPrintResult (LEGACY) with TablePrinter, on rows shaped like
+ * the viewStores result. Output goes to /dev/null through a stream
+ * configured like System.out (128 byte buffer, flush on newline), so the
+ * numbers reflect the console write path without a terminal in the way.
+ * Results are in rows per second; no database is needed.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TablePrinterBenchmark {
+
+   private static final String[] HEADER = { "address", "city", "state", "storeid", "reviewscore", "isopen" };
+
+   // rows printed per operation.
+   private static final int ROWS = 10000;
+
+   @Param({"LEGACY", "ALIGNED", "TSV", "CSV"})
+   public String format;
+
+   private String[][] _data;
+   private Target _target;
+   private PrintStream _out;
+
+   @Setup(Level.Trial)
+   public void setup() throws Exception {
+      this._data = new String[1000][];
+      for (int i = 0; i < this._data.length; ++i) {
+         this._data[i] = new String[] { (i * 37 % 9000) + " Hallows Center", "San Diego", "California",
+                                        Integer.toString(i + 1), Integer.toString(i % 5), i % 3 == 0 ? "no" : "yes" };
+      }//end for
+      this._target = Target.create();
+      File sink = new File("/dev/null").exists() ? new File("/dev/null") : File.createTempFile("bench", ".txt");
+      this._out = new PrintStream(new BufferedOutputStream(new FileOutputStream(sink), 128), true);
+   }//end setup
+
+   @TearDown(Level.Trial)
+   public void tearDown() throws IOException {
+      this._out.close();
+   }//end tearDown
+
+   @Benchmark
+   @OperationsPerInvocation(ROWS)
+   public long print() {
+      if (!this.format.equals("LEGACY")) {
+         return this._target.printTable(this._out, this.format, HEADER, this._data, ROWS);
+      }//end if
+      // the loop executeQueryAndPrintResult used before TablePrinter
+      PrintStream out = this._out;
+      for (int i = 0; i < HEADER.length; i++) {
+         out.print(HEADER[i] + "\t");
+      }//end for
+      out.println();
+      for (int r = 0; r < ROWS; ++r) {
+         String[] row = this._data[r % this._data.length];
+         for (int i = 0; i < row.length; ++i)
+            out.print(row[i] + "\t");
+         out.println();
+      }//end for
+      return ROWS;
+   }//end print
+
+}//end TablePrinterBenchmark
@@ -0,0 +1,80 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+package pizzastore.bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The calls the benchmarks measure. The store's classes live in the unnamed
+ * package, which code in a named package cannot refer to, while JMH refuses
+ * benchmarks in the unnamed package. PizzaStoreTarget, in the unnamed
+ * package, implements this interface and is looked up by name once per
+ * trial, so every measured call is a plain interface call.
+ *
+ */
+public interface Target {
+
+   /**
+    * Creates an unconnected PizzaStoreTarget.
+    */
+   static Target create() throws ReflectiveOperationException {
+      return (Target) Class.forName("PizzaStoreTarget").getDeclaredConstructor().newInstance();
+   }//end create
+
+   void connect(String dbname, String port, String user) throws SQLException;
+
+   // creates the schema in an empty database and loads DataGenerator data into it.
+   void populate(String dbname, String port, String user, long orders) throws SQLException, IOException;
+
+   int executeQuery(String query, Object... params) throws SQLException;
+
+   boolean executeExists(String query, Object... params) throws SQLException;
+
+   List<List<String>> executeQueryAndReturnResult(String query, Object... params) throws SQLException;
+
+   // prints to System.out.
+   int executeQueryAndPrintResult(String query, Object... params) throws SQLException;
+
+   // the in-memory menu.
+   List<?> menuOfType(String typeOfItem) throws SQLException;
+   List<?> menuAtMost(BigDecimal price) throws SQLException;
+
+   // the in-memory store search: the best reviewed open stores of a place.
+   List<?> findStores(String city, String state, double minScore, int limit) throws SQLException;
+
+   // LogIn: verifies a password; false when it does not match.
+   boolean login(String login, String password) throws SQLException;
+
+   // stores a password, hashed with the current work factor.
+   void setPassword(String login, String password) throws SQLException;
+
+   // commits an order and returns its orderID.
+   int placeOrder(String login, int storeID, Map<String, Integer> quantities) throws SQLException;
+
+   // reads the newest pages of a login's order history; returns the number of orders read.
+   int orderHistory(String login, int pages) throws SQLException;
+
+   // viewOrderInfo: reads an order with its lines; returns the number of lines.
+   int orderDetail(int orderID) throws SQLException;
+
+   // prints count rows, cycling through rows, with a TablePrinter of the given format.
+   long printTable(OutputStream out, String format, String[] header, String[][] rows, int count);
+
+   void close();
+
+}//end Target
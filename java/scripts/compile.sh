@@ -3,9 +3,44 @@ DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
 
 
 # compile the java program
-javac -d $DIR/../classes $DIR/../src/PizzaStore.java
+javac -d $DIR/../classes -cp $DIR/../lib/postgresql-42.7.4.jar -sourcepath $DIR/../src $DIR/../src/PizzaStore.java $DIR/../src/BulkLoader.java $DIR/../src/DataGenerator.java $DIR/../src/Credentials.java $DIR/../src/SalesAnalytics.java $DIR/../src/ReportEngine.java
 
 #run the java program
 #Use your database name, port number and login
-java -cp $DIR/../classes:$DIR/../lib/pg73jdbc3.jar PizzaStore $USER"_project_phase_3_DB" $PGPORT $USER
+java -cp $DIR/../classes:$DIR/../lib/postgresql-42.7.4.jar PizzaStore $USER"_project_phase_3_DB" $PGPORT $USER
 
+#To serve many terminals from one process, append a local port to listen on
+#and connect each terminal with e.g. "nc localhost 5400"
+#java -cp $DIR/../classes:$DIR/../lib/postgresql-42.7.4.jar PizzaStore $USER"_project_phase_3_DB" $PGPORT $USER 5400
+
+#To load the csv files from the client side instead of sql/src/load_data.sql
+#(add -Dpizzastore.load.truncate=true to replace the current rows)
+#java -cp $DIR/../classes:$DIR/../lib/postgresql-42.7.4.jar BulkLoader $USER"_project_phase_3_DB" $PGPORT $USER $DIR/../../data
+
+#To generate a synthetic data set (here 1000000 orders) as csv files, or
+#streamed straight into the database (this replaces the current rows)
+#java -cp $DIR/../classes:$DIR/../lib/postgresql-42.7.4.jar -Dpizzastore.gen.items=$DIR/../../data/items.csv DataGenerator 1000000 /tmp/pizzastore_data
+#java -cp $DIR/../classes:$DIR/../lib/postgresql-42.7.4.jar -Dpizzastore.gen.items=$DIR/../../data/items.csv DataGenerator 1000000 $USER"_project_phase_3_DB" $PGPORT $USER
+
+#To hash the passwords of an existing database at once (they are otherwise
+#hashed on each user's next login); widens Users.password first
+#java -cp $DIR/../classes:$DIR/../lib/postgresql-42.7.4.jar Credentials $USER"_project_phase_3_DB" $PGPORT $USER
+
+#To rebuild the sales rollups from the order history, e.g. after a bulk load
+#java -cp $DIR/../classes:$DIR/../lib/postgresql-42.7.4.jar SalesAnalytics $USER"_project_phase_3_DB" $PGPORT $USER
+
+#To time a report over the whole order history in parallel against one thread
+#(revenueByState, basketSize or itemPairs)
+#java -cp $DIR/../classes:$DIR/../lib/postgresql-42.7.4.jar -Dpizzastore.reports.parallelism=4 ReportEngine $USER"_project_phase_3_DB" $PGPORT $USER itemPairs
+
+#To serve the query metrics in the Prometheus text format at
+#http://localhost:9464/metrics and log the queries slower than 100 ms
+#java -cp $DIR/../classes:$DIR/../lib/postgresql-42.7.4.jar -Dpizzastore.metrics.port=9464 -Dpizzastore.metrics.slowMillis=100 PizzaStore $USER"_project_phase_3_DB" $PGPORT $USER
+
+#To give the menu items of a database created before itemIDs their itemID
+#(run once; it changes nothing when the database already has them)
+#psql -d $USER"_project_phase_3_DB" -p $PGPORT -f $DIR/../../sql/src/migrate_item_ids.sql
+
+#To add the FavoriteItems table to a database created before it and import
+#the favoriteItems text of every user (can run again)
+#psql -d $USER"_project_phase_3_DB" -p $PGPORT -f $DIR/../../sql/src/migrate_favorites.sql
@@ -0,0 +1,676 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+/**
+ * This class loads the CSV files of the data directory into the database
+ * from the client side, so it works against a server that cannot read the
+ * files itself. Each file is streamed through one COPY FROM STDIN, a batch
+ * of rows at a time; tables that do not reference each other are loaded in
+ * parallel, each on its own pooled connection and in its own transaction.
+ * Secondary indexes are dropped before the load and rebuilt once at the end.
+ *
+ */
+public class BulkLoader {
+
+   // rows encoded and sent to COPY at a time.
+   public static final int DEFAULT_BATCH_ROWS =
+      Integer.getInteger("pizzastore.load.batchRows", 50000);
+
+   // tables loaded at the same time.
+   public static final int DEFAULT_THREADS =
+      Integer.getInteger("pizzastore.load.threads", 3);
+
+   // interval between progress lines.
+   public static final long PROGRESS_MILLIS =
+      Long.getLong("pizzastore.load.progressMillis", 1000L);
+
+   /*
+    * A table, the file it is loaded from and the tables it references. The
+    * rows of a table are only checked against committed parent rows, so a
+    * table is loaded once all of its parents are done.
+    **/
+   private static class Table {
+      final String name;
+      final String file;
+      final String[] parents;
+      // a trigger disabled while loading, or null: mytrigger would renumber
+      // the orders. The other triggers still fire and notify as usual.
+      final String disableTrigger;
+      // sequence moved past the largest loaded key, and that key column.
+      final String sequence;
+      final String key;
+      // what COPY fills, when not the whole table: a column list, or a
+      // staging table created before the COPY and copied into the table after.
+      String copyInto;
+      String before;
+      String after;
+      // a table the after statement fills too, emptied along with this one.
+      String fills;
+
+      Table(String name, String file, String disableTrigger, String sequence, String key, String... parents) {
+         this.name = name;
+         this.file = file;
+         this.disableTrigger = disableTrigger;
+         this.sequence = sequence;
+         this.key = key;
+         this.parents = parents;
+         this.copyInto = name;
+      }
+
+      Table copyInto(String copyInto) {
+         return copyInto(copyInto, null, null);
+      }
+
+      Table copyInto(String copyInto, String before, String after) {
+         this.copyInto = copyInto;
+         this.before = before;
+         this.after = after;
+         return this;
+      }
+
+      Table fills(String fills, String after) {
+         this.fills = fills;
+         this.after = after;
+         return this;
+      }
+   }//end Table
+
+   private static final Table[] TABLES = {
+      // the itemIDs come from itemID_seq
+      new Table("Items", "items.csv", null, null, null)
+         .copyInto("Items (itemName, ingredients, typeOfItem, price, description)"),
+      // the favoriteItems text of the users is imported once the items are in
+      new Table("Users", "users.csv", null, null, null, "Items")
+         .fills("FavoriteItems", FavoriteItems.IMPORT),
+      new Table("Store", "store.csv", null, null, null),
+      new Table("FoodOrder", "foodorder.csv", "mytrigger", "orderID_seq", "orderID", "Users", "Store"),
+      // the file names the items; their itemIDs are looked up once it is sent
+      new Table("ItemsInOrder", "itemsinorder.csv", null, null, null, "FoodOrder", "Items")
+         .copyInto("ItemsInOrderLoad",
+                   "CREATE TEMP TABLE ItemsInOrderLoad ( orderID integer, itemName varchar(50), " +
+                   "quantity integer ) ON COMMIT DROP",
+                   "INSERT INTO ItemsInOrder (orderID, itemID, quantity) " +
+                   "SELECT L.orderID, I.itemID, L.quantity " +
+                   "FROM ItemsInOrderLoad L LEFT JOIN Items I ON I.itemName = L.itemName"),
+   };
+
+   /**
+    * Where the rows of each table come from: CSV text with a header line,
+    * exactly as in the data directory.
+    */
+   public interface Source {
+      // true when there are rows to load into the table.
+      boolean contains(String table);
+      // the CSV text of the table; closed by the loader.
+      Reader open(String table) throws IOException;
+   }//end Source
+
+   private static final String SECONDARY_INDEXES =
+      "SELECT c.relname, pg_get_indexdef(i.indexrelid) " +
+      "FROM pg_index i JOIN pg_class c ON c.oid = i.indexrelid " +
+      "WHERE i.indrelid = CAST(? AS regclass) AND NOT i.indisprimary AND NOT i.indisunique";
+
+   // progress of one table.
+   private static class Progress {
+      final Table table;
+      final AtomicLong rows = new AtomicLong();
+      volatile long startNanos = 0;
+      volatile long endNanos = 0;
+
+      Progress(Table table) {
+         this.table = table;
+      }
+
+      double seconds() {
+         long end = this.endNanos != 0 ? this.endNanos : System.nanoTime();
+         return Math.max(1, end - this.startNanos) / 1e9;
+      }
+   }//end Progress
+
+   private final ConnectionPool _pool;
+   private final int _batchRows;
+   private final int _threads;
+
+   private boolean _deferIndexes = true;
+   private boolean _truncate = false;
+
+   /**
+    * Creates a new loader
+    *
+    * @param pool the pool the loading connections are borrowed from; it
+    *        should allow at least threads connections
+    * @param batchRows the number of rows sent per COPY
+    * @param threads the number of tables loaded at the same time
+    */
+   public BulkLoader(ConnectionPool pool, int batchRows, int threads) {
+      if (batchRows < 1 || threads < 1) {
+         throw new IllegalArgumentException("invalid loader size: batchRows=" + batchRows + " threads=" + threads);
+      }//end if
+      this._pool = pool;
+      this._batchRows = batchRows;
+      this._threads = threads;
+   }//end BulkLoader
+
+   // drop secondary indexes before loading and rebuild them afterwards.
+   public void setDeferIndexes(boolean deferIndexes) { this._deferIndexes = deferIndexes; }
+
+   // empty the tables before loading.
+   public void setTruncate(boolean truncate) { this._truncate = truncate; }
+
+   /**
+    * Returns the source reading the CSV files of a data directory.
+    *
+    * @param dataDir the directory holding users.csv, store.csv, ...
+    */
+   public static Source directory(final File dataDir) {
+      return new Source() {
+         public boolean contains(String table) {
+            return file(table).isFile();
+         }
+         public Reader open(String table) throws IOException {
+            return new InputStreamReader(new FileInputStream(file(table)), StandardCharsets.UTF_8);
+         }
+         private File file(String table) {
+            for (Table t : TABLES) {
+               if (t.name.equals(table)) {
+                  return new File(dataDir, t.file);
+               }//end if
+            }//end for
+            throw new IllegalArgumentException("unknown table: " + table);
+         }
+      };
+   }//end directory
+
+   /**
+    * Loads every table whose file exists in the data directory.
+    *
+    * @param dataDir the directory holding users.csv, store.csv, ...
+    * @return the number of rows loaded
+    * @throws java.sql.SQLException when a table could not be loaded; the
+    *         tables loaded before it stay loaded
+    */
+   public long load(File dataDir) throws SQLException {
+      return load(directory(dataDir));
+   }//end load
+
+   /**
+    * Loads every table the source has rows for.
+    *
+    * @param source where the rows of each table come from
+    * @return the number of rows loaded
+    * @throws java.sql.SQLException when a table could not be loaded; the
+    *         tables loaded before it stay loaded
+    */
+   public long load(final Source source) throws SQLException {
+      Map<String, Progress> pending = new LinkedHashMap<String, Progress>();
+      for (Table table : TABLES) {
+         if (source.contains(table.name)) {
+            pending.put(table.name, new Progress(table));
+         }//end if
+      }//end for
+      final List<Progress> all = new ArrayList<Progress>(pending.values());
+      if (all.isEmpty()) {
+         System.out.println("Nothing to load");
+         return 0;
+      }//end if
+
+      if (this._truncate) {
+         StringBuilder names = new StringBuilder();
+         for (Progress p : all) {
+            names.append(names.length() == 0 ? "" : ", ").append(p.table.name);
+            if (p.table.fills != null) {
+               names.append(", ").append(p.table.fills);
+            }//end if
+         }//end for
+         execute("TRUNCATE " + names);
+      }//end if
+
+      List<String> indexes = this._deferIndexes ? dropSecondaryIndexes(all) : new ArrayList<String>();
+
+      ExecutorService executor = Executors.newFixedThreadPool(this._threads);
+      Thread reporter = startReporter(all);
+      long start = System.nanoTime();
+      try {
+         Set<String> done = new HashSet<String>();
+         for (Table table : TABLES) {
+            if (!pending.containsKey(table.name)) {
+               done.add(table.name);
+            }//end if
+         }//end for
+
+         // each wave holds the tables whose parents are all loaded.
+         while (!pending.isEmpty()) {
+            List<Progress> wave = new ArrayList<Progress>();
+            for (Progress p : pending.values()) {
+               boolean ready = true;
+               for (String parent : p.table.parents) {
+                  ready &= done.contains(parent);
+               }//end for
+               if (ready) {
+                  wave.add(p);
+               }//end if
+            }//end for
+
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (final Progress p : wave) {
+               futures.add(executor.submit(new Callable<Void>() {
+                  public Void call() throws Exception {
+                     loadTable(p, source.open(p.table.name));
+                     return null;
+                  }
+               }));
+            }//end for
+            for (Future<?> future : futures) {
+               await(future);
+            }//end for
+            for (Progress p : wave) {
+               pending.remove(p.table.name);
+               done.add(p.table.name);
+            }//end for
+         }//end while
+      }finally {
+         reporter.interrupt();
+         // rebuild the indexes even when the load failed part way.
+         if (!indexes.isEmpty()) {
+            createIndexes(executor, indexes);
+         }//end if
+         executor.shutdown();
+      }//end try
+
+      long total = 0;
+      for (Progress p : all) {
+         total += p.rows.get();
+      }//end for
+      double seconds = (System.nanoTime() - start) / 1e9;
+      System.out.println(String.format("Loaded %d rows in %.2f s (%.0f rows/s)", total, seconds, total / seconds));
+      return total;
+   }//end load
+
+   /*
+    * Loads one table in a single transaction: the table stays empty for
+    * other sessions until every batch has been sent.
+    **/
+   private void loadTable(Progress progress, Reader csv) throws SQLException, IOException {
+      Table table = progress.table;
+      BufferedReader in = new BufferedReader(csv, 1 << 16);
+      ConnectionPool.PooledConnection conn;
+      try {
+         conn = this._pool.borrow();
+      }catch (SQLException e) {
+         in.close();
+         throw e;
+      }//end try
+      boolean ok = false;
+      try {
+         Connection connection = conn.connection();
+         connection.setAutoCommit(false);
+         Statement stmt = connection.createStatement();
+         try {
+            // triggers.sql may not have run yet on a new database.
+            boolean disable = table.disableTrigger != null
+               && triggerExists(conn, table.name, table.disableTrigger);
+            if (disable) {
+               // only this transaction sees the trigger disabled.
+               stmt.executeUpdate("ALTER TABLE " + table.name + " DISABLE TRIGGER " + table.disableTrigger);
+            }//end if
+
+            if (table.before != null) {
+               stmt.executeUpdate(table.before);
+            }//end if
+
+            progress.startNanos = System.nanoTime();
+            StringBuilder batch = new StringBuilder(1 << 20);
+            StringBuilder record = new StringBuilder(256);
+            // the first record is the header
+            readRecord(in, record);
+
+            // one COPY per table, fed a batch of rows at a time
+            CopyIn copy = connection.unwrap(PGConnection.class).getCopyAPI()
+               .copyIn("COPY " + table.copyInto + " FROM STDIN WITH CSV");
+            try {
+               while (true) {
+                  batch.setLength(0);
+                  int rows = 0;
+                  while (rows < this._batchRows && readRecord(in, record)) {
+                     batch.append(record).append('\n');
+                     rows++;
+                  }//end while
+                  if (rows == 0) {
+                     break;
+                  }//end if
+                  byte[] bytes = batch.toString().getBytes(StandardCharsets.UTF_8);
+                  copy.writeToCopy(bytes, 0, bytes.length);
+                  progress.rows.addAndGet(rows);
+               }//end while
+               copy.endCopy();
+            }finally {
+               if (copy.isActive()) {
+                  copy.cancelCopy();
+               }//end if
+            }//end try
+            if (table.after != null) {
+               stmt.executeUpdate(table.after);
+            }//end if
+
+            if (disable) {
+               stmt.executeUpdate("ALTER TABLE " + table.name + " ENABLE TRIGGER " + table.disableTrigger);
+            }//end if
+            if (table.sequence != null && sequenceExists(conn, table.sequence)) {
+               // later inserts numbered by the sequence must not collide with loaded keys
+               stmt.executeQuery("SELECT setval('" + table.sequence + "', max(" + table.key + ")) FROM " + table.name).close();
+            }//end if
+         }finally {
+            stmt.close();
+         }//end try
+         connection.commit();
+         progress.endNanos = System.nanoTime();
+         ok = true;
+         System.out.println(String.format("%s: %d rows in %.2f s (%.0f rows/s)", table.name,
+                                          progress.rows.get(), progress.seconds(),
+                                          progress.rows.get() / progress.seconds()));
+      }finally {
+         if (!ok) {
+            progress.rows.set(0);
+         }//end if
+         in.close();
+         conn.close();
+      }//end try
+   }//end loadTable
+
+   /*
+    * Reads the next CSV record into record, without its line break. A
+    * quoted value may span lines, so lines are joined until the quotes are
+    * balanced. Blank lines are skipped.
+    **/
+   static boolean readRecord(BufferedReader in, StringBuilder record) throws IOException {
+      record.setLength(0);
+      String line;
+      do {
+         line = in.readLine();
+         if (line == null) {
+            return false;
+         }//end if
+      } while (line.isEmpty());
+      record.append(line);
+      boolean quoted = false;
+      int from = 0;
+      while (true) {
+         for (int i = from; i < record.length(); ++i) {
+            if (record.charAt(i) == '"') {
+               quoted = !quoted;
+            }//end if
+         }//end for
+         if (!quoted) {
+            return true;
+         }//end if
+         line = in.readLine();
+         if (line == null) {
+            // unterminated quote; let the server report it
+            return true;
+         }//end if
+         from = record.length() + 1;
+         record.append('\n').append(line);
+      }//end while
+   }//end readRecord
+
+   /*
+    * Splits a record the way Postgres reads CSV: quotes may open and close
+    * anywhere in a value, "" inside quotes is a quote, and an empty unquoted
+    * value is NULL.
+    **/
+   static void parseRecord(CharSequence record, List<String> fields) {
+      fields.clear();
+      StringBuilder value = new StringBuilder();
+      boolean quoted = false;
+      boolean wasQuoted = false;
+      for (int i = 0; i < record.length(); ++i) {
+         char c = record.charAt(i);
+         if (quoted) {
+            if (c != '"') {
+               value.append(c);
+            }else if (i + 1 < record.length() && record.charAt(i + 1) == '"') {
+               value.append('"');
+               i++;
+            }else {
+               quoted = false;
+            }//end if
+         }else if (c == '"') {
+            quoted = true;
+            wasQuoted = true;
+         }else if (c == ',') {
+            fields.add(value.length() == 0 && !wasQuoted ? null : value.toString());
+            value.setLength(0);
+            wasQuoted = false;
+         }else if (c != '\r') {
+            value.append(c);
+         }//end if
+      }//end for
+      fields.add(value.length() == 0 && !wasQuoted ? null : value.toString());
+   }//end parseRecord
+
+   private static SQLException asSQLException(Throwable cause) {
+      if (cause instanceof SQLException) {
+         return (SQLException) cause;
+      }//end if
+      SQLException e = new SQLException(String.valueOf(cause.getMessage()));
+      e.initCause(cause);
+      return e;
+   }//end asSQLException
+
+   private static boolean sequenceExists(ConnectionPool.PooledConnection conn, String sequence) throws SQLException {
+      PreparedStatement stmt = PizzaStore.prepare(conn,
+         "SELECT 1 FROM pg_class WHERE relkind = 'S' AND relname = lower(?)", sequence);
+      ResultSet rs = stmt.executeQuery();
+      try {
+         return rs.next();
+      }finally {
+         rs.close();
+      }//end try
+   }//end sequenceExists
+
+   private static boolean triggerExists(ConnectionPool.PooledConnection conn, String table, String trigger) throws SQLException {
+      PreparedStatement stmt = PizzaStore.prepare(conn,
+         "SELECT 1 FROM pg_trigger WHERE tgrelid = lower(?)::regclass AND tgname = lower(?)", table, trigger);
+      ResultSet rs = stmt.executeQuery();
+      try {
+         return rs.next();
+      }finally {
+         rs.close();
+      }//end try
+   }//end triggerExists
+
+   /*
+    * Drops the indexes that are not backing a primary key or unique
+    * constraint and returns their definitions. Loading into an unindexed
+    * table and building each index once in bulk is much cheaper than
+    * updating it row by row.
+    **/
+   private List<String> dropSecondaryIndexes(List<Progress> tables) throws SQLException {
+      List<String> definitions = new ArrayList<String>();
+      ConnectionPool.PooledConnection conn = this._pool.borrow();
+      try {
+         List<String> names = new ArrayList<String>();
+         for (Progress p : tables) {
+            ResultSet rs = PizzaStore.prepare(conn, SECONDARY_INDEXES, p.table.name).executeQuery();
+            try {
+               while (rs.next()) {
+                  names.add(rs.getString(1));
+                  definitions.add(rs.getString(2));
+               }//end while
+            }finally {
+               rs.close();
+            }//end try
+         }//end for
+         Statement stmt = conn.connection().createStatement();
+         try {
+            for (String name : names) {
+               stmt.executeUpdate("DROP INDEX " + name);
+            }//end for
+         }finally {
+            stmt.close();
+         }//end try
+         if (!names.isEmpty()) {
+            System.out.println("Deferred " + names.size() + " index(es): " + names);
+         }//end if
+      }finally {
+         conn.close();
+      }//end try
+      return definitions;
+   }//end dropSecondaryIndexes
+
+   private void createIndexes(ExecutorService executor, List<String> definitions) throws SQLException {
+      long start = System.nanoTime();
+      List<Future<?>> futures = new ArrayList<Future<?>>();
+      for (final String definition : definitions) {
+         futures.add(executor.submit(new Callable<Void>() {
+            public Void call() throws Exception {
+               execute(definition);
+               return null;
+            }
+         }));
+      }//end for
+      SQLException failure = null;
+      for (Future<?> future : futures) {
+         try {
+            await(future);
+         }catch (SQLException e) {
+            System.err.println("Could not rebuild index: " + e.getMessage());
+            failure = failure == null ? e : failure;
+         }//end try
+      }//end for
+      System.out.println(String.format("Rebuilt %d index(es) in %.2f s", definitions.size(),
+                                       (System.nanoTime() - start) / 1e9));
+      if (failure != null) {
+         throw failure;
+      }//end if
+   }//end createIndexes
+
+   private void execute(String sql) throws SQLException {
+      ConnectionPool.PooledConnection conn = this._pool.borrow();
+      try {
+         Statement stmt = conn.connection().createStatement();
+         try {
+            stmt.executeUpdate(sql);
+         }finally {
+            stmt.close();
+         }//end try
+      }finally {
+         conn.close();
+      }//end try
+   }//end execute
+
+   private static void await(Future<?> future) throws SQLException {
+      try {
+         future.get();
+      }catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new SQLException("Interrupted while loading");
+      }catch (ExecutionException e) {
+         throw asSQLException(e.getCause());
+      }//end try
+   }//end await
+
+   // prints the rows loaded so far and the current rate of every running table.
+   private static Thread startReporter(final List<Progress> all) {
+      Thread reporter = new Thread(new Runnable() {
+         public void run() {
+            try {
+               while (true) {
+                  Thread.sleep(PROGRESS_MILLIS);
+                  StringBuilder line = new StringBuilder();
+                  for (Progress p : all) {
+                     if (p.startNanos != 0 && p.endNanos == 0) {
+                        line.append(line.length() == 0 ? "" : ", ")
+                            .append(String.format("%s %d rows (%.0f rows/s)", p.table.name,
+                                                  p.rows.get(), p.rows.get() / p.seconds()));
+                     }//end if
+                  }//end for
+                  if (line.length() > 0) {
+                     System.out.println("  loading: " + line);
+                  }//end if
+               }//end while
+            }catch (InterruptedException e) {
+               // load finished.
+            }//end try
+         }
+      }, "bulk-loader-progress");
+      reporter.setDaemon(true);
+      reporter.start();
+      return reporter;
+   }//end startReporter
+
+   /**
+    * Loads a data directory into the database
+    *
+    * @param args <dbname> <port> <user> [<data dir>]
+    */
+   public static void main(String[] args) {
+      if (args.length != 3 && args.length != 4) {
+         System.err.println(
+            "Usage: " +
+            "java [-classpath <classpath>] " +
+            "[-Dpizzastore.load.truncate=true] [-Dpizzastore.load.deferIndexes=false] " +
+            BulkLoader.class.getName() +
+            " <dbname> <port> <user> [<data dir>]");
+         return;
+      }//end if
+
+      ConnectionPool pool = null;
+      try {
+         String url = PizzaStore.connectionURL(args[0], args[1]);
+         pool = new ConnectionPool(url, args[2], "", 1, DEFAULT_THREADS + 1);
+         // a table may legitimately hold its connection for minutes.
+         pool.setLeakThresholdMillis(Long.MAX_VALUE / 2);
+
+         BulkLoader loader = new BulkLoader(pool, DEFAULT_BATCH_ROWS, DEFAULT_THREADS);
+         loader.setTruncate(Boolean.getBoolean("pizzastore.load.truncate"));
+         loader.setDeferIndexes(Boolean.parseBoolean(System.getProperty("pizzastore.load.deferIndexes", "true")));
+         loader.load(new File(args.length == 4 ? args[3] : "data"));
+      }catch (Exception e) {
+         System.err.println(e.getMessage());
+      }finally {
+         if (pool != null) {
+            pool.close();
+         }//end if
+      }//end try
+   }//end main
+
+}//end BulkLoader
@@ -0,0 +1,495 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class keeps a bounded pool of physical database connections so that
+ * several store terminals in one JVM can share the database without being
+ * serialized on a single socket. Connections that sat idle for a while are
+ * validated before they are handed out, idle ones above the minimum size are
+ * closed after a while, and connections held for too long are reported as
+ * leaks.
+ *
+ */
+public class ConnectionPool {
+
+   // defaults, overridable through system properties.
+   public static final int DEFAULT_MIN_SIZE =
+      Integer.getInteger("pizzastore.pool.minSize", 1);
+   public static final int DEFAULT_MAX_SIZE =
+      Integer.getInteger("pizzastore.pool.maxSize", 8);
+   public static final long DEFAULT_IDLE_TIMEOUT_MILLIS =
+      Long.getLong("pizzastore.pool.idleTimeoutMillis", 5 * 60 * 1000L);
+   public static final long DEFAULT_BORROW_TIMEOUT_MILLIS =
+      Long.getLong("pizzastore.pool.borrowTimeoutMillis", 10 * 1000L);
+   public static final long DEFAULT_LEAK_THRESHOLD_MILLIS =
+      Long.getLong("pizzastore.pool.leakThresholdMillis", 60 * 1000L);
+   // a connection idle for longer is checked with the server before it is
+   // handed out; one returned more recently is handed out as is.
+   public static final long DEFAULT_VALIDATE_AFTER_MILLIS =
+      Long.getLong("pizzastore.pool.validateAfterMillis", 30 * 1000L);
+   // record where every connection is borrowed, so a leak report shows it.
+   public static final boolean DEFAULT_LEAK_TRACE =
+      Boolean.getBoolean("pizzastore.pool.leakTrace");
+
+   // seconds the server has to answer the validation of a connection.
+   private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+   private final String _url;
+   private final String _user;
+   private final String _password;
+   private final int _minSize;
+   private final int _maxSize;
+
+   private long _idleTimeoutMillis = DEFAULT_IDLE_TIMEOUT_MILLIS;
+   private long _borrowTimeoutMillis = DEFAULT_BORROW_TIMEOUT_MILLIS;
+   private long _leakThresholdMillis = DEFAULT_LEAK_THRESHOLD_MILLIS;
+   private long _validateAfterMillis = DEFAULT_VALIDATE_AFTER_MILLIS;
+   private boolean _leakTrace = DEFAULT_LEAK_TRACE;
+
+   // guards every field below.
+   private final ReentrantLock _lock = new ReentrantLock();
+   private final Condition _available = _lock.newCondition();
+
+   // idle connections, most recently returned first.
+   private final ArrayDeque<PhysicalConnection> _idle = new ArrayDeque<PhysicalConnection>();
+   private final Set<PhysicalConnection> _borrowed = new LinkedHashSet<PhysicalConnection>();
+
+   // open connections plus the ones being opened right now.
+   private int _total = 0;
+   private boolean _closed = false;
+
+   private long _borrows = 0;
+   private long _timeouts = 0;
+   private long _created = 0;
+   private long _discarded = 0;
+   private long _leaks = 0;
+
+   // closes idle connections and reports leaks in the background.
+   private final Thread _housekeeper;
+
+   /**
+    * Creates a new connection pool and opens the minimum number of
+    * connections right away.
+    *
+    * @param url the JDBC connection URL
+    * @param user the user name used to login to the database
+    * @param password the user login password
+    * @param minSize the number of connections kept open even when idle
+    * @param maxSize the maximum number of open connections
+    * @throws java.sql.SQLException when failed to make the first connections.
+    */
+   public ConnectionPool(String url, String user, String password, int minSize, int maxSize) throws SQLException {
+      if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+         throw new IllegalArgumentException("invalid pool size: min=" + minSize + " max=" + maxSize);
+      }//end if
+      this._url = url;
+      this._user = user;
+      this._password = password;
+      this._minSize = minSize;
+      this._maxSize = maxSize;
+
+      for (int i = 0; i < minSize; ++i) {
+         PhysicalConnection conn = open();
+         this._total++;
+         this._idle.push(conn);
+      }//end for
+
+      this._housekeeper = new Thread(new Runnable() {
+         public void run() { housekeep(); }
+      }, "connection-pool-housekeeper");
+      this._housekeeper.setDaemon(true);
+      this._housekeeper.start();
+   }//end ConnectionPool
+
+   public void setIdleTimeoutMillis(long millis) { this._idleTimeoutMillis = millis; }
+   public void setBorrowTimeoutMillis(long millis) { this._borrowTimeoutMillis = millis; }
+   public void setLeakThresholdMillis(long millis) { this._leakThresholdMillis = millis; }
+   public void setValidateAfterMillis(long millis) { this._validateAfterMillis = millis; }
+   public void setLeakTrace(boolean leakTrace) { this._leakTrace = leakTrace; }
+
+   /**
+    * Borrows a connection, waiting up to the borrow timeout when every
+    * connection is in use. The caller must close the returned connection
+    * to give it back to the pool; closing it again does nothing.
+    *
+    * @return a connection reserved for the caller
+    * @throws java.sql.SQLException when no connection became available in time
+    */
+   public PooledConnection borrow() throws SQLException {
+      long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this._borrowTimeoutMillis);
+      while (true) {
+         PhysicalConnection conn = null;
+         boolean create = false;
+         this._lock.lock();
+         try {
+            while (conn == null && !create) {
+               if (this._closed) {
+                  throw new SQLException("Connection pool is closed");
+               }//end if
+               if (!this._idle.isEmpty()) {
+                  conn = this._idle.pop();
+               }else if (this._total < this._maxSize) {
+                  this._total++;
+                  create = true;
+               }else {
+                  long remaining = deadline - System.nanoTime();
+                  if (remaining <= 0) {
+                     this._timeouts++;
+                     throw new SQLException("Timed out after " + this._borrowTimeoutMillis
+                                            + " ms waiting for a database connection ("
+                                            + this._maxSize + " in use)");
+                  }//end if
+                  try {
+                     this._available.awaitNanos(remaining);
+                  }catch (InterruptedException e) {
+                     Thread.currentThread().interrupt();
+                     throw new SQLException("Interrupted while waiting for a database connection");
+                  }//end try
+               }//end if
+            }//end while
+         }finally {
+            this._lock.unlock();
+         }//end try
+
+         // network I/O happens outside the lock.
+         if (create) {
+            try {
+               conn = open();
+            }catch (SQLException e) {
+               discard(null);
+               throw e;
+            }//end try
+         }else if (System.currentTimeMillis() - conn._lastUsed > this._validateAfterMillis && !validate(conn)) {
+            conn.closePhysical();
+            discard(conn);
+            continue;
+         }//end if
+
+         this._lock.lock();
+         try {
+            conn._borrowedAt = System.currentTimeMillis();
+            conn._borrowSite = this._leakTrace ? new Throwable("Connection borrowed here") : null;
+            conn._leakReported = false;
+            this._borrowed.add(conn);
+            this._borrows++;
+         }finally {
+            this._lock.unlock();
+         }//end try
+         return new PooledConnection(this, conn);
+      }//end while
+   }//end borrow
+
+   /**
+    * Opens a connection with the pool settings that the pool does not manage,
+    * for long-lived uses such as LISTEN. The caller must close it.
+    *
+    * @return a new physical connection
+    * @throws java.sql.SQLException when failed to make the connection.
+    */
+   public Connection openDedicated() throws SQLException {
+      return DriverManager.getConnection(this._url, this._user, this._password);
+   }//end openDedicated
+
+   /**
+    * Closes every idle connection and stops handing out new ones.
+    * Borrowed connections are closed as they are given back.
+    */
+   public void close() {
+      List<PhysicalConnection> toClose = new ArrayList<PhysicalConnection>();
+      this._lock.lock();
+      try {
+         if (this._closed) {
+            return;
+         }//end if
+         this._closed = true;
+         toClose.addAll(this._idle);
+         this._total -= this._idle.size();
+         this._idle.clear();
+         this._available.signalAll();
+      }finally {
+         this._lock.unlock();
+      }//end try
+      this._housekeeper.interrupt();
+      for (PhysicalConnection conn : toClose) {
+         conn.closePhysical();
+      }//end for
+   }//end close
+
+   public int size() {
+      this._lock.lock();
+      try { return this._total; } finally { this._lock.unlock(); }
+   }
+
+   public int idle() {
+      this._lock.lock();
+      try { return this._idle.size(); } finally { this._lock.unlock(); }
+   }
+
+   public int active() {
+      this._lock.lock();
+      try { return this._borrowed.size(); } finally { this._lock.unlock(); }
+   }
+
+   @Override
+   public String toString() {
+      this._lock.lock();
+      try {
+         long hits = 0, misses = 0, evictions = 0;
+         for (PhysicalConnection conn : this._idle) {
+            hits += conn._statements.hits();
+            misses += conn._statements.misses();
+            evictions += conn._statements.evictions();
+         }//end for
+         for (PhysicalConnection conn : this._borrowed) {
+            hits += conn._statements.hits();
+            misses += conn._statements.misses();
+            evictions += conn._statements.evictions();
+         }//end for
+         return String.format("connections=%d/%d active=%d idle=%d borrows=%d timeouts=%d "
+                              + "created=%d discarded=%d leaks=%d "
+                              + "statementHits=%d statementMisses=%d statementEvictions=%d",
+                              this._total, this._maxSize, this._borrowed.size(), this._idle.size(),
+                              this._borrows, this._timeouts, this._created, this._discarded,
+                              this._leaks, hits, misses, evictions);
+      }finally {
+         this._lock.unlock();
+      }//end try
+   }//end toString
+
+   /*
+    * Gives a borrowed connection back. Broken connections, and any connection
+    * returned after the pool was closed, are closed instead of kept. Only
+    * the first close of a borrow counts: a later one may come after the
+    * connection was lent to someone else, whose work it must not touch.
+    **/
+   private void release(PooledConnection lease) {
+      PhysicalConnection conn = lease._physical;
+      this._lock.lock();
+      try {
+         if (lease._returned) {
+            return; // already given back.
+         }//end if
+         lease._returned = true;
+      }finally {
+         this._lock.unlock();
+      }//end try
+
+      // still counted as borrowed, so nobody else gets it while it is reset.
+      boolean keep = !lease._broken && resetState(conn);
+      this._lock.lock();
+      try {
+         this._borrowed.remove(conn);
+         conn._borrowSite = null;
+         if (keep && !this._closed) {
+            conn._lastUsed = System.currentTimeMillis();
+            this._idle.push(conn);
+            this._available.signal();
+            return;
+         }//end if
+      }finally {
+         this._lock.unlock();
+      }//end try
+      conn.closePhysical();
+      discard(conn);
+   }//end release
+
+   /*
+    * Leaves a returned connection in autocommit mode, as every borrower
+    * expects to find it.
+    **/
+   private boolean resetState(PhysicalConnection conn) {
+      try {
+         if (!conn._connection.getAutoCommit()) {
+            conn._connection.rollback();
+            conn._connection.setAutoCommit(true);
+         }//end if
+         return true;
+      }catch (SQLException e) {
+         return false;
+      }//end try
+   }//end resetState
+
+   private void discard(PhysicalConnection conn) {
+      this._lock.lock();
+      try {
+         this._total--;
+         if (conn != null) {
+            this._discarded++;
+         }//end if
+         this._available.signal();
+      }finally {
+         this._lock.unlock();
+      }//end try
+   }//end discard
+
+   private PhysicalConnection open() throws SQLException {
+      Connection connection = DriverManager.getConnection(this._url, this._user, this._password);
+      this._lock.lock();
+      try {
+         this._created++;
+      }finally {
+         this._lock.unlock();
+      }//end try
+      return new PhysicalConnection(connection);
+   }//end open
+
+   private boolean validate(PhysicalConnection conn) {
+      try {
+         return conn._connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+      }catch (SQLException e) {
+         return false;
+      }//end try
+   }//end validate
+
+   /*
+    * Runs until the pool is closed: closes connections idle for longer than
+    * the idle timeout while the pool is above its minimum size, and reports
+    * a connection held past the leak threshold, with where it was borrowed
+    * when leak tracing is on. A threshold of 0 turns leak reports off.
+    **/
+   private void housekeep() {
+      while (true) {
+         try {
+            Thread.sleep(Math.max(1000L, Math.min(this._idleTimeoutMillis, this._leakThresholdMillis) / 2));
+         }catch (InterruptedException e) {
+            return;
+         }//end try
+         List<PhysicalConnection> expired = new ArrayList<PhysicalConnection>();
+         List<PhysicalConnection> leaked = new ArrayList<PhysicalConnection>();
+         long now = System.currentTimeMillis();
+         this._lock.lock();
+         try {
+            if (this._closed) {
+               return;
+            }//end if
+            // the deque is newest first, so the oldest idle connections sit at its tail.
+            Iterator<PhysicalConnection> it = this._idle.descendingIterator();
+            while (it.hasNext() && this._total > this._minSize) {
+               PhysicalConnection conn = it.next();
+               if (now - conn._lastUsed < this._idleTimeoutMillis) {
+                  break;
+               }//end if
+               it.remove();
+               this._total--;
+               this._discarded++;
+               expired.add(conn);
+            }//end while
+            for (PhysicalConnection conn : this._borrowed) {
+               if (this._leakThresholdMillis > 0 && !conn._leakReported
+                   && now - conn._borrowedAt > this._leakThresholdMillis) {
+                  conn._leakReported = true;
+                  this._leaks++;
+                  leaked.add(conn);
+               }//end if
+            }//end for
+         }finally {
+            this._lock.unlock();
+         }//end try
+         for (PhysicalConnection conn : expired) {
+            conn.closePhysical();
+         }//end for
+         for (PhysicalConnection conn : leaked) {
+            Throwable site = conn._borrowSite;
+            System.err.println("Possible connection leak: held for more than "
+                               + this._leakThresholdMillis + " ms"
+                               + (site != null ? "" : " (run with -Dpizzastore.pool.leakTrace=true to see where)"));
+            if (site != null) {
+               site.printStackTrace();
+            }//end if
+         }//end for
+      }//end while
+   }//end housekeep
+
+   /*
+    * A physical connection owned by the pool, together with its prepared
+    * statement cache. It is idle or lent out through one PooledConnection
+    * at a time.
+    **/
+   private static class PhysicalConnection {
+
+      private final Connection _connection;
+      private final StatementCache _statements;
+
+      private volatile long _lastUsed = System.currentTimeMillis();
+      private volatile long _borrowedAt = 0;
+      private volatile Throwable _borrowSite = null;
+      private volatile boolean _leakReported = false;
+
+      private PhysicalConnection(Connection connection) {
+         this._connection = connection;
+         this._statements = new StatementCache(connection, StatementCache.DEFAULT_CAPACITY);
+      }//end PhysicalConnection
+
+      private void closePhysical() {
+         this._statements.close();
+         try {
+            this._connection.close();
+         }catch (SQLException e) {
+            // ignored.
+         }//end try
+      }//end closePhysical
+
+   }//end PhysicalConnection
+
+   /**
+    * One borrow of a pooled connection. Closing it gives the connection back
+    * to the pool; closing it again does nothing, even once the connection
+    * has been lent to someone else.
+    */
+   public static class PooledConnection implements AutoCloseable {
+
+      private final ConnectionPool _pool;
+      private final PhysicalConnection _physical;
+
+      // guarded by the pool's lock.
+      private boolean _returned = false;
+      private volatile boolean _broken = false;
+
+      private PooledConnection(ConnectionPool pool, PhysicalConnection physical) {
+         this._pool = pool;
+         this._physical = physical;
+      }//end PooledConnection
+
+      public Connection connection() { return this._physical._connection; }
+      public StatementCache statements() { return this._physical._statements; }
+
+      /**
+       * Marks the connection as unusable so the pool closes it instead of
+       * handing it out again.
+       */
+      public void markBroken() { this._broken = true; }
+
+      /**
+       * Gives the connection back to the pool.
+       */
+      @Override
+      public void close() {
+         this._pool.release(this);
+      }//end close
+
+   }//end PooledConnection
+
+}//end ConnectionPool
@@ -0,0 +1,315 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * This class hashes and verifies passwords. A stored password is
+ *
+ *    pbkdf2-sha512$<iterations>$<salt>$<hash>
+ *
+ * with a random salt per user and the iteration count as the work factor,
+ * so the factor can be raised later: a login whose hash used fewer
+ * iterations is hashed again. Rows written before passwords were hashed
+ * hold the plain password; they are still accepted and upgraded on the
+ * next successful login, or all at once with main.
+ *
+ * Hashing is deliberately slow, so it runs on a small bounded pool: a burst
+ * of logins queues there instead of taking every core from the sessions
+ * that are placing orders, and logins beyond the queue are turned away.
+ *
+ */
+public class Credentials {
+
+   // PBKDF2 iterations of new hashes.
+   public static final int DEFAULT_ITERATIONS =
+      Integer.getInteger("pizzastore.auth.iterations", 210000);
+
+   // threads hashing at the same time.
+   public static final int DEFAULT_THREADS =
+      Integer.getInteger("pizzastore.auth.threads", Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+
+   // hashes waiting for a thread before new logins are turned away.
+   public static final int DEFAULT_QUEUE =
+      Integer.getInteger("pizzastore.auth.queue", 64);
+
+   private static final String ALGORITHM = "PBKDF2WithHmacSHA512";
+   private static final String PREFIX = "pbkdf2-sha512$";
+   private static final int SALT_BYTES = 16;
+   private static final int HASH_BITS = 256;
+
+   /**
+    * Thrown when the verification pool is full.
+    */
+   public static class Busy extends Exception {
+      private static final long serialVersionUID = 1L;
+
+      public Busy() { super("Too many logins in progress, please try again"); }
+   }//end Busy
+
+   private final int _iterations;
+   private final ThreadPoolExecutor _executor;
+   private final SecureRandom _random = new SecureRandom();
+
+   // verified when the login does not exist, so a miss costs as much as a hit.
+   private final String _decoy;
+
+   /**
+    * Creates a new verifier
+    *
+    * @param iterations the PBKDF2 iterations of new hashes
+    * @param threads the threads hashing at the same time
+    * @param queue the hashes that may wait for a thread
+    */
+   public Credentials(int iterations, int threads, int queue) {
+      if (iterations < 1 || threads < 1 || queue < 0) {
+         throw new IllegalArgumentException("iterations and threads must be positive, queue not negative");
+      }//end if
+      this._iterations = iterations;
+      final AtomicInteger count = new AtomicInteger();
+      this._executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+         queue == 0 ? new SynchronousQueue<Runnable>()
+                    : new ArrayBlockingQueue<Runnable>(queue),
+         new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+               Thread thread = new Thread(r, "credentials-" + count.incrementAndGet());
+               thread.setDaemon(true);
+               return thread;
+            }
+         });
+      byte[] decoy = new byte[SALT_BYTES];
+      this._random.nextBytes(decoy);
+      this._decoy = hash(Base64.getEncoder().encodeToString(decoy));
+   }//end Credentials
+
+   public int getIterations() { return this._iterations; }
+
+   // hashes waiting for a thread, for monitoring.
+   public int getQueued() { return this._executor.getQueue().size(); }
+
+   /**
+    * Hashes a password with a new salt and the current work factor, on the
+    * calling thread.
+    */
+   public String hash(String password) {
+      byte[] salt = new byte[SALT_BYTES];
+      this._random.nextBytes(salt);
+      Base64.Encoder base64 = Base64.getEncoder().withoutPadding();
+      return PREFIX + this._iterations + "$" + base64.encodeToString(salt) + "$"
+         + base64.encodeToString(pbkdf2(password, salt, this._iterations, HASH_BITS));
+   }//end hash
+
+   /**
+    * Checks a password against a stored one, on the calling thread. The
+    * comparison takes the same time wherever the first difference is.
+    *
+    * @param password the password typed in
+    * @param stored the stored hash or legacy plain password, null for an unknown login
+    * @return whether the password matches; always false when stored is null
+    */
+   public boolean matches(String password, String stored) {
+      if (stored == null) {
+         matches(password, this._decoy);
+         return false;
+      }//end if
+      if (!stored.startsWith(PREFIX)) {
+         // legacy plain password: compare digests so the length does not leak either
+         return MessageDigest.isEqual(sha256(password), sha256(stored));
+      }//end if
+      String[] parts = stored.split("\\$");
+      if (parts.length != 4) {
+         return false;
+      }//end if
+      Base64.Decoder base64 = Base64.getDecoder();
+      byte[] expected = base64.decode(parts[3]);
+      byte[] actual = pbkdf2(password, base64.decode(parts[2]), Integer.parseInt(parts[1]), expected.length * 8);
+      return MessageDigest.isEqual(expected, actual);
+   }//end matches
+
+   /**
+    * Same as matches, run on the verification pool.
+    *
+    * @throws Credentials.Busy when the pool and its queue are full
+    */
+   public boolean verify(final String password, final String stored) throws Busy {
+      return await(submit(new Callable<Boolean>() {
+         public Boolean call() { return matches(password, stored); }
+      }));
+   }//end verify
+
+   /**
+    * Same as hash, run on the verification pool.
+    *
+    * @throws Credentials.Busy when the pool and its queue are full
+    */
+   public String hashOnPool(final String password) throws Busy {
+      return await(submit(new Callable<String>() {
+         public String call() { return hash(password); }
+      }));
+   }//end hashOnPool
+
+   /**
+    * Tells whether a stored password should be hashed again: it is plain
+    * text, or was hashed with fewer iterations than the current work factor.
+    */
+   public boolean needsRehash(String stored) {
+      if (stored == null || !stored.startsWith(PREFIX)) {
+         return true;
+      }//end if
+      String[] parts = stored.split("\\$");
+      return parts.length != 4 || Integer.parseInt(parts[1]) < this._iterations;
+   }//end needsRehash
+
+   public void close() {
+      this._executor.shutdownNow();
+   }//end close
+
+   private <T> Future<T> submit(Callable<T> task) throws Busy {
+      try {
+         return this._executor.submit(task);
+      }catch (RejectedExecutionException e) {
+         throw new Busy();
+      }//end try
+   }//end submit
+
+   private static <T> T await(Future<T> future) {
+      boolean interrupted = false;
+      try {
+         while (true) {
+            try {
+               return future.get();
+            }catch (InterruptedException e) {
+               // the hash is already running; finish the login first
+               interrupted = true;
+            }catch (ExecutionException e) {
+               throw new IllegalStateException(e.getCause());
+            }//end try
+         }//end while
+      }finally {
+         if (interrupted) {
+            Thread.currentThread().interrupt();
+         }//end if
+      }//end try
+   }//end await
+
+   private static byte[] pbkdf2(String password, byte[] salt, int iterations, int bits) {
+      PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, bits);
+      try {
+         return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+      }catch (GeneralSecurityException e) {
+         // every Java 8 runtime has PBKDF2WithHmacSHA512
+         throw new IllegalStateException(e);
+      }finally {
+         spec.clearPassword();
+      }//end try
+   }//end pbkdf2
+
+   private static byte[] sha256(String value) {
+      try {
+         return MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+      }catch (GeneralSecurityException e) {
+         throw new IllegalStateException(e);
+      }//end try
+   }//end sha256
+
+   /**
+    * Widens Users.password for hashes and hashes every password that is
+    * still plain text or below the current work factor, on all threads.
+    *
+    * @param args <dbname> <port> <user>
+    */
+   public static void main(String[] args) {
+      if (args.length != 3) {
+         System.err.println(
+            "Usage: " +
+            "java [-classpath <classpath>] [-Dpizzastore.auth.iterations=N] [-Dpizzastore.auth.threads=N] " +
+            Credentials.class.getName() +
+            " <dbname> <port> <user>");
+         return;
+      }//end if
+
+      ConnectionPool pool = null;
+      ExecutorService executor = null;
+      try {
+         pool = new ConnectionPool(PizzaStore.connectionURL(args[0], args[1]), args[2], "", 1, DEFAULT_THREADS + 1);
+         final PizzaStore esql = new PizzaStore(pool);
+         // hashed on the threads below rather than on the login pool
+         final Credentials credentials = esql.getCredentials();
+         esql.executeUpdate("ALTER TABLE Users ALTER COLUMN password TYPE varchar(" + UserProfile.PASSWORD_LENGTH + ")");
+
+         List<List<String>> rows = esql.executeQueryAndReturnResult("SELECT login, password FROM Users");
+         System.out.println("Hashing the passwords of " + rows.size() + " users with "
+                            + credentials.getIterations() + " iterations on " + DEFAULT_THREADS + " thread(s)");
+         final long start = System.nanoTime();
+         final AtomicInteger done = new AtomicInteger();
+         executor = Executors.newFixedThreadPool(DEFAULT_THREADS);
+         List<Future<?>> futures = new ArrayList<Future<?>>();
+         for (final List<String> row : rows) {
+            if (!credentials.needsRehash(row.get(1))) {
+               continue;
+            }//end if
+            futures.add(executor.submit(new Callable<Void>() {
+               public Void call() throws SQLException {
+                  // only replaces the password it read, in case the user changed it meanwhile
+                  esql.executeUpdate("UPDATE Users SET password = ? WHERE login = ? AND password = ?",
+                                     credentials.hash(row.get(1)), row.get(0), row.get(1));
+                  int count = done.incrementAndGet();
+                  if (count % 1000 == 0) {
+                     System.out.println(String.format("  %d done (%.0f/s)", count,
+                                                      count / ((System.nanoTime() - start) / 1e9)));
+                  }//end if
+                  return null;
+               }
+            }));
+         }//end for
+         for (Future<?> future : futures) {
+            future.get();
+         }//end for
+         System.out.println(String.format("Hashed %d passwords in %.2f s", done.get(), (System.nanoTime() - start) / 1e9));
+      }catch (ExecutionException e) {
+         System.err.println(e.getCause().getMessage());
+      }catch (Exception e) {
+         System.err.println(e.getMessage());
+      }finally {
+         if (executor != null) {
+            executor.shutdownNow();
+         }//end if
+         if (pool != null) {
+            pool.close();
+         }//end if
+      }//end try
+   }//end main
+
+}//end Credentials
@@ -0,0 +1,577 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class generates a synthetic data set for the order schema, either as
+ * CSV files laid out like the data directory or streamed straight into the
+ * database through BulkLoader. The output only depends on the seed and the
+ * sizes: every user, store and order is drawn from its own random stream,
+ * so FoodOrder and ItemsInOrder can be generated separately and still
+ * agree on every order.
+ *
+ * The data is skewed the way real orders are: items, stores and customers
+ * are picked with Zipf distributions, and order times cluster around lunch
+ * and dinner.
+ *
+ */
+public class DataGenerator implements BulkLoader.Source {
+
+   // defaults, overridable through system properties.
+   public static final long DEFAULT_SEED =
+      Long.getLong("pizzastore.gen.seed", 42L);
+   public static final int DEFAULT_STORES =
+      Integer.getInteger("pizzastore.gen.stores", 1000);
+   public static final int DEFAULT_DAYS =
+      Integer.getInteger("pizzastore.gen.days", 365);
+   public static final String DEFAULT_START =
+      System.getProperty("pizzastore.gen.start", "2023-01-01");
+   public static final String DEFAULT_ITEMS =
+      System.getProperty("pizzastore.gen.items", "data/items.csv");
+
+   // Zipf exponents: larger is more skewed.
+   public static final double ITEM_SKEW =
+      Double.parseDouble(System.getProperty("pizzastore.gen.itemSkew", "1.1"));
+   public static final double STORE_SKEW =
+      Double.parseDouble(System.getProperty("pizzastore.gen.storeSkew", "0.9"));
+   public static final double USER_SKEW =
+      Double.parseDouble(System.getProperty("pizzastore.gen.userSkew", "0.7"));
+
+   // the newest orders are still in progress.
+   private static final double OPEN_FRACTION = 0.001;
+
+   private static final int MAX_LINES = 6;
+
+   // one random stream per kind of row.
+   private static final long USER_STREAM = 1;
+   private static final long STORE_STREAM = 2;
+   private static final long ORDER_STREAM = 3;
+
+   private static final String[][] CITIES = {
+      {"Riverside", "California"}, {"Los Angeles", "California"}, {"San Diego", "California"},
+      {"Sacramento", "California"}, {"Houston", "Texas"}, {"Dallas", "Texas"}, {"Austin", "Texas"},
+      {"New York City", "New York"}, {"Buffalo", "New York"}, {"Miami", "Florida"},
+      {"Orlando", "Florida"}, {"Chicago", "Illinois"}, {"Seattle", "Washington"},
+      {"Phoenix", "Arizona"}, {"Denver", "Colorado"}, {"Atlanta", "Georgia"},
+   };
+
+   private static final String[] STREETS = {
+      "Main Street", "University Avenue", "Market Street", "Park Avenue", "Oak Drive",
+      "Lincoln Way", "Sunset Boulevard", "Hill Road",
+   };
+
+   private final long _seed;
+   private final long _orders;
+   private final int _users;
+   private final int _stores;
+   private final int _days;
+   private final long _startDay;
+
+   // the menu: the Items rows as read, and the name and price of each item.
+   private final List<String> _itemRows = new ArrayList<String>();
+   private final List<String> _itemNames = new ArrayList<String>();
+   private final List<Long> _itemCents = new ArrayList<Long>();
+
+   private final Zipf _itemZipf;
+   private final Zipf _storeZipf;
+   private final Zipf _userZipf;
+
+   /**
+    * Creates a new generator
+    *
+    * @param seed the seed every row is derived from
+    * @param orders the number of FoodOrder rows, numbered from 1
+    * @param users the number of Users rows
+    * @param stores the number of Store rows
+    * @param days the number of days the orders are spread over
+    * @param start the day of the first order
+    * @param itemsCsv the menu, in the layout of data/items.csv; it is
+    *        loaded as is and its items are the ones ordered
+    * @throws java.io.IOException when the menu could not be read
+    */
+   public DataGenerator(long seed, long orders, int users, int stores, int days,
+                        LocalDate start, File itemsCsv) throws IOException {
+      if (orders < 0 || users < 1 || stores < 1 || days < 1) {
+         throw new IllegalArgumentException("invalid sizes: orders=" + orders + " users=" + users
+                                            + " stores=" + stores + " days=" + days);
+      }//end if
+      this._seed = seed;
+      this._orders = orders;
+      this._users = users;
+      this._stores = stores;
+      this._days = days;
+      this._startDay = start.toEpochDay();
+
+      BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(itemsCsv), StandardCharsets.UTF_8));
+      try {
+         StringBuilder record = new StringBuilder();
+         List<String> fields = new ArrayList<String>();
+         // the first record is the header
+         BulkLoader.readRecord(in, record);
+         while (BulkLoader.readRecord(in, record)) {
+            BulkLoader.parseRecord(record, fields);
+            this._itemRows.add(record.toString());
+            this._itemNames.add(fields.get(0));
+            this._itemCents.add(new BigDecimal(fields.get(3).trim()).movePointRight(2).longValueExact());
+         }//end while
+      }finally {
+         in.close();
+      }//end try
+      if (this._itemNames.isEmpty()) {
+         throw new IOException("No items in " + itemsCsv);
+      }//end if
+
+      this._itemZipf = new Zipf(this._itemNames.size(), ITEM_SKEW, false);
+      this._storeZipf = new Zipf(stores, STORE_SKEW, true);
+      this._userZipf = new Zipf(users, USER_SKEW, true);
+   }//end DataGenerator
+
+   public long getOrders() { return this._orders; }
+   public int getUsers() { return this._users; }
+   public int getStores() { return this._stores; }
+
+   public boolean contains(String table) {
+      return table.equals("Users") || table.equals("Items") || table.equals("Store")
+         || table.equals("FoodOrder") || table.equals("ItemsInOrder");
+   }//end contains
+
+   public Reader open(String table) {
+      if (table.equals("Users")) {
+         return new RowReader("login,password,role,favoriteItems,phoneNum", this._users) {
+            final Rng rng = new Rng();
+            void append(StringBuilder sb, long userID) { appendUser(sb, this.rng, (int) userID); }
+         };
+      }else if (table.equals("Items")) {
+         return new RowReader("itemName,ingredients,typeOfItem,price,description", this._itemRows.size()) {
+            void append(StringBuilder sb, long row) { sb.append(_itemRows.get((int) row - 1)).append('\n'); }
+         };
+      }else if (table.equals("Store")) {
+         return new RowReader("storeID,address,city,state,isOpen,reviewScore", this._stores) {
+            final Rng rng = new Rng();
+            void append(StringBuilder sb, long storeID) { appendStore(sb, this.rng, (int) storeID); }
+         };
+      }else if (table.equals("FoodOrder")) {
+         return new RowReader("orderID,login,storeID,totalPrice,orderTimestamp,orderStatus", this._orders) {
+            final Order order = new Order();
+            void append(StringBuilder sb, long orderID) { this.order.generate(orderID).appendHeader(sb); }
+         };
+      }else if (table.equals("ItemsInOrder")) {
+         return new RowReader("orderID,itemName,quantity", this._orders) {
+            final Order order = new Order();
+            void append(StringBuilder sb, long orderID) { this.order.generate(orderID).appendLines(sb); }
+         };
+      }//end if
+      throw new IllegalArgumentException("unknown table: " + table);
+   }//end open
+
+   /**
+    * Writes the data set as CSV files named like the ones of the data
+    * directory, one thread per file.
+    *
+    * @param dir the directory the files are written to
+    * @throws java.io.IOException when a file could not be written
+    */
+   public void writeCsv(final File dir) throws IOException {
+      if (!dir.isDirectory() && !dir.mkdirs()) {
+         throw new IOException("Cannot create " + dir);
+      }//end if
+      final String[][] files = {
+         {"Users", "users.csv"}, {"Items", "items.csv"}, {"Store", "store.csv"},
+         {"FoodOrder", "foodorder.csv"}, {"ItemsInOrder", "itemsinorder.csv"},
+      };
+      ExecutorService executor = Executors.newFixedThreadPool(
+         Math.min(files.length, Runtime.getRuntime().availableProcessors()));
+      try {
+         List<Future<Void>> futures = new ArrayList<Future<Void>>();
+         for (final String[] file : files) {
+            futures.add(executor.submit(new Callable<Void>() {
+               public Void call() throws IOException {
+                  long start = System.nanoTime();
+                  long chars = copy(open(file[0]), new File(dir, file[1]));
+                  System.out.println(String.format("%s: %.1f MB in %.2f s", file[1], chars / 1e6,
+                                                   (System.nanoTime() - start) / 1e9));
+                  return null;
+               }
+            }));
+         }//end for
+         for (Future<Void> future : futures) {
+            try {
+               future.get();
+            }catch (InterruptedException e) {
+               Thread.currentThread().interrupt();
+               throw new IOException("Interrupted while writing");
+            }catch (ExecutionException e) {
+               throw e.getCause() instanceof IOException ? (IOException) e.getCause()
+                  : new IOException(e.getCause());
+            }//end try
+         }//end for
+      }finally {
+         executor.shutdown();
+      }//end try
+   }//end writeCsv
+
+   private static long copy(Reader in, File file) throws IOException {
+      Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+      char[] buffer = new char[1 << 16];
+      long chars = 0;
+      try {
+         int n;
+         while ((n = in.read(buffer, 0, buffer.length)) > 0) {
+            out.write(buffer, 0, n);
+            chars += n;
+         }//end while
+      }finally {
+         in.close();
+         out.close();
+      }//end try
+      return chars;
+   }//end copy
+
+   private void appendUser(StringBuilder sb, Rng rng, int userID) {
+      rng.seed(this._seed, USER_STREAM, userID);
+      // user1 and user2 are a known manager and driver to log in with
+      double r = rng.nextDouble();
+      String role = userID == 1 || r < 0.005 ? "manager" : userID == 2 || r < 0.03 ? "driver" : "customer";
+      sb.append("user").append(userID).append(',')
+        .append("pw").append(userID).append(',')
+        .append(role).append(',');
+      appendCsv(sb, this._itemNames.get(this._itemZipf.sample(rng)));
+      sb.append(',');
+      appendDigits(sb, 200 + rng.nextInt(800), 3);
+      sb.append('-');
+      appendDigits(sb, rng.nextInt(1000), 3);
+      sb.append('-');
+      appendDigits(sb, rng.nextInt(10000), 4);
+      sb.append('\n');
+   }//end appendUser
+
+   private void appendStore(StringBuilder sb, Rng rng, int storeID) {
+      rng.seed(this._seed, STORE_STREAM, storeID);
+      String[] city = CITIES[rng.nextInt(CITIES.length)];
+      sb.append(storeID).append(',')
+        .append(1 + rng.nextInt(9999)).append(' ').append(STREETS[rng.nextInt(STREETS.length)]).append(',')
+        .append(city[0]).append(',').append(city[1]).append(',')
+        .append(rng.nextDouble() < 0.9 ? "yes" : "no").append(',')
+        .append((10 + rng.nextInt(41)) / 10.0)
+        .append('\n');
+   }//end appendStore
+
+   /*
+    * One generated order; reused for every order a reader produces.
+    **/
+   private final class Order {
+      final Rng rng = new Rng();
+      final int[] items = new int[MAX_LINES];
+      final int[] quantities = new int[MAX_LINES];
+      int lines;
+      long orderID;
+      int userID;
+      int storeID;
+      long cents;
+      long day;
+      int secondOfDay;
+
+      // memoized text of the current day, orders arrive in day order
+      long textDay = Long.MIN_VALUE;
+      String dayText;
+
+      Order generate(long orderID) {
+         Rng rng = this.rng;
+         rng.seed(_seed, ORDER_STREAM, orderID);
+         this.orderID = orderID;
+         this.userID = 1 + _userZipf.sample(rng);
+         this.storeID = 1 + _storeZipf.sample(rng);
+
+         // orderIDs grow with time: the order's day follows its position
+         this.day = _startDay + (orderID - 1) * _days / Math.max(1, _orders);
+         double r = rng.nextDouble();
+         double minute;
+         if (r < 0.4) {
+            minute = 12 * 60 + 30 + 50 * rng.nextGaussian();
+         }else if (r < 0.8) {
+            minute = 18 * 60 + 45 + 70 * rng.nextGaussian();
+         }else {
+            minute = 10 * 60 + 13 * 60 * rng.nextDouble();
+         }//end if
+         this.secondOfDay = (int) Math.max(0, Math.min(24 * 60 * 60 - 1, minute * 60));
+
+         // 1 + geometric number of distinct items
+         this.lines = 0;
+         this.cents = 0;
+         do {
+            int item = _itemZipf.sample(rng);
+            boolean seen = false;
+            for (int i = 0; i < this.lines; ++i) {
+               seen |= this.items[i] == item;
+            }//end for
+            if (!seen) {
+               int quantity = rng.nextDouble() < 0.75 ? 1 : 2 + rng.nextInt(2);
+               this.items[this.lines] = item;
+               this.quantities[this.lines] = quantity;
+               this.lines++;
+               this.cents += quantity * _itemCents.get(item);
+            }//end if
+         } while (this.lines < MAX_LINES && rng.nextDouble() < 0.55);
+         return this;
+      }//end generate
+
+      void appendHeader(StringBuilder sb) {
+         sb.append(this.orderID).append(",user").append(this.userID).append(',')
+           .append(this.storeID).append(',')
+           .append(this.cents / 100).append('.');
+         appendDigits(sb, (int) (this.cents % 100), 2);
+         sb.append(',');
+         if (this.day != this.textDay) {
+            this.textDay = this.day;
+            this.dayText = LocalDate.ofEpochDay(this.day).toString();
+         }//end if
+         sb.append(this.dayText).append(' ');
+         appendDigits(sb, this.secondOfDay / 3600, 2);
+         sb.append(':');
+         appendDigits(sb, this.secondOfDay / 60 % 60, 2);
+         sb.append(':');
+         appendDigits(sb, this.secondOfDay % 60, 2);
+         sb.append(',')
+           .append(status().label())
+           .append('\n');
+      }//end appendHeader
+
+      // the open orders are spread over the statuses before complete.
+      OrderStatus status() {
+         if (this.orderID <= _orders - (long) (_orders * OPEN_FRACTION)) {
+            return OrderStatus.COMPLETE;
+         }//end if
+         return OrderStatus.values()[(int) (this.orderID % OrderStatus.COMPLETE.rank())];
+      }//end status
+
+      void appendLines(StringBuilder sb) {
+         for (int i = 0; i < this.lines; ++i) {
+            sb.append(this.orderID).append(',');
+            appendCsv(sb, _itemNames.get(this.items[i]));
+            sb.append(',').append(this.quantities[i]).append('\n');
+         }//end for
+      }//end appendLines
+   }//end Order
+
+   private static void appendDigits(StringBuilder sb, int value, int digits) {
+      for (int d = digits - 1, pow = (int) Math.pow(10, d); d >= 0; --d, pow /= 10) {
+         sb.append((char) ('0' + value / pow % 10));
+      }//end for
+   }//end appendDigits
+
+   private static void appendCsv(StringBuilder sb, String value) {
+      if (value.indexOf(',') < 0 && value.indexOf('"') < 0) {
+         sb.append(value);
+         return;
+      }//end if
+      sb.append('"').append(value.replace("\"", "\"\"")).append('"');
+   }//end appendCsv
+
+   /*
+    * Produces the CSV text of a table on demand, a few thousand rows at a
+    * time, so even 1e8 orders never sit in memory.
+    **/
+   private abstract static class RowReader extends Reader {
+      private final StringBuilder _buffer = new StringBuilder(1 << 16);
+      private final long _rows;
+      private long _next = 1;
+      private int _pos = 0;
+
+      RowReader(String header, long rows) {
+         this._buffer.append(header).append('\n');
+         this._rows = rows;
+      }
+
+      // appends row number row (counted from 1).
+      abstract void append(StringBuilder sb, long row);
+
+      @Override
+      public int read(char[] cbuf, int off, int len) {
+         if (this._pos == this._buffer.length()) {
+            if (this._next > this._rows) {
+               return -1;
+            }//end if
+            this._buffer.setLength(0);
+            this._pos = 0;
+            while (this._buffer.length() < (1 << 15) && this._next <= this._rows) {
+               append(this._buffer, this._next++);
+            }//end while
+         }//end if
+         int n = Math.min(len, this._buffer.length() - this._pos);
+         this._buffer.getChars(this._pos, this._pos + n, cbuf, off);
+         this._pos += n;
+         return n;
+      }//end read
+
+      @Override
+      public void close() {
+         this._next = this._rows + 1;
+         this._pos = this._buffer.length();
+      }//end close
+   }//end RowReader
+
+   /*
+    * Draws ranks 0..n-1 with probability proportional to 1/(rank+1)^s by a
+    * binary search of the cumulative distribution. When scattered, ranks
+    * are spread over the ids by a fixed permutation, so the hottest stores
+    * and customers are not simply the lowest ids.
+    **/
+   private static final class Zipf {
+      private final double[] _cdf;
+      private final long _stride;
+
+      Zipf(int n, double s, boolean scattered) {
+         this._cdf = new double[n];
+         double sum = 0;
+         for (int i = 0; i < n; ++i) {
+            sum += 1 / Math.pow(i + 1, s);
+            this._cdf[i] = sum;
+         }//end for
+         for (int i = 0; i < n; ++i) {
+            this._cdf[i] /= sum;
+         }//end for
+         long stride = 1;
+         if (scattered) {
+            stride = Math.max(1, (long) (n * 0.618));
+            while (gcd(stride, n) != 1) {
+               stride++;
+            }//end while
+         }//end if
+         this._stride = stride;
+      }
+
+      int sample(Rng rng) {
+         double u = rng.nextDouble();
+         int lo = 0;
+         int hi = this._cdf.length - 1;
+         while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (this._cdf[mid] < u) {
+               lo = mid + 1;
+            }else {
+               hi = mid;
+            }//end if
+         }//end while
+         return (int) ((lo + 1) * this._stride % this._cdf.length);
+      }
+
+      private static long gcd(long a, long b) {
+         return b == 0 ? a : gcd(b, a % b);
+      }
+   }//end Zipf
+
+   /*
+    * SplitMix64: tiny, fast, and reseeded for every row so each row only
+    * depends on the seed and its own id.
+    **/
+   private static final class Rng {
+      private long _state;
+
+      void seed(long seed, long stream, long id) {
+         this._state = seed ^ (stream * 0xD1B54A32D192ED03L) ^ (id * 0x9E3779B97F4A7C15L);
+         nextLong();
+      }
+
+      long nextLong() {
+         long z = (this._state += 0x9E3779B97F4A7C15L);
+         z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+         z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+         return z ^ (z >>> 31);
+      }
+
+      double nextDouble() {
+         return (nextLong() >>> 11) * 0x1.0p-53;
+      }
+
+      int nextInt(int n) {
+         return (int) ((nextLong() >>> 1) % n);
+      }
+
+      double nextGaussian() {
+         double u = 1 - nextDouble();
+         return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * nextDouble());
+      }
+   }//end Rng
+
+   /**
+    * Returns pizzastore.gen.users, by default one user per 20 orders.
+    */
+   public static int defaultUsers(long orders) {
+      return Integer.getInteger("pizzastore.gen.users", (int) Math.min(1 << 20, Math.max(1000, orders / 20)));
+   }//end defaultUsers
+
+   /**
+    * Generates a data set into a directory or a database
+    *
+    * @param args <orders> <out dir> | <orders> <dbname> <port> <user>
+    */
+   public static void main(String[] args) {
+      if (args.length != 2 && args.length != 4) {
+         System.err.println(
+            "Usage: " +
+            "java [-classpath <classpath>] [-Dpizzastore.gen.seed=42] [-Dpizzastore.gen.users=N] " +
+            DataGenerator.class.getName() +
+            " <orders> (<out dir> | <dbname> <port> <user>)");
+         return;
+      }//end if
+
+      ConnectionPool pool = null;
+      try {
+         long orders = Long.parseLong(args[0]);
+         int users = defaultUsers(orders);
+         DataGenerator generator = new DataGenerator(DEFAULT_SEED, orders, users, DEFAULT_STORES, DEFAULT_DAYS,
+                                                     LocalDate.parse(DEFAULT_START), new File(DEFAULT_ITEMS));
+         System.out.println("Generating " + orders + " orders, " + users + " users, "
+                            + DEFAULT_STORES + " stores (seed " + DEFAULT_SEED + ")");
+         if (args.length == 2) {
+            generator.writeCsv(new File(args[1]));
+            return;
+         }//end if
+
+         String url = PizzaStore.connectionURL(args[1], args[2]);
+         pool = new ConnectionPool(url, args[3], "", 1, BulkLoader.DEFAULT_THREADS + 1);
+         pool.setLeakThresholdMillis(Long.MAX_VALUE / 2);
+         BulkLoader loader = new BulkLoader(pool, BulkLoader.DEFAULT_BATCH_ROWS, BulkLoader.DEFAULT_THREADS);
+         // the generated stores reuse the ids of the shipped ones
+         loader.setTruncate(Boolean.parseBoolean(System.getProperty("pizzastore.load.truncate", "true")));
+         loader.setDeferIndexes(Boolean.parseBoolean(System.getProperty("pizzastore.load.deferIndexes", "true")));
+         loader.load(generator);
+      }catch (Exception e) {
+         System.err.println(e.getMessage());
+      }finally {
+         if (pool != null) {
+            pool.close();
+         }//end if
+      }//end try
+   }//end main
+
+}//end DataGenerator
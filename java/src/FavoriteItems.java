@@ -0,0 +1,132 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class reads and changes the FavoriteItems of create_tables.sql, one
+ * (login, itemID) row per favorite item of a user. The primary key finds
+ * the favorites of a user, favoriteItemsItemIndex the users who favor an
+ * item. Users.favoriteItems only holds the text users.csv was loaded with,
+ * which IMPORT turns into rows.
+ *
+ */
+public class FavoriteItems {
+
+   /*
+    * The favorites of a user with their current price, in one query: what
+    * the profile shows and the basket placeOrder reorders.
+    **/
+   static final String BY_LOGIN =
+      "SELECT I.itemName, I.price " +
+      "FROM FavoriteItems F JOIN Items I ON I.itemID = F.itemID " +
+      "WHERE F.login = ? ORDER BY I.itemName";
+
+   private static final String ADD =
+      "INSERT INTO FavoriteItems (login, itemID) " +
+      "SELECT ?, itemID FROM Items WHERE itemName = ? " +
+      "ON CONFLICT DO NOTHING";
+
+   private static final String REMOVE =
+      "DELETE FROM FavoriteItems " +
+      "WHERE login = ? AND itemID = (SELECT itemID FROM Items WHERE itemName = ?)";
+
+   /*
+    * The users who favor an item, read in login order from
+    * favoriteItemsItemIndex alone; the count is of all of them, the logins
+    * are the first few. The itemID is looked up first, as a join would let
+    * the planner walk the whole primary key for the login order.
+    **/
+   static final String FAVORED_BY =
+      "SELECT F.login, count(*) OVER () AS users " +
+      "FROM FavoriteItems F " +
+      "WHERE F.itemID = (SELECT itemID FROM Items WHERE itemName = ?) " +
+      "ORDER BY F.login LIMIT ?";
+
+   /*
+    * Turns the favoriteItems text of every user into rows: the text is
+    * split on commas and each name matched to an item ignoring case and
+    * blanks. Names not on the menu are left out; rows already there are
+    * kept, so it can run again after more users are loaded.
+    **/
+   static final String IMPORT =
+      "INSERT INTO FavoriteItems (login, itemID) " +
+      "SELECT DISTINCT U.login, I.itemID " +
+      "FROM Users U CROSS JOIN LATERAL regexp_split_to_table(U.favoriteItems, ',') AS N(itemName) " +
+      "JOIN Items I ON lower(I.itemName) = lower(btrim(N.itemName)) " +
+      "ON CONFLICT DO NOTHING";
+
+   /**
+    * One favorite item of a user.
+    */
+   public static class Favorite {
+      private final String _itemName;
+      private final BigDecimal _price;
+
+      Favorite(String itemName, BigDecimal price) {
+         this._itemName = itemName;
+         this._price = price;
+      }//end Favorite
+
+      public String getItemName() { return this._itemName; }
+
+      // the price on the menu today.
+      public BigDecimal getPrice() { return this._price; }
+   }//end Favorite
+
+   private FavoriteItems() {
+   }
+
+   /**
+    * Reads the favorite items of a user.
+    *
+    * @param esql the data layer to read through
+    * @param login the user
+    * @return the favorites by item name, empty when the user has none
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public static List<Favorite> of(PizzaStore esql, String login) throws SQLException {
+      final List<Favorite> favorites = new ArrayList<Favorite>();
+      // a handful of rows, read in one reply without a cursor
+      esql.executeQueryAndStream(BY_LOGIN, 0, new Row.Handler() {
+         public void handle(Row row) throws SQLException {
+            favorites.add(new Favorite(row.getString(1), row.getBigDecimal(2)));
+         }
+      }, login);
+      return favorites;
+   }//end of
+
+   /**
+    * Adds an item to the favorites of a user.
+    *
+    * @return false when the item is not on the menu or already a favorite
+    * @throws java.sql.SQLException when failed to execute the update
+    */
+   public static boolean add(PizzaStore esql, String login, String itemName) throws SQLException {
+      return esql.executeUpdate(ADD, login, itemName) == 1;
+   }//end add
+
+   /**
+    * Removes an item from the favorites of a user.
+    *
+    * @return false when the item was not a favorite
+    * @throws java.sql.SQLException when failed to execute the update
+    */
+   public static boolean remove(PizzaStore esql, String login, String itemName) throws SQLException {
+      return esql.executeUpdate(REMOVE, login, itemName) == 1;
+   }//end remove
+
+}//end FavoriteItems
@@ -0,0 +1,137 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class limits how often a login may be tried, so a password cannot
+ * be guessed quickly from any number of terminals. Every login has a
+ * bucket of attempts that refills at a steady rate; an attempt takes one
+ * and is refused when the bucket is empty. A successful login refills the
+ * bucket.
+ *
+ */
+public class LoginRateLimiter {
+
+   // attempts allowed in a burst.
+   public static final int DEFAULT_BURST =
+      Integer.getInteger("pizzastore.auth.burst", 5);
+
+   // time for one attempt to come back.
+   public static final long DEFAULT_REFILL_MILLIS =
+      Long.getLong("pizzastore.auth.refillMillis", 12 * 1000L);
+
+   // logins tracked before full buckets are forgotten.
+   private static final int SWEEP_SIZE = 10000;
+
+   /**
+    * Thrown when a login has no attempts left.
+    */
+   public static class Throttled extends Exception {
+      private static final long serialVersionUID = 1L;
+
+      private final long _retryAfterMillis;
+
+      public Throttled(String login, long retryAfterMillis) {
+         super("Too many attempts for " + login + ", please try again in "
+               + Math.max(1, (retryAfterMillis + 999) / 1000) + " s");
+         this._retryAfterMillis = retryAfterMillis;
+      }//end Throttled
+
+      public long getRetryAfterMillis() { return this._retryAfterMillis; }
+   }//end Throttled
+
+   private static class Bucket {
+      double tokens;
+      long updatedAt;
+
+      Bucket(double tokens, long updatedAt) {
+         this.tokens = tokens;
+         this.updatedAt = updatedAt;
+      }
+   }//end Bucket
+
+   private final int _burst;
+   private final long _refillMillis;
+   private final ConcurrentHashMap<String, Bucket> _buckets = new ConcurrentHashMap<String, Bucket>();
+
+   /**
+    * Creates a new limiter
+    *
+    * @param burst the attempts allowed in a burst
+    * @param refillMillis the time for one attempt to come back
+    */
+   public LoginRateLimiter(int burst, long refillMillis) {
+      if (burst < 1 || refillMillis < 1) {
+         throw new IllegalArgumentException("burst and refillMillis must be positive");
+      }//end if
+      this._burst = burst;
+      this._refillMillis = refillMillis;
+   }//end LoginRateLimiter
+
+   /**
+    * Takes one attempt for a login.
+    *
+    * @throws LoginRateLimiter.Throttled when the login has no attempts left
+    */
+   public void acquire(String login) throws Throttled {
+      long now = System.currentTimeMillis();
+      if (this._buckets.size() > SWEEP_SIZE) {
+         sweep(now);
+      }//end if
+      Bucket bucket = this._buckets.get(login);
+      if (bucket == null) {
+         Bucket created = new Bucket(this._burst, now);
+         bucket = this._buckets.putIfAbsent(login, created);
+         if (bucket == null) {
+            bucket = created;
+         }//end if
+      }//end if
+      synchronized (bucket) {
+         refill(bucket, now);
+         if (bucket.tokens < 1) {
+            throw new Throttled(login, (long) Math.ceil((1 - bucket.tokens) * this._refillMillis));
+         }//end if
+         bucket.tokens -= 1;
+      }//end synchronized
+   }//end acquire
+
+   /**
+    * Gives a login all its attempts back after it succeeded.
+    */
+   public void reset(String login) {
+      this._buckets.remove(login);
+   }//end reset
+
+   private void refill(Bucket bucket, long now) {
+      bucket.tokens = Math.min(this._burst, bucket.tokens + (now - bucket.updatedAt) / (double) this._refillMillis);
+      bucket.updatedAt = now;
+   }//end refill
+
+   // forgets the logins whose bucket has filled up again.
+   private void sweep(long now) {
+      Iterator<Map.Entry<String, Bucket>> it = this._buckets.entrySet().iterator();
+      while (it.hasNext()) {
+         Bucket bucket = it.next().getValue();
+         synchronized (bucket) {
+            refill(bucket, now);
+            if (bucket.tokens >= this._burst) {
+               it.remove();
+            }//end if
+         }//end synchronized
+      }//end while
+   }//end sweep
+
+}//end LoginRateLimiter
@@ -0,0 +1,305 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+/**
+ * This class keeps the Items table in memory as an immutable snapshot,
+ * indexed by item name, by type of item and by price. Browsing the menu is
+ * answered from the snapshot; writes made through updateMenu swap in a new
+ * one, and writes made by other processes are picked up through the
+ * menu_changed notification raised by the trigger in triggers.sql.
+ *
+ */
+public class MenuCatalog {
+
+   // channel notified by the Items trigger.
+   public static final String CHANNEL = "menu_changed";
+
+   // longest wait for a notification before the listener checks for close().
+   public static final long POLL_MILLIS =
+      Long.getLong("pizzastore.menu.pollMillis", 1000L);
+
+   private static final String LOAD_QUERY =
+      "SELECT itemName, ingredients, typeOfItem, price, description FROM Items";
+
+   private final PizzaStore _esql;
+   private final ConnectionPool _pool;
+
+   // null until the first read, and again after an invalidation.
+   private final AtomicReference<Snapshot> _snapshot = new AtomicReference<Snapshot>();
+
+   // bumped by every invalidation, so a load that raced with one is dropped.
+   private final AtomicLong _generation = new AtomicLong();
+
+   private Thread _listener = null;
+   private volatile boolean _closed = false;
+
+   /**
+    * Creates a new, empty catalog. Nothing is read until it is first used.
+    *
+    * @param esql the data layer the menu is read through
+    * @param pool the pool the listener connection is opened from
+    */
+   public MenuCatalog(PizzaStore esql, ConnectionPool pool) {
+      this._esql = esql;
+      this._pool = pool;
+   }//end MenuCatalog
+
+   /**
+    * Returns the current snapshot, reading the Items table when there is none.
+    *
+    * @return the current snapshot
+    * @throws java.sql.SQLException when the menu could not be read
+    */
+   public Snapshot snapshot() throws SQLException {
+      Snapshot snapshot = this._snapshot.get();
+      if (snapshot != null) {
+         return snapshot;
+      }//end if
+      startListener();
+      long generation = this._generation.get();
+      snapshot = load();
+      if (this._generation.get() == generation) {
+         this._snapshot.compareAndSet(null, snapshot);
+      }//end if
+      return snapshot;
+   }//end snapshot
+
+   /**
+    * Reads the Items table again and swaps in the new snapshot. Called after
+    * every write to the menu.
+    *
+    * @return the new snapshot
+    * @throws java.sql.SQLException when the menu could not be read
+    */
+   public synchronized Snapshot refresh() throws SQLException {
+      this._generation.incrementAndGet();
+      Snapshot snapshot = load();
+      this._snapshot.set(snapshot);
+      return snapshot;
+   }//end refresh
+
+   /**
+    * Drops the current snapshot; the next read loads a new one.
+    */
+   public void invalidate() {
+      this._generation.incrementAndGet();
+      this._snapshot.set(null);
+   }//end invalidate
+
+   /**
+    * Stops listening for menu changes.
+    */
+   public synchronized void close() {
+      this._closed = true;
+      if (this._listener != null) {
+         this._listener.interrupt();
+      }//end if
+   }//end close
+
+   private Snapshot load() throws SQLException {
+      List<List<String>> rows = this._esql.executeQueryAndReturnResult(LOAD_QUERY);
+      List<MenuItem> items = new ArrayList<MenuItem>(rows.size());
+      for (List<String> row : rows) {
+         items.add(new MenuItem(row.get(0), row.get(1), row.get(2),
+                                new BigDecimal(row.get(3).trim()), row.get(4)));
+      }//end for
+      return new Snapshot(items);
+   }//end load
+
+   private synchronized void startListener() {
+      if (this._listener != null || this._closed || this._pool == null) {
+         return;
+      }//end if
+      this._listener = new Thread(new Runnable() {
+         public void run() { listen(); }
+      }, "menu-catalog-listener");
+      this._listener.setDaemon(true);
+      this._listener.start();
+   }//end startListener
+
+   /*
+    * Holds a dedicated connection that LISTENs on the menu channel and drops
+    * the snapshot whenever a notification arrives. The driver blocks on the
+    * socket for up to POLL_MILLIS waiting for one, so nothing is sent to the
+    * server while the menu is unchanged. If the connection fails the
+    * snapshot can no longer be trusted, so it is dropped as well before
+    * reconnecting.
+    **/
+   private void listen() {
+      while (!this._closed) {
+         Connection conn = null;
+         try {
+            conn = this._pool.openDedicated();
+            Statement stmt = conn.createStatement();
+            stmt.execute("LISTEN " + CHANNEL);
+            // a change committed before the LISTEN was not notified here
+            invalidate();
+            while (!this._closed) {
+               PGNotification[] notifications =
+                  conn.unwrap(PGConnection.class).getNotifications((int) POLL_MILLIS);
+               if (notifications != null && notifications.length > 0) {
+                  invalidate();
+               }//end if
+            }//end while
+         }catch (SQLException e) {
+            invalidate();
+            try {
+               Thread.sleep(POLL_MILLIS * 5);
+            }catch (InterruptedException ie) {
+               return;
+            }//end try
+         }finally {
+            if (conn != null) {
+               try {
+                  conn.close();
+               }catch (SQLException e) {
+                  // ignored.
+               }//end try
+            }//end if
+         }//end try
+      }//end while
+   }//end listen
+
+   /**
+    * One row of the Items table.
+    */
+   public static class MenuItem {
+
+      private final String _itemName;
+      private final String _ingredients;
+      private final String _typeOfItem;
+      private final BigDecimal _price;
+      private final String _description;
+
+      public MenuItem(String itemName, String ingredients, String typeOfItem,
+                      BigDecimal price, String description) {
+         this._itemName = itemName;
+         this._ingredients = ingredients;
+         this._typeOfItem = typeOfItem;
+         this._price = price;
+         this._description = description;
+      }//end MenuItem
+
+      public String getItemName() { return this._itemName; }
+      public String getIngredients() { return this._ingredients; }
+      public String getTypeOfItem() { return this._typeOfItem; }
+      public BigDecimal getPrice() { return this._price; }
+      public String getDescription() { return this._description; }
+
+   }//end MenuItem
+
+   /**
+    * The whole menu at one point in time. Never modified after it is built.
+    */
+   public static class Snapshot {
+
+      private static final Comparator<MenuItem> BY_PRICE = new Comparator<MenuItem>() {
+         public int compare(MenuItem a, MenuItem b) {
+            int cmp = a.getPrice().compareTo(b.getPrice());
+            return cmp != 0 ? cmp : a.getItemName().compareTo(b.getItemName());
+         }
+      };
+
+      private final Map<String, MenuItem> _byName;
+      private final Map<String, List<MenuItem>> _byType;
+      private final List<MenuItem> _byPrice;
+      private final BigDecimal[] _prices;
+
+      Snapshot(List<MenuItem> items) {
+         List<MenuItem> byPrice = new ArrayList<MenuItem>(items);
+         Collections.sort(byPrice, BY_PRICE);
+
+         Map<String, MenuItem> byName = new HashMap<String, MenuItem>();
+         // types are trimmed, the loaded data keeps the leading space of the CSV.
+         TreeMap<String, List<MenuItem>> byType = new TreeMap<String, List<MenuItem>>();
+         BigDecimal[] prices = new BigDecimal[byPrice.size()];
+         for (int i = 0; i < byPrice.size(); ++i) {
+            MenuItem item = byPrice.get(i);
+            byName.put(item.getItemName(), item);
+            String type = item.getTypeOfItem().trim();
+            List<MenuItem> ofType = byType.get(type);
+            if (ofType == null) {
+               ofType = new ArrayList<MenuItem>();
+               byType.put(type, ofType);
+            }//end if
+            ofType.add(item);
+            prices[i] = item.getPrice();
+         }//end for
+         for (Map.Entry<String, List<MenuItem>> entry : byType.entrySet()) {
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+         }//end for
+
+         this._byName = Collections.unmodifiableMap(byName);
+         this._byType = Collections.unmodifiableMap(byType);
+         this._byPrice = Collections.unmodifiableList(byPrice);
+         this._prices = prices;
+      }//end Snapshot
+
+      // the item with that exact name, or null.
+      public MenuItem item(String itemName) { return this._byName.get(itemName); }
+
+      // the distinct types of item, sorted.
+      public List<String> types() { return new ArrayList<String>(this._byType.keySet()); }
+
+      // the items of one type, cheapest first; spaces around the type are ignored.
+      public List<MenuItem> ofType(String typeOfItem) {
+         List<MenuItem> items = this._byType.get(typeOfItem.trim());
+         return items != null ? items : Collections.<MenuItem>emptyList();
+      }//end ofType
+
+      // every item, cheapest first.
+      public List<MenuItem> byPriceAscending() { return this._byPrice; }
+
+      // every item, most expensive first.
+      public List<MenuItem> byPriceDescending() {
+         List<MenuItem> items = new ArrayList<MenuItem>(this._byPrice);
+         Collections.reverse(items);
+         return items;
+      }//end byPriceDescending
+
+      // the items costing at most the limit, cheapest first.
+      public List<MenuItem> atMost(BigDecimal limit) {
+         int lo = 0, hi = this._prices.length;
+         while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (this._prices[mid].compareTo(limit) <= 0) {
+               lo = mid + 1;
+            }else {
+               hi = mid;
+            }//end if
+         }//end while
+         return this._byPrice.subList(0, lo);
+      }//end atMost
+
+      public int size() { return this._byPrice.size(); }
+
+   }//end Snapshot
+
+}//end MenuCatalog
@@ -0,0 +1,485 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+/**
+ * This class keeps the open orders, those not complete yet, of the stores
+ * being watched in memory. A store's board is read the first time it is
+ * viewed; from then on the orders_changed notification of the FoodOrder
+ * triggers in triggers.sql names the orders that joined, changed on or
+ * left a board, and the listener reads those rows again and applies them.
+ * A reader sees the board change without querying it, and can wait for
+ * the next change instead of polling.
+ *
+ */
+public class OrderBoard {
+
+   // channel notified by the FoodOrder triggers.
+   public static final String CHANNEL = "orders_changed";
+
+   // longest wait for a notification before the listener checks for close().
+   public static final long POLL_MILLIS =
+      Long.getLong("pizzastore.board.pollMillis", 1000L);
+
+   // changes remembered per store for readers that fell behind.
+   public static final int DEFAULT_HISTORY =
+      Integer.getInteger("pizzastore.board.history", 256);
+
+   // longest time the menu waits for the next change of a board.
+   public static final long DEFAULT_WAIT_MILLIS =
+      Long.getLong("pizzastore.board.waitMillis", 30 * 1000L);
+
+   // longest time a reader waits for the listener to start.
+   private static final long LISTEN_TIMEOUT_MILLIS = 10 * 1000L;
+
+   private static final String COLUMNS =
+      "SELECT orderID, login, storeID, totalPrice, orderTimestamp, orderStatus FROM FoodOrder ";
+
+   // served by foodOrderStoreStatusIndex, one range per open status.
+   private static final String STORE_QUERY =
+      COLUMNS + "WHERE storeID = ? AND orderStatus IN (" + openLabels() + ") ORDER BY orderID";
+
+   private static final String ROWS_QUERY =
+      COLUMNS + "WHERE orderID = ANY (string_to_array(?::text, ',')::integer[])";
+
+   /**
+    * One open order.
+    */
+   public static class OpenOrder {
+
+      private final int _orderID;
+      private final String _login;
+      private final int _storeID;
+      private final BigDecimal _totalPrice;
+      private final String _orderTimestamp;
+      private final OrderStatus _status;
+
+      public OpenOrder(int orderID, String login, int storeID, BigDecimal totalPrice,
+                       String orderTimestamp, OrderStatus status) {
+         this._orderID = orderID;
+         this._login = login;
+         this._storeID = storeID;
+         this._totalPrice = totalPrice;
+         this._orderTimestamp = orderTimestamp;
+         this._status = status;
+      }//end OpenOrder
+
+      public int getOrderID() { return this._orderID; }
+      public String getLogin() { return this._login; }
+      public int getStoreID() { return this._storeID; }
+      public BigDecimal getTotalPrice() { return this._totalPrice; }
+      public String getOrderTimestamp() { return this._orderTimestamp; }
+      public OrderStatus getStatus() { return this._status; }
+
+   }//end OpenOrder
+
+   /**
+    * One change of a store's board: the order as it is now, or no order
+    * when it left the board.
+    */
+   public static class Change {
+
+      private final int _orderID;
+      private final OpenOrder _order;
+
+      Change(int orderID, OpenOrder order) {
+         this._orderID = orderID;
+         this._order = order;
+      }//end Change
+
+      public int getOrderID() { return this._orderID; }
+
+      // the order now, or null when it is complete, gone or moved away.
+      public OpenOrder getOrder() { return this._order; }
+
+   }//end Change
+
+   /**
+    * The open orders of a store at one version, oldest first.
+    */
+   public static class View {
+
+      private final long _version;
+      private final List<OpenOrder> _orders;
+
+      View(long version, List<OpenOrder> orders) {
+         this._version = version;
+         this._orders = orders;
+      }//end View
+
+      public long getVersion() { return this._version; }
+      public List<OpenOrder> getOrders() { return this._orders; }
+
+   }//end View
+
+   /**
+    * The changes of a store after a version. When the reader fell behind
+    * the remembered history, or the board was loaded again, there are no
+    * changes but isReset(): the whole board must be read again.
+    */
+   public static class Changes {
+
+      private final long _version;
+      private final boolean _reset;
+      private final List<Change> _changes;
+
+      Changes(long version, boolean reset, List<Change> changes) {
+         this._version = version;
+         this._reset = reset;
+         this._changes = changes;
+      }//end Changes
+
+      public long getVersion() { return this._version; }
+      public boolean isReset() { return this._reset; }
+      public List<Change> getChanges() { return this._changes; }
+
+   }//end Changes
+
+   /*
+    * The board of one store. Loaded by its first reader and changed by the
+    * listener; readers wait on its monitor for the next version.
+    **/
+   private static class StoreBoard {
+
+      private final int _storeID;
+      private final TreeMap<Integer, OpenOrder> _orders = new TreeMap<Integer, OpenOrder>();
+      private final ArrayDeque<Change> _history = new ArrayDeque<Change>();
+      private final int _historySize;
+      private boolean _loaded = false;
+      private long _version = 0;
+      // readers of an older version must read the whole board again.
+      private long _resetVersion = 0;
+
+      StoreBoard(int storeID, int historySize) {
+         this._storeID = storeID;
+         this._historySize = historySize;
+      }//end StoreBoard
+
+      synchronized boolean isLoaded() {
+         return this._loaded;
+      }//end isLoaded
+
+      // ignored until the board is loaded, which reads the order anyway.
+      synchronized void put(OpenOrder order, Map<Integer, Integer> storeOf) {
+         if (this._loaded) {
+            this._orders.put(order.getOrderID(), order);
+            storeOf.put(order.getOrderID(), this._storeID);
+            changed(new Change(order.getOrderID(), order));
+         }//end if
+      }//end put
+
+      synchronized void remove(int orderID, Map<Integer, Integer> storeOf) {
+         if (this._orders.remove(orderID) != null) {
+            storeOf.remove(orderID, this._storeID);
+            changed(new Change(orderID, null));
+         }//end if
+      }//end remove
+
+      // reads the open orders of the store; holding the monitor meanwhile
+      // makes the listener apply any later change after the load.
+      synchronized void load(PizzaStore esql, Map<Integer, Integer> storeOf) throws SQLException {
+         List<List<String>> rows = esql.executeQueryAndReturnResult(STORE_QUERY, this._storeID);
+         for (Integer orderID : this._orders.keySet()) {
+            storeOf.remove(orderID, this._storeID);
+         }//end for
+         this._orders.clear();
+         for (List<String> row : rows) {
+            OpenOrder order = order(row);
+            this._orders.put(order.getOrderID(), order);
+            storeOf.put(order.getOrderID(), this._storeID);
+         }//end for
+         this._history.clear();
+         this._resetVersion = ++this._version;
+         this._loaded = true;
+         notifyAll();
+      }//end load
+
+      synchronized View view() {
+         return new View(this._version, Collections.unmodifiableList(new ArrayList<OpenOrder>(this._orders.values())));
+      }//end view
+
+      synchronized int size() {
+         return this._orders.size();
+      }//end size
+
+      synchronized Changes since(long version, long timeoutMillis) throws InterruptedException {
+         long deadline = System.currentTimeMillis() + timeoutMillis;
+         long left;
+         while (this._version == version && (left = deadline - System.currentTimeMillis()) > 0) {
+            wait(left);
+         }//end while
+         if (version < this._resetVersion || version < this._version - this._history.size()) {
+            return new Changes(this._version, true, Collections.<Change>emptyList());
+         }//end if
+         List<Change> changes = new ArrayList<Change>((int) (this._version - version));
+         long at = this._version - this._history.size();
+         for (Change change : this._history) {
+            if (++at > version) {
+               changes.add(change);
+            }//end if
+         }//end for
+         return new Changes(this._version, false, changes);
+      }//end since
+
+      private void changed(Change change) {
+         ++this._version;
+         this._history.addLast(change);
+         if (this._history.size() > this._historySize) {
+            this._history.removeFirst();
+         }//end if
+         notifyAll();
+      }//end changed
+
+   }//end StoreBoard
+
+   private final PizzaStore _esql;
+   private final ConnectionPool _pool;
+   private final int _historySize;
+
+   private final ConcurrentHashMap<Integer, StoreBoard> _stores = new ConcurrentHashMap<Integer, StoreBoard>();
+   // the store of every order on a loaded board, to find one that left it.
+   private final ConcurrentHashMap<Integer, Integer> _storeOf = new ConcurrentHashMap<Integer, Integer>();
+
+   private final CountDownLatch _listening = new CountDownLatch(1);
+   private final AtomicLong _notifications = new AtomicLong();
+   private final AtomicLong _ordersRead = new AtomicLong();
+   private final AtomicLong _loads = new AtomicLong();
+
+   private Thread _listener = null;
+   private volatile boolean _closed = false;
+
+   /**
+    * Creates a new, empty board. Nothing is read until it is first used.
+    *
+    * @param esql the data layer the orders are read through
+    * @param pool the pool the listener connection is opened from
+    * @param historySize the changes remembered per store
+    */
+   public OrderBoard(PizzaStore esql, ConnectionPool pool, int historySize) {
+      this._esql = esql;
+      this._pool = pool;
+      this._historySize = historySize;
+   }//end OrderBoard
+
+   /**
+    * Returns the open orders of a store.
+    *
+    * @param storeID the store
+    * @return the board of the store, oldest order first
+    * @throws java.sql.SQLException when the board could not be loaded
+    */
+   public View view(int storeID) throws SQLException {
+      return loaded(storeID).view();
+   }//end view
+
+   /**
+    * Waits until the board of a store changes after a version, or the
+    * timeout passes.
+    *
+    * @param storeID the store
+    * @param version the version the reader has seen
+    * @param timeoutMillis the longest time to wait
+    * @return the changes after the version, none when the timeout passed
+    * @throws java.sql.SQLException when the board could not be loaded
+    */
+   public Changes awaitChanges(int storeID, long version, long timeoutMillis)
+         throws SQLException, InterruptedException {
+      return loaded(storeID).since(version, timeoutMillis);
+   }//end awaitChanges
+
+   /**
+    * Stops listening for order changes.
+    */
+   public synchronized void close() {
+      this._closed = true;
+      if (this._listener != null) {
+         this._listener.interrupt();
+      }//end if
+   }//end close
+
+   @Override
+   public String toString() {
+      int orders = 0;
+      for (StoreBoard board : this._stores.values()) {
+         orders += board.size();
+      }//end for
+      return "open orders " + orders + " on " + this._stores.size() + " boards, loads " + this._loads.get()
+         + ", notifications " + this._notifications.get() + ", orders read " + this._ordersRead.get();
+   }//end toString
+
+   // the board of a store, read once the listener is sure to see later changes.
+   private StoreBoard loaded(int storeID) throws SQLException {
+      StoreBoard board = this._stores.get(storeID);
+      if (board == null) {
+         StoreBoard created = new StoreBoard(storeID, this._historySize);
+         board = this._stores.putIfAbsent(storeID, created);
+         if (board == null) {
+            board = created;
+         }//end if
+      }//end if
+      if (!board.isLoaded()) {
+         awaitListening();
+         synchronized (board) {
+            if (!board.isLoaded()) {
+               board.load(this._esql, this._storeOf);
+               this._loads.incrementAndGet();
+            }//end if
+         }//end synchronized
+      }//end if
+      return board;
+   }//end loaded
+
+   private void awaitListening() throws SQLException {
+      startListener();
+      try {
+         if (!this._listening.await(LISTEN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+            throw new SQLException("The order board could not listen for changes");
+         }//end if
+      }catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new SQLException("Interrupted while the order board was starting");
+      }//end try
+   }//end awaitListening
+
+   private synchronized void startListener() {
+      if (this._listener != null || this._closed) {
+         return;
+      }//end if
+      this._listener = new Thread(new Runnable() {
+         public void run() { listen(); }
+      }, "order-board-listener");
+      this._listener.setDaemon(true);
+      this._listener.start();
+   }//end startListener
+
+   /*
+    * Holds a dedicated connection that LISTENs on the orders channel; no
+    * board is read before it does, so no change is missed. A notification
+    * for an order already read only makes the listener read it again. If
+    * the connection fails, the loaded boards are read again after
+    * reconnecting, since notifications may have been lost meanwhile.
+    **/
+   private void listen() {
+      while (!this._closed) {
+         Connection conn = null;
+         try {
+            conn = this._pool.openDedicated();
+            Statement stmt = conn.createStatement();
+            stmt.execute("LISTEN " + CHANNEL);
+            if (this._listening.getCount() == 0) {
+               reload();
+            }//end if
+            this._listening.countDown();
+            while (!this._closed) {
+               PGNotification[] notifications =
+                  conn.unwrap(PGConnection.class).getNotifications((int) POLL_MILLIS);
+               if (notifications != null && notifications.length > 0) {
+                  StringBuilder orderIDs = new StringBuilder();
+                  for (PGNotification notification : notifications) {
+                     if (orderIDs.length() > 0) {
+                        orderIDs.append(',');
+                     }//end if
+                     orderIDs.append(notification.getParameter());
+                  }//end for
+                  this._notifications.addAndGet(notifications.length);
+                  apply(orderIDs.toString());
+               }//end if
+            }//end while
+         }catch (SQLException e) {
+            try {
+               Thread.sleep(POLL_MILLIS * 5);
+            }catch (InterruptedException ie) {
+               return;
+            }//end try
+         }finally {
+            if (conn != null) {
+               try {
+                  conn.close();
+               }catch (SQLException e) {
+                  // ignored.
+               }//end try
+            }//end if
+         }//end try
+      }//end while
+   }//end listen
+
+   // reads every loaded board again.
+   private void reload() throws SQLException {
+      for (StoreBoard board : this._stores.values()) {
+         if (board.isLoaded()) {
+            board.load(this._esql, this._storeOf);
+            this._loads.incrementAndGet();
+         }//end if
+      }//end for
+   }//end reload
+
+   // reads the notified orders and moves each onto, within or off the boards.
+   private void apply(String orderIDs) throws SQLException {
+      Map<Integer, OpenOrder> current = new HashMap<Integer, OpenOrder>();
+      for (List<String> row : this._esql.executeQueryAndReturnResult(ROWS_QUERY, orderIDs)) {
+         OpenOrder order = order(row);
+         current.put(order.getOrderID(), order);
+      }//end for
+      this._ordersRead.addAndGet(current.size());
+      for (String id : orderIDs.split(",")) {
+         int orderID = Integer.parseInt(id.trim());
+         OpenOrder order = current.get(orderID);
+         Integer was = this._storeOf.get(orderID);
+         if (was != null && (order == null || !order.getStatus().isOpen() || was != order.getStoreID())) {
+            this._stores.get(was).remove(orderID, this._storeOf);
+         }//end if
+         StoreBoard board = order == null ? null : this._stores.get(order.getStoreID());
+         if (board != null && order.getStatus().isOpen()) {
+            board.put(order, this._storeOf);
+         }//end if
+      }//end for
+   }//end apply
+
+   private static OpenOrder order(List<String> row) {
+      OrderStatus status = OrderStatus.parse(row.get(5));
+      return new OpenOrder(Integer.parseInt(row.get(0).trim()), row.get(1), Integer.parseInt(row.get(2).trim()),
+                           new BigDecimal(row.get(3).trim()), row.get(4),
+                           // free text left by the old status menu is not on a board
+                           status != null ? status : OrderStatus.COMPLETE);
+   }//end order
+
+   // the stored values of the open statuses, as SQL literals.
+   private static String openLabels() {
+      StringBuilder labels = new StringBuilder("'").append(OrderStatus.LEGACY_PLACED).append('\'');
+      for (OrderStatus status : OrderStatus.values()) {
+         if (status.isOpen()) {
+            labels.append(", '").append(status.label()).append('\'');
+         }//end if
+      }//end for
+      return labels.toString();
+   }//end openLabels
+
+}//end OrderBoard
@@ -0,0 +1,141 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class describes one order as viewOrderInfo shows it: the FoodOrder
+ * row and its ItemsInOrder lines with the current price of every item,
+ * read in one query.
+ *
+ */
+public class OrderDetail {
+
+   /*
+    * The order and its lines, one row per line, named by the items'
+    * current names; an order without lines comes back as one row whose
+    * line columns are null.
+    **/
+   static final String QUERY =
+      "SELECT F.orderID, F.login, F.storeID, F.orderTimestamp, F.totalPrice, F.orderStatus, " +
+      "       M.itemName, I.quantity, M.price " +
+      "FROM FoodOrder F " +
+      "LEFT JOIN ItemsInOrder I ON I.orderID = F.orderID " +
+      "LEFT JOIN Items M ON M.itemID = I.itemID " +
+      "WHERE F.orderID = ? " +
+      "ORDER BY M.itemName";
+
+   /**
+    * One item of an order.
+    */
+   public static class Line {
+      private final String _itemName;
+      private final int _quantity;
+      private final BigDecimal _price;
+
+      Line(String itemName, int quantity, BigDecimal price) {
+         this._itemName = itemName;
+         this._quantity = quantity;
+         this._price = price;
+      }//end Line
+
+      public String getItemName() { return this._itemName; }
+      public int getQuantity() { return this._quantity; }
+
+      // the price on the menu today.
+      public BigDecimal getPrice() { return this._price; }
+
+      public BigDecimal getAmount() {
+         return this._price.multiply(BigDecimal.valueOf(this._quantity));
+      }//end getAmount
+   }//end Line
+
+   private final int _orderID;
+   private final String _login;
+   private final int _storeID;
+   private final Timestamp _orderTimestamp;
+   private final BigDecimal _totalPrice;
+   private final String _orderStatus;
+   private final List<Line> _lines;
+
+   OrderDetail(int orderID, String login, int storeID, Timestamp orderTimestamp, BigDecimal totalPrice,
+               String orderStatus, List<Line> lines) {
+      this._orderID = orderID;
+      this._login = login;
+      this._storeID = storeID;
+      this._orderTimestamp = orderTimestamp;
+      this._totalPrice = totalPrice;
+      this._orderStatus = orderStatus;
+      this._lines = Collections.unmodifiableList(lines);
+   }//end OrderDetail
+
+   public int getOrderID() { return this._orderID; }
+   public String getLogin() { return this._login; }
+   public int getStoreID() { return this._storeID; }
+   public Timestamp getOrderTimestamp() { return this._orderTimestamp; }
+   public BigDecimal getTotalPrice() { return this._totalPrice; }
+   // null when the order has no status.
+   public String getOrderStatus() { return this._orderStatus; }
+
+   // null when the stored text is not a known status.
+   public OrderStatus getStatus() { return OrderStatus.parse(this._orderStatus); }
+
+   public boolean isComplete() { return getStatus() == OrderStatus.COMPLETE; }
+
+   public List<Line> getLines() { return this._lines; }
+
+   public int getItemCount() {
+      int count = 0;
+      for (Line line : this._lines) {
+         count += line.getQuantity();
+      }//end for
+      return count;
+   }//end getItemCount
+
+   /**
+    * Reads an order and its lines.
+    *
+    * @param esql the data layer to read through
+    * @param orderID the order
+    * @return the order, or null when there is none with that orderID
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   static OrderDetail read(PizzaStore esql, int orderID) throws SQLException {
+      final OrderDetail[] header = new OrderDetail[1];
+      // filled after the header is built, which holds an unmodifiable view of it
+      final List<Line> lines = new ArrayList<Line>();
+      // a handful of rows, read in one reply without a cursor
+      esql.executeQueryAndStream(QUERY, 0, new Row.Handler() {
+         public void handle(Row row) throws SQLException {
+            if (header[0] == null) {
+               // orderStatus is nullable, and orders placed by older versions left it null
+               String status = row.getString(6);
+               header[0] = new OrderDetail(row.getInt(1), row.getString(2).trim(), row.getInt(3),
+                                           row.getTimestamp(4), row.getBigDecimal(5),
+                                           status == null ? null : status.trim(), lines);
+            }//end if
+            String itemName = row.getString(7);
+            if (itemName != null) {
+               lines.add(new Line(itemName, row.getInt(8), row.getBigDecimal(9)));
+            }//end if
+         }
+      }, orderID);
+      return header[0];
+   }//end read
+
+}//end OrderDetail
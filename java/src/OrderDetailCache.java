@@ -0,0 +1,122 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class caches the details of complete orders. A complete order can
+ * no longer change status, so a detail read once is served again to every
+ * session for a short time; open orders are always read afresh, as their
+ * status moves on. The short time covers the rare changes a complete order
+ * still sees, such as its items being renamed or repriced.
+ *
+ */
+public class OrderDetailCache {
+
+   // number of orders kept.
+   public static final int DEFAULT_CAPACITY =
+      Integer.getInteger("pizzastore.orderDetail.capacity", 1024);
+
+   // how long a cached detail is trusted.
+   public static final long DEFAULT_TTL_MILLIS =
+      Long.getLong("pizzastore.orderDetail.ttlMillis", 30 * 1000L);
+
+   private static class Cached {
+      final OrderDetail detail;
+      final long loadedAt;
+
+      Cached(OrderDetail detail, long loadedAt) {
+         this.detail = detail;
+         this.loadedAt = loadedAt;
+      }
+   }//end Cached
+
+   private final PizzaStore _esql;
+   private final int _capacity;
+   private final long _ttlMillis;
+
+   // guarded by this.
+   private final LinkedHashMap<Integer, Cached> _byOrder;
+   // moved on by clear(), so a read that started before it is not cached.
+   private long _generation = 0;
+   private long _hits = 0;
+   private long _misses = 0;
+
+   /**
+    * Creates a new, empty cache
+    *
+    * @param esql the data layer misses are read through
+    * @param capacity the number of orders kept
+    * @param ttlMillis how long a cached detail is trusted
+    */
+   public OrderDetailCache(PizzaStore esql, int capacity, long ttlMillis) {
+      this._esql = esql;
+      this._capacity = capacity;
+      this._ttlMillis = ttlMillis;
+      this._byOrder = new LinkedHashMap<Integer, Cached>(16, 0.75f, true) {
+         @Override
+         protected boolean removeEldestEntry(Map.Entry<Integer, Cached> eldest) {
+            return size() > OrderDetailCache.this._capacity;
+         }
+      };
+   }//end OrderDetailCache
+
+   /**
+    * Returns an order and its lines.
+    *
+    * @param orderID the order
+    * @return the order, or null when there is none with that orderID
+    * @throws java.sql.SQLException when a miss could not be read
+    */
+   public OrderDetail get(int orderID) throws SQLException {
+      long generation;
+      synchronized (this) {
+         Cached cached = this._byOrder.get(orderID);
+         if (cached != null && System.currentTimeMillis() - cached.loadedAt < this._ttlMillis) {
+            this._hits++;
+            return cached.detail;
+         }//end if
+         this._misses++;
+         generation = this._generation;
+      }//end synchronized
+
+      long loadedAt = System.currentTimeMillis();
+      OrderDetail detail = OrderDetail.read(this._esql, orderID);
+      if (detail != null && detail.isComplete()) {
+         synchronized (this) {
+            if (this._generation == generation) {
+               this._byOrder.put(orderID, new Cached(detail, loadedAt));
+            }//end if
+         }//end synchronized
+      }//end if
+      return detail;
+   }//end get
+
+   /**
+    * Forgets every cached order, after a change to the items of past
+    * orders.
+    */
+   public synchronized void clear() {
+      this._generation++;
+      this._byOrder.clear();
+   }//end clear
+
+   @Override
+   public synchronized String toString() {
+      return String.format("orders=%d/%d hits=%d misses=%d", this._byOrder.size(), this._capacity,
+                           this._hits, this._misses);
+   }//end toString
+
+}//end OrderDetailCache
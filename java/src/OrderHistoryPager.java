@@ -0,0 +1,166 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class pages through the orders of one login, newest first, using
+ * keyset pagination on (login, orderTimestamp, orderID): each page starts
+ * right after the last row of the previous one instead of skipping rows
+ * with OFFSET, so every page is one range scan of foodOrderHistoryIndex no
+ * matter how deep into the history it is.
+ *
+ */
+public class OrderHistoryPager {
+
+   // orders shown per page.
+   public static final int DEFAULT_PAGE_SIZE =
+      Integer.getInteger("pizzastore.history.pageSize", 20);
+
+   private static final String COLUMNS =
+      "SELECT orderID, orderTimestamp, totalPrice, orderStatus FROM FoodOrder ";
+
+   private static final String FIRST_PAGE = COLUMNS +
+      "WHERE login = ? " +
+      "ORDER BY orderTimestamp DESC, orderID DESC LIMIT ?";
+
+   private static final String PAGE_AFTER = COLUMNS +
+      "WHERE login = ? AND (orderTimestamp, orderID) < (?, ?) " +
+      "ORDER BY orderTimestamp DESC, orderID DESC LIMIT ?";
+
+   private static final String PAGE_BEFORE = COLUMNS +
+      "WHERE login = ? AND (orderTimestamp, orderID) > (?, ?) " +
+      "ORDER BY orderTimestamp ASC, orderID ASC LIMIT ?";
+
+   /**
+    * One order in the history.
+    */
+   public static class Entry {
+      private final int _orderID;
+      private final Timestamp _orderTimestamp;
+      private final BigDecimal _totalPrice;
+      private final String _orderStatus;
+
+      Entry(int orderID, Timestamp orderTimestamp, BigDecimal totalPrice, String orderStatus) {
+         this._orderID = orderID;
+         this._orderTimestamp = orderTimestamp;
+         this._totalPrice = totalPrice;
+         this._orderStatus = orderStatus;
+      }//end Entry
+
+      public int getOrderID() { return this._orderID; }
+      public Timestamp getOrderTimestamp() { return this._orderTimestamp; }
+      public BigDecimal getTotalPrice() { return this._totalPrice; }
+      public String getOrderStatus() { return this._orderStatus; }
+   }//end Entry
+
+   private final PizzaStore _esql;
+   private final String _login;
+   private final int _pageSize;
+
+   private List<Entry> _page = Collections.emptyList();
+   private boolean _hasNext = false;
+   private boolean _hasPrevious = false;
+   private int _pageNumber = 0;
+
+   /**
+    * Creates a new pager positioned before the first page
+    *
+    * @param esql the data layer the pages are read through
+    * @param login the login whose orders are listed
+    * @param pageSize the number of orders per page
+    */
+   public OrderHistoryPager(PizzaStore esql, String login, int pageSize) {
+      if (pageSize < 1) {
+         throw new IllegalArgumentException("pageSize must be positive: " + pageSize);
+      }//end if
+      this._esql = esql;
+      this._login = login;
+      this._pageSize = pageSize;
+   }//end OrderHistoryPager
+
+   /**
+    * Reads the newest page.
+    */
+   public List<Entry> first() throws SQLException {
+      List<Entry> rows = fetch(FIRST_PAGE, this._login, this._pageSize + 1);
+      this._hasNext = trim(rows);
+      this._hasPrevious = false;
+      this._pageNumber = 1;
+      return this._page = rows;
+   }//end first
+
+   /**
+    * Reads the page of older orders after the current one.
+    */
+   public List<Entry> next() throws SQLException {
+      if (this._page.isEmpty()) {
+         return first();
+      }//end if
+      Entry last = this._page.get(this._page.size() - 1);
+      List<Entry> rows = fetch(PAGE_AFTER, this._login, last.getOrderTimestamp(),
+                               last.getOrderID(), this._pageSize + 1);
+      this._hasNext = trim(rows);
+      this._hasPrevious = true;
+      this._pageNumber++;
+      return this._page = rows;
+   }//end next
+
+   /**
+    * Reads the page of newer orders before the current one.
+    */
+   public List<Entry> previous() throws SQLException {
+      if (this._page.isEmpty()) {
+         return first();
+      }//end if
+      Entry head = this._page.get(0);
+      List<Entry> rows = fetch(PAGE_BEFORE, this._login, head.getOrderTimestamp(),
+                               head.getOrderID(), this._pageSize + 1);
+      this._hasPrevious = trim(rows);
+      this._hasNext = true;
+      this._pageNumber = Math.max(1, this._pageNumber - 1);
+      // the query walks forward in time, the page is shown newest first
+      Collections.reverse(rows);
+      return this._page = rows;
+   }//end previous
+
+   public boolean hasNext() { return this._hasNext; }
+   public boolean hasPrevious() { return this._hasPrevious; }
+   public int getPageNumber() { return this._pageNumber; }
+   public int getPageSize() { return this._pageSize; }
+
+   private List<Entry> fetch(String query, Object... params) throws SQLException {
+      final List<Entry> rows = new ArrayList<Entry>(this._pageSize + 1);
+      this._esql.executeQueryAndStream(query, this._pageSize + 1, new Row.Handler() {
+         public void handle(Row row) throws SQLException {
+            rows.add(new Entry(row.getInt(1), row.getTimestamp(2), row.getBigDecimal(3), row.getString(4)));
+         }
+      }, params);
+      return rows;
+   }//end fetch
+
+   // drops the extra row read to find out whether there is another page.
+   private boolean trim(List<Entry> rows) {
+      if (rows.size() > this._pageSize) {
+         rows.remove(rows.size() - 1);
+         return true;
+      }//end if
+      return false;
+   }//end trim
+
+}//end OrderHistoryPager
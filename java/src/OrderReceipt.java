@@ -0,0 +1,70 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * This class describes an order that was committed to the database: the
+ * orderID assigned by the orderID_seq trigger, the prices charged, and how
+ * long the commit took.
+ *
+ */
+public class OrderReceipt {
+
+   private final int _orderID;
+   private final String _login;
+   private final int _storeID;
+   private final Timestamp _orderTimestamp;
+   private final String _orderStatus;
+   private final Map<String, Integer> _quantities;
+   private final Map<String, BigDecimal> _prices;
+   private final BigDecimal _totalPrice;
+   private final long _commitNanos;
+
+   public OrderReceipt(int orderID, String login, int storeID, Timestamp orderTimestamp,
+                       String orderStatus, Map<String, Integer> quantities, Map<String, BigDecimal> prices,
+                       BigDecimal totalPrice, long commitNanos) {
+      this._orderID = orderID;
+      this._login = login;
+      this._storeID = storeID;
+      this._orderTimestamp = orderTimestamp;
+      this._orderStatus = orderStatus;
+      this._quantities = Collections.unmodifiableMap(quantities);
+      this._prices = Collections.unmodifiableMap(prices);
+      this._totalPrice = totalPrice;
+      this._commitNanos = commitNanos;
+   }//end OrderReceipt
+
+   public int getOrderID() { return this._orderID; }
+   public String getLogin() { return this._login; }
+   public int getStoreID() { return this._storeID; }
+   public Timestamp getOrderTimestamp() { return this._orderTimestamp; }
+   public String getOrderStatus() { return this._orderStatus; }
+
+   // quantity ordered per item name, in the order the items were added.
+   public Map<String, Integer> getQuantities() { return this._quantities; }
+
+   // unit price charged per item name.
+   public Map<String, BigDecimal> getPrices() { return this._prices; }
+
+   public BigDecimal getTotalPrice() { return this._totalPrice; }
+
+   // time from borrowing the connection to the end of COMMIT.
+   public long getCommitNanos() { return this._commitNanos; }
+
+   public double getCommitMillis() { return this._commitNanos / 1e6; }
+
+}//end OrderReceipt
@@ -0,0 +1,85 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+/**
+ * The life of an order: placed, preparing, out for delivery, complete. An
+ * order only moves forward; a step may be skipped, so a delivered order
+ * can be completed from any earlier status.
+ *
+ */
+public enum OrderStatus {
+
+   PLACED("placed"),
+   PREPARING("preparing"),
+   OUT_FOR_DELIVERY("out for delivery"),
+   COMPLETE("complete");
+
+   // what orders placed before the statuses were fixed say instead of placed.
+   static final String LEGACY_PLACED = "incomplete";
+
+   private final String _label;
+
+   OrderStatus(String label) {
+      this._label = label;
+   }//end OrderStatus
+
+   // the value stored in FoodOrder.orderStatus.
+   public String label() { return this._label; }
+
+   // position in the life of an order, also used by the status UPDATE.
+   public int rank() { return ordinal(); }
+
+   public boolean isOpen() { return this != COMPLETE; }
+
+   public boolean canMoveTo(OrderStatus next) {
+      return next.ordinal() > ordinal();
+   }//end canMoveTo
+
+   /**
+    * Reads a stored or typed status; the orderStatus column is a padded
+    * char(50).
+    *
+    * @return the status, or null when the text is not one
+    */
+   public static OrderStatus parse(String text) {
+      if (text == null) {
+         return null;
+      }//end if
+      String label = text.trim();
+      if (label.equalsIgnoreCase(LEGACY_PLACED)) {
+         return PLACED;
+      }//end if
+      for (OrderStatus status : values()) {
+         if (status._label.equalsIgnoreCase(label) || status.name().equalsIgnoreCase(label)) {
+            return status;
+         }//end if
+      }//end for
+      return null;
+   }//end parse
+
+   /**
+    * SQL expression giving the rank of a stored status column, so the
+    * database can refuse a move backwards; unknown text ranks as placed.
+    */
+   static String rankOf(String column) {
+      StringBuilder sql = new StringBuilder("CASE trim(").append(column).append(')');
+      for (OrderStatus status : values()) {
+         sql.append(" WHEN '").append(status._label).append("' THEN ").append(status.rank());
+      }//end for
+      return sql.append(" ELSE 0 END").toString();
+   }//end rankOf
+
+   @Override
+   public String toString() { return this._label; }
+
+}//end OrderStatus
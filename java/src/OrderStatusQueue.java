@@ -0,0 +1,405 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class collects the status changes of every terminal and writes
+ * them in batches: once per flush interval, or as soon as a batch is full,
+ * all pending changes go out as one
+ *
+ *    UPDATE FoodOrder ... FROM (VALUES (orderID, status, rank), ...)
+ *
+ * Two changes to the same order before a flush are coalesced into the
+ * furthest one. The UPDATE only moves an order forward, so a change that
+ * arrives late, or names an order that does not exist, is refused by the
+ * database without a separate check.
+ *
+ */
+public class OrderStatusQueue {
+
+   // longest time a change waits for the next flush.
+   public static final long DEFAULT_FLUSH_MILLIS =
+      Long.getLong("pizzastore.status.flushMillis", 100L);
+
+   // changes written by one UPDATE; a fuller queue is flushed at once.
+   public static final int DEFAULT_MAX_BATCH =
+      Integer.getInteger("pizzastore.status.maxBatch", 1024);
+
+   // every batch size is measured as one template in the query metrics.
+   private static final String FLUSH_METRIC = "batch: order status changes";
+
+   /**
+    * Counters of the queue since it was created.
+    */
+   public static class Stats {
+      public final long submitted;
+      public final long coalesced;
+      public final long applied;
+      public final long refused;
+      public final long flushes;
+      public final long failedFlushes;
+      public final long flushNanos;
+      public final long maxFlushNanos;
+      public final long waitNanos;
+      public final long maxWaitNanos;
+      public final long uptimeNanos;
+      public final int pending;
+
+      Stats(OrderStatusQueue queue, int pending) {
+         this.submitted = queue._submitted.get();
+         this.coalesced = queue._coalesced.get();
+         this.applied = queue._applied.get();
+         this.refused = queue._refused.get();
+         this.flushes = queue._flushes.get();
+         this.failedFlushes = queue._failedFlushes.get();
+         this.flushNanos = queue._flushNanos.get();
+         this.maxFlushNanos = queue._maxFlushNanos.get();
+         this.waitNanos = queue._waitNanos.get();
+         this.maxWaitNanos = queue._maxWaitNanos.get();
+         this.uptimeNanos = System.nanoTime() - queue._startNanos;
+         this.pending = pending;
+      }//end Stats
+
+      // status changes applied per second since the queue started.
+      public double appliedPerSecond() {
+         return this.uptimeNanos == 0 ? 0 : this.applied / (this.uptimeNanos / 1e9);
+      }//end appliedPerSecond
+
+      // average rows written per UPDATE.
+      public double averageBatch() {
+         return this.flushes == 0 ? 0 : (this.applied + this.refused) / (double) this.flushes;
+      }//end averageBatch
+
+      // average time of one UPDATE, in milliseconds.
+      public double averageFlushMillis() {
+         return this.flushes == 0 ? 0 : this.flushNanos / 1e6 / this.flushes;
+      }//end averageFlushMillis
+
+      // average time from submit to the end of its flush, in milliseconds.
+      public double averageWaitMillis() {
+         long done = this.applied + this.refused;
+         return done == 0 ? 0 : this.waitNanos / 1e6 / done;
+      }//end averageWaitMillis
+
+      @Override
+      public String toString() {
+         return String.format(
+            "submitted %d, coalesced %d, applied %d (%.1f/s), refused %d, pending %d%n" +
+            "flushes %d (%d failed), %.1f changes per flush%n" +
+            "flush latency avg %.2f ms, max %.2f ms; queued to written avg %.2f ms, max %.2f ms",
+            this.submitted, this.coalesced, this.applied, appliedPerSecond(), this.refused, this.pending,
+            this.flushes, this.failedFlushes, averageBatch(),
+            averageFlushMillis(), this.maxFlushNanos / 1e6, averageWaitMillis(), this.maxWaitNanos / 1e6);
+      }//end toString
+   }//end Stats
+
+   // the change pending for one order, and everyone waiting for it.
+   private static class Pending {
+      OrderStatus status;
+      final long since;
+      final List<CompletableFuture<Boolean>> waiters = new ArrayList<CompletableFuture<Boolean>>(1);
+
+      Pending(OrderStatus status, long since) {
+         this.status = status;
+         this.since = since;
+      }
+   }//end Pending
+
+   private final PizzaStore _esql;
+   private final long _flushIntervalNanos;
+   private final int _maxBatch;
+
+   // UPDATE text per batch size; a batch is padded to a power of two rows,
+   // so every connection prepares at most a few of them.
+   private final String[] _updates = new String[32];
+
+   private final ReentrantLock _lock = new ReentrantLock();
+   private final Condition _changed = this._lock.newCondition();
+   // guarded by _lock, in submit order.
+   private final LinkedHashMap<Integer, Pending> _pending = new LinkedHashMap<Integer, Pending>();
+   private boolean _closed = false;
+   private Thread _flusher = null;
+
+   private final long _startNanos = System.nanoTime();
+   private final AtomicLong _submitted = new AtomicLong();
+   private final AtomicLong _coalesced = new AtomicLong();
+   private final AtomicLong _applied = new AtomicLong();
+   private final AtomicLong _refused = new AtomicLong();
+   private final AtomicLong _flushes = new AtomicLong();
+   private final AtomicLong _failedFlushes = new AtomicLong();
+   private final AtomicLong _flushNanos = new AtomicLong();
+   private final AtomicLong _maxFlushNanos = new AtomicLong();
+   private final AtomicLong _waitNanos = new AtomicLong();
+   private final AtomicLong _maxWaitNanos = new AtomicLong();
+
+   /**
+    * Creates a new, empty queue; its flusher starts with the first change.
+    *
+    * @param esql the data layer the batches are written through
+    * @param flushMillis the longest time a change waits for the next flush
+    * @param maxBatch the changes written by one UPDATE
+    */
+   public OrderStatusQueue(PizzaStore esql, long flushMillis, int maxBatch) {
+      if (flushMillis < 1 || maxBatch < 1) {
+         throw new IllegalArgumentException("flushMillis and maxBatch must be positive");
+      }//end if
+      this._esql = esql;
+      this._flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushMillis);
+      this._maxBatch = maxBatch;
+   }//end OrderStatusQueue
+
+   /**
+    * Queues a change of an order status. The future completes after the
+    * flush that writes it: true when the order now has the status, or a
+    * later one asked for before the flush; false when there is no such
+    * order or it already was at or past the status.
+    *
+    * @param orderID the order to change
+    * @param status the new status
+    * @return the outcome of the change
+    */
+   public CompletableFuture<Boolean> submit(int orderID, OrderStatus status) {
+      CompletableFuture<Boolean> result = new CompletableFuture<Boolean>();
+      this._lock.lock();
+      try {
+         if (this._closed) {
+            throw new IllegalStateException("The order status queue is closed");
+         }//end if
+         if (this._flusher == null) {
+            this._flusher = new Thread(new Runnable() {
+               public void run() { flushLoop(); }
+            }, "order-status-flusher");
+            this._flusher.setDaemon(true);
+            this._flusher.start();
+         }//end if
+         this._submitted.incrementAndGet();
+         Pending pending = this._pending.get(orderID);
+         if (pending == null) {
+            pending = new Pending(status, System.nanoTime());
+            this._pending.put(orderID, pending);
+            if (this._pending.size() == 1 || this._pending.size() >= this._maxBatch) {
+               this._changed.signal();
+            }//end if
+         }else {
+            this._coalesced.incrementAndGet();
+            if (status.rank() > pending.status.rank()) {
+               pending.status = status;
+            }//end if
+         }//end if
+         pending.waiters.add(result);
+      }finally {
+         this._lock.unlock();
+      }//end try
+      return result;
+   }//end submit
+
+   /**
+    * Returns the counters of the queue.
+    */
+   public Stats stats() {
+      this._lock.lock();
+      try {
+         return new Stats(this, this._pending.size());
+      }finally {
+         this._lock.unlock();
+      }//end try
+   }//end stats
+
+   /**
+    * Writes the changes still pending and stops the flusher.
+    */
+   public void close() {
+      Thread flusher;
+      this._lock.lock();
+      try {
+         this._closed = true;
+         this._changed.signal();
+         flusher = this._flusher;
+      }finally {
+         this._lock.unlock();
+      }//end try
+      if (flusher != null) {
+         try {
+            flusher.join();
+         }catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+         }//end try
+      }//end if
+   }//end close
+
+   // waits for the oldest change to be due, or a full batch, and writes it.
+   private void flushLoop() {
+      while (true) {
+         Map<Integer, Pending> batch = new LinkedHashMap<Integer, Pending>();
+         this._lock.lock();
+         try {
+            while (!this._closed && this._pending.isEmpty()) {
+               this._changed.awaitUninterruptibly();
+            }//end while
+            if (this._pending.isEmpty()) {
+               return;
+            }//end if
+            long due = this._pending.values().iterator().next().since + this._flushIntervalNanos;
+            long left;
+            while (!this._closed && this._pending.size() < this._maxBatch
+                   && (left = due - System.nanoTime()) > 0) {
+               try {
+                  this._changed.awaitNanos(left);
+               }catch (InterruptedException e) {
+                  // only close stops the flusher
+               }//end try
+            }//end while
+            Iterator<Map.Entry<Integer, Pending>> it = this._pending.entrySet().iterator();
+            while (it.hasNext() && batch.size() < this._maxBatch) {
+               Map.Entry<Integer, Pending> entry = it.next();
+               batch.put(entry.getKey(), entry.getValue());
+               it.remove();
+            }//end while
+         }finally {
+            this._lock.unlock();
+         }//end try
+         flush(batch);
+      }//end while
+   }//end flushLoop
+
+   // writes one batch with a single UPDATE and completes its waiters.
+   private void flush(Map<Integer, Pending> batch) {
+      int rows = Integer.highestOneBit(batch.size());
+      if (rows < batch.size()) {
+         rows <<= 1;
+      }//end if
+      Object[] params = new Object[rows * 3];
+      int i = 0;
+      Map.Entry<Integer, Pending> last = null;
+      for (Map.Entry<Integer, Pending> entry : batch.entrySet()) {
+         last = entry;
+         i = bind(params, i, entry);
+      }//end for
+      while (i < params.length) {
+         // repeats the last change; the same row twice updates once
+         i = bind(params, i, last);
+      }//end while
+
+      Set<Integer> changed = new HashSet<Integer>();
+      long start = System.nanoTime();
+      long borrowed = start;
+      try {
+         ConnectionPool.PooledConnection conn = this._esql.getConnectionPool().borrow();
+         borrowed = System.nanoTime();
+         try {
+            PreparedStatement stmt = PizzaStore.prepare(conn, update(rows), params);
+            ResultSet rs = stmt.executeQuery();
+            try {
+               while (rs.next()) {
+                  changed.add(rs.getInt(1));
+               }//end while
+            }finally {
+               rs.close();
+            }//end try
+         }finally {
+            conn.close();
+         }//end try
+      }catch (SQLException e) {
+         this._esql.getMetrics().record(FLUSH_METRIC, start, borrowed, -1);
+         fail(batch, e);
+         return;
+      }catch (RuntimeException e) {
+         this._esql.getMetrics().record(FLUSH_METRIC, start, borrowed, -1);
+         fail(batch, e);
+         return;
+      }//end try
+      this._esql.getMetrics().record(FLUSH_METRIC, start, borrowed, changed.size());
+      long end = System.nanoTime();
+      record(this._flushNanos, this._maxFlushNanos, end - start);
+      this._flushes.incrementAndGet();
+
+      for (Map.Entry<Integer, Pending> entry : batch.entrySet()) {
+         int orderID = entry.getKey();
+         Pending pending = entry.getValue();
+         boolean applied = changed.contains(orderID);
+         if (applied) {
+            this._esql.getRecentOrders().statusChanged(orderID, pending.status.label());
+            this._applied.incrementAndGet();
+         }else {
+            this._refused.incrementAndGet();
+         }//end if
+         record(this._waitNanos, this._maxWaitNanos, end - pending.since);
+         for (CompletableFuture<Boolean> waiter : pending.waiters) {
+            waiter.complete(applied);
+         }//end for
+      }//end for
+   }//end flush
+
+   private void fail(Map<Integer, Pending> batch, Exception e) {
+      this._flushes.incrementAndGet();
+      this._failedFlushes.incrementAndGet();
+      for (Pending pending : batch.values()) {
+         for (CompletableFuture<Boolean> waiter : pending.waiters) {
+            waiter.completeExceptionally(e);
+         }//end for
+      }//end for
+   }//end fail
+
+   private static int bind(Object[] params, int i, Map.Entry<Integer, Pending> entry) {
+      params[i] = entry.getKey();
+      params[i + 1] = entry.getValue().status.label();
+      params[i + 2] = entry.getValue().status.rank();
+      return i + 3;
+   }//end bind
+
+   private static void record(AtomicLong total, AtomicLong max, long nanos) {
+      total.addAndGet(nanos);
+      long seen;
+      while ((seen = max.get()) < nanos && !max.compareAndSet(seen, nanos)) {
+         // another flush raised it meanwhile; look again
+      }//end while
+   }//end record
+
+   /*
+    * The UPDATE of a batch of the given number of rows. Only orders whose
+    * stored status ranks below the new one are changed, and RETURNING names
+    * them, so the outcome of every change comes back in one round trip.
+    **/
+   private String update(int rows) {
+      int slot = Integer.numberOfTrailingZeros(rows);
+      String sql = this._updates[slot];
+      if (sql == null) {
+         StringBuilder values = new StringBuilder();
+         for (int i = 0; i < rows; ++i) {
+            values.append(i == 0 ? "(?::integer, ?::text, ?::integer)" : ", (?, ?, ?)");
+         }//end for
+         sql = "UPDATE FoodOrder F SET orderStatus = V.status " +
+               "FROM (VALUES " + values + ") AS V(orderID, status, rank) " +
+               "WHERE F.orderID = V.orderID AND " + OrderStatus.rankOf("F.orderStatus") + " < V.rank " +
+               "RETURNING F.orderID";
+         this._updates[slot] = sql;
+      }//end if
+      return sql;
+   }//end update
+
+}//end OrderStatusQueue
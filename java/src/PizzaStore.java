@@ -11,21 +11,32 @@
  */
 
 
-import java.sql.DriverManager;
-import java.sql.Connection;
-import java.sql.Statement;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Types;
 //Added
 import java.sql.Timestamp;
 import java.io.File;
 import java.io.FileReader;
 import java.io.BufferedReader;
-import java.io.InputStreamReader;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import java.lang.Math;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 
 /**
  * This class defines a simple embedded SQL utility class that is designed to
@@ -34,16 +45,63 @@ import java.lang.Math;
  */
 public class PizzaStore {
 
-   //Edit made by Hugo Centeno so that certain methods work (waitin for aproval)
-   public static String authorisedUser = null;
 
-   // reference to physical database connection.
-   private Connection _connection = null;
+   // pool of physical database connections, each with its own statement cache.
+   private ConnectionPool _pool = null;
+
+   /*
+    * Driver options added to every connection URL: statements are prepared
+    * on the server on their first execution, so the statements kept in each
+    * connection's StatementCache are parsed and planned once; results are
+    * read in binary; a batch of INSERTs is sent as one multi-row INSERT; and
+    * strings are sent untyped so the server casts them to the column type.
+    **/
+   public static final String JDBC_OPTIONS =
+      System.getProperty("pizzastore.jdbc.options",
+                         "prepareThreshold=1&binaryTransfer=true&reWriteBatchedInserts=true&stringtype=unspecified");
+
+   // rows fetched per round trip by the streaming query methods.
+   public static final int STREAM_FETCH_SIZE =
+      Integer.getInteger("pizzastore.streamFetchSize", 500);
+
+   // latency, rows and errors per SQL template, and the slow query log.
+   private QueryMetrics _metrics = null;
+
+   // in-memory copy of the Items table, shared by every session.
+   private MenuCatalog _menuCatalog = null;
+
+   // in-memory copy of the Store table, indexed for store search.
+   private StoreLocator _storeLocator = null;
+
+   // status given to a newly placed order.
+   public static final String NEW_ORDER_STATUS = OrderStatus.PLACED.label();
+
+   // typed at placeOrder instead of an item to add one of each favorite item.
+   public static final String FAVORITES = "favorites";
+
+   // most recent orders of recently active logins, shared by every session.
+   private RecentOrdersCache _recentOrders = null;
+
+   // details of complete orders, shared by every session.
+   private OrderDetailCache _orderDetails = null;
+
+   // password hashing on a bounded pool, and the attempts left per login.
+   private Credentials _credentials = null;
+   private LoginRateLimiter _loginLimiter = null;
+
+   // order status changes of every session, written in batches.
+   private OrderStatusQueue _statusQueue = null;
+
+   // open orders per store, kept current by the FoodOrder triggers.
+   private OrderBoard _orderBoard = null;
+
+   // reports over the whole order history, scanned in parallel.
+   private ReportEngine _reportEngine = null;
 
    // handling the keyboard inputs through a BufferedReader
-   // This variable can be global for convenience.
-   static BufferedReader in = new BufferedReader(
-                                new InputStreamReader(System.in));
+   // This variable can be global for convenience; it reads from the
+   // terminal of the session running on the calling thread.
+   static BufferedReader in = Session.reader();
 
    /**
     * Creates a new instance of PizzaStore
@@ -59,11 +117,22 @@ public class PizzaStore {
       System.out.print("Connecting to database...");
       try{
          // constructs the connection URL
-         String url = "jdbc:postgresql://localhost:" + dbport + "/" + dbname;
+         String url = connectionURL (dbname, dbport);
          System.out.println ("Connection URL: " + url + "\n");
 
-         // obtain a physical connection
-         this._connection = DriverManager.getConnection(url, user, passwd);
+         // open the connection pool, which obtains the first physical connections
+         this._pool = new ConnectionPool(url, user, passwd,
+                                         ConnectionPool.DEFAULT_MIN_SIZE,
+                                         ConnectionPool.DEFAULT_MAX_SIZE);
+         this._metrics = newMetrics();
+         this._menuCatalog = new MenuCatalog(this, this._pool);
+         this._storeLocator = new StoreLocator(this, this._pool);
+         this._recentOrders = newRecentOrdersCache();
+         this._orderDetails = newOrderDetailCache();
+         newCredentials();
+         this._statusQueue = newStatusQueue();
+         this._orderBoard = new OrderBoard(this, this._pool, OrderBoard.DEFAULT_HISTORY);
+         this._reportEngine = new ReportEngine(this, ReportEngine.DEFAULT_PARALLELISM, ReportEngine.DEFAULT_PARTITION_ORDERS);
          System.out.println("Done");
       }catch (Exception e){
          System.err.println("Error - Unable to Connect to Database: " + e.getMessage() );
@@ -72,158 +141,746 @@ public class PizzaStore {
       }//end catch
    }//end PizzaStore
 
+   /**
+    * Creates a new instance of PizzaStore that draws its connections from an
+    * existing pool, so several store terminals can share one pool.
+    *
+    * @param pool the connection pool to borrow connections from
+    */
+   public PizzaStore(ConnectionPool pool) {
+      this._pool = pool;
+      this._metrics = newMetrics();
+      this._menuCatalog = new MenuCatalog(this, pool);
+      this._storeLocator = new StoreLocator(this, pool);
+      this._recentOrders = newRecentOrdersCache();
+      this._orderDetails = newOrderDetailCache();
+      newCredentials();
+      this._statusQueue = newStatusQueue();
+      this._orderBoard = new OrderBoard(this, pool, OrderBoard.DEFAULT_HISTORY);
+      this._reportEngine = new ReportEngine(this, ReportEngine.DEFAULT_PARALLELISM, ReportEngine.DEFAULT_PARTITION_ORDERS);
+   }//end PizzaStore
+
+   /**
+    * Builds the URL of a database on this machine, with JDBC_OPTIONS.
+    *
+    * @param dbname the name of the database
+    * @param dbport the port the server listens on
+    * @return the connection URL
+    */
+   public static String connectionURL (String dbname, String dbport) {
+      String url = "jdbc:postgresql://localhost:" + dbport + "/" + dbname;
+      return JDBC_OPTIONS.isEmpty () ? url : url + "?" + JDBC_OPTIONS;
+   }//end connectionURL
+
+   private RecentOrdersCache newRecentOrdersCache() {
+      return new RecentOrdersCache(this, RecentOrdersCache.DEFAULT_DEPTH,
+                                   RecentOrdersCache.DEFAULT_CAPACITY,
+                                   RecentOrdersCache.DEFAULT_TTL_MILLIS);
+   }//end newRecentOrdersCache
+
+   private OrderDetailCache newOrderDetailCache() {
+      return new OrderDetailCache(this, OrderDetailCache.DEFAULT_CAPACITY,
+                                  OrderDetailCache.DEFAULT_TTL_MILLIS);
+   }//end newOrderDetailCache
+
+   private QueryMetrics newMetrics() {
+      return new QueryMetrics(QueryMetrics.DEFAULT_SLOW_MILLIS, QueryMetrics.DEFAULT_SLOW_LOG,
+                              QueryMetrics.DEFAULT_MAX_TEMPLATES);
+   }//end newMetrics
+
+   private OrderStatusQueue newStatusQueue() {
+      return new OrderStatusQueue(this, OrderStatusQueue.DEFAULT_FLUSH_MILLIS,
+                                  OrderStatusQueue.DEFAULT_MAX_BATCH);
+   }//end newStatusQueue
+
+   private void newCredentials() {
+      this._credentials = new Credentials(Credentials.DEFAULT_ITERATIONS, Credentials.DEFAULT_THREADS,
+                                          Credentials.DEFAULT_QUEUE);
+      this._loginLimiter = new LoginRateLimiter(LoginRateLimiter.DEFAULT_BURST,
+                                                LoginRateLimiter.DEFAULT_REFILL_MILLIS);
+   }//end newCredentials
+
    /**
     * Method to execute an update SQL statement.  Update SQL instructions
     * includes CREATE, INSERT, UPDATE, DELETE, and DROP.
     *
-    * @param sql the input SQL string
+    * @param sql the input SQL string, with '?' placeholders for the parameters
+    * @param params the values bound to the placeholders, in order
+    * @return the number of rows affected
     * @throws java.sql.SQLException when update failed
     */
-   public void executeUpdate (String sql) throws SQLException {
-      // creates a statement object
-      Statement stmt = this._connection.createStatement ();
-
-      // issues the update instruction
-      stmt.executeUpdate (sql);
-
-      // close the instruction
-      stmt.close ();
+   public int executeUpdate (String sql, Object... params) throws SQLException {
+      long start = System.nanoTime ();
+      ConnectionPool.PooledConnection conn = this._pool.borrow ();
+      long borrowed = System.nanoTime ();
+      int rowCount = -1;
+      try {
+         // fetches the cached statement and binds the parameters
+         PreparedStatement stmt = prepare (conn, sql, params);
+
+         // issues the update instruction
+         rowCount = stmt.executeUpdate ();
+         return rowCount;
+      }finally {
+         conn.close ();
+         this._metrics.record (sql, start, borrowed, rowCount);
+      }//end try
    }//end executeUpdate
 
    /**
     * Method to execute an input query SQL instruction (i.e. SELECT).  This
     * method issues the query to the DBMS and outputs the results to
-    * standard out.
+    * standard out. Rows are streamed, so any number of them can be printed,
+    * and written a page at a time by a TablePrinter.
     *
-    * @param query the input query string
+    * @param query the input query string, with '?' placeholders for the parameters
+    * @param params the values bound to the placeholders, in order
     * @return the number of rows returned
     * @throws java.sql.SQLException when failed to execute the query
     */
-   public int executeQueryAndPrintResult (String query) throws SQLException {
-      // creates a statement object
-      Statement stmt = this._connection.createStatement ();
-
-      // issues the query instruction
-      ResultSet rs = stmt.executeQuery (query);
-
-      /*
-       ** obtains the metadata object for the returned result set.  The metadata
-       ** contains row and column info.
-       */
-      ResultSetMetaData rsmd = rs.getMetaData ();
-      int numCol = rsmd.getColumnCount ();
-      int rowCount = 0;
-
-      // iterates through the result set and output them to standard out.
-      boolean outputHeader = true;
-      while (rs.next()){
-		 if(outputHeader){
-			for(int i = 1; i <= numCol; i++){
-			System.out.print(rsmd.getColumnName(i) + "\t");
-			}
-			System.out.println();
-			outputHeader = false;
-		 }
-         for (int i=1; i<=numCol; ++i)
-            System.out.print (rs.getString (i) + "\t");
-         System.out.println ();
-         ++rowCount;
-      }//end while
-      stmt.close();
-      return rowCount;
-   }//end executeQuery
+   public int executeQueryAndPrintResult (String query, Object... params) throws SQLException {
+      // renders a page of rows at a time into one buffer and flushes it once
+      TablePrinter printer = new TablePrinter (System.out, TablePrinter.DEFAULT_FORMAT,
+                                               TablePrinter.DEFAULT_PAGE_SIZE);
+      try {
+         executeQueryAndStream (query, printer, params);
+      }finally {
+         // prints the last page, also when the query failed part way
+         printer.finish ();
+      }//end try
+      return (int) printer.getRowCount ();
+   }//end executeQueryAndPrintResult
+
+   /**
+    * Method to execute an input query SQL instruction (i.e. SELECT) and hand
+    * every row to a callback as it arrives. The rows are fetched from a
+    * forward-only cursor STREAM_FETCH_SIZE at a time, so memory use does not
+    * depend on the number of rows.
+    *
+    * @param query the input query string, with '?' placeholders for the parameters
+    * @param handler called once per row; the Row is only valid during the call
+    * @param params the values bound to the placeholders, in order
+    * @return the number of rows returned
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public long executeQueryAndStream (String query, Row.Handler handler, Object... params) throws SQLException {
+      return executeQueryAndStream (query, STREAM_FETCH_SIZE, handler, params);
+   }//end executeQueryAndStream
+
+   /**
+    * Same as executeQueryAndStream, with an explicit number of rows fetched
+    * per round trip. A fetchSize of 0 reads every row in one reply without
+    * a cursor, which saves ending its transaction for a few rows.
+    */
+   public long executeQueryAndStream (String query, int fetchSize, Row.Handler handler, Object... params) throws SQLException {
+      long start = System.nanoTime ();
+      ConnectionPool.PooledConnection conn = this._pool.borrow ();
+      long borrowed = System.nanoTime ();
+      long result = -1;
+      try {
+         PreparedStatement stmt = prepareCursor (conn, query, fetchSize, params);
+         try {
+            ResultSet rs = stmt.executeQuery ();
+            try {
+               Row row = new Row (rs);
+               long rowCount = 0;
+               while (rs.next ()) {
+                  handler.handle (row);
+                  ++rowCount;
+               }//end while
+               result = rowCount;
+               return rowCount;
+            }finally {
+               rs.close ();
+            }//end try
+         }finally {
+            stmt.setFetchSize (0);
+         }//end try
+      }finally {
+         // the pool ends the read-only transaction when the connection is returned.
+         conn.close ();
+         // includes the time spent by the handler
+         this._metrics.record (query, start, borrowed, result);
+      }//end try
+   }//end executeQueryAndStream
+
+   /**
+    * Method to execute an input query SQL instruction (i.e. SELECT) and
+    * return its rows as a sequential Stream backed by a forward-only cursor.
+    * The stream holds a pooled connection until it is closed, so use it in
+    * a try-with-resources block. SQL errors while iterating surface as
+    * Row.UncheckedSQLException.
+    *
+    * @param query the input query string, with '?' placeholders for the parameters
+    * @param params the values bound to the placeholders, in order
+    * @return the rows; each Row is only valid until the next one is read
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public Stream<Row> streamQuery (final String query, Object... params) throws SQLException {
+      final long start = System.nanoTime ();
+      final ConnectionPool.PooledConnection conn = this._pool.borrow ();
+      final long borrowed = System.nanoTime ();
+      final PreparedStatement stmt;
+      final ResultSet rs;
+      try {
+         stmt = prepareCursor (conn, query, STREAM_FETCH_SIZE, params);
+         rs = stmt.executeQuery ();
+      }catch (SQLException e) {
+         conn.close ();
+         this._metrics.record (query, start, borrowed, -1);
+         throw e;
+      }catch (RuntimeException e) {
+         conn.close ();
+         this._metrics.record (query, start, borrowed, -1);
+         throw e;
+      }//end try
+      final Row row = new Row (rs);
+      // rows read, or -1 once reading failed
+      final long[] rowCount = new long[1];
+      Spliterator<Row> rows = new Spliterators.AbstractSpliterator<Row> (Long.MAX_VALUE,
+            Spliterator.ORDERED | Spliterator.NONNULL) {
+         public boolean tryAdvance (Consumer<? super Row> action) {
+            try {
+               if (!rs.next ()) {
+                  return false;
+               }//end if
+            }catch (SQLException e) {
+               rowCount[0] = -1;
+               throw new Row.UncheckedSQLException (e);
+            }//end try
+            ++rowCount[0];
+            action.accept (row);
+            return true;
+         }
+      };
+      final QueryMetrics metrics = this._metrics;
+      return StreamSupport.stream (rows, false).onClose (new Runnable () {
+         public void run () {
+            try {
+               rs.close ();
+               stmt.setFetchSize (0);
+            }catch (SQLException e) {
+               // ignored, the connection is reset when it is returned.
+            }finally {
+               conn.close ();
+               metrics.record (query, start, borrowed, rowCount[0]);
+            }//end try
+         }
+      });
+   }//end streamQuery
+
+   /*
+    * Prepares a statement whose result is read through a server-side cursor.
+    * Postgres only uses a cursor inside a transaction, so autocommit is
+    * turned off; the pool turns it back on when the connection is returned.
+    * A fetchSize of 0 asks for no cursor and leaves autocommit on.
+    **/
+   private static PreparedStatement prepareCursor (ConnectionPool.PooledConnection conn, String query,
+                                                   int fetchSize, Object... params) throws SQLException {
+      if (fetchSize > 0) {
+         conn.connection ().setAutoCommit (false);
+      }//end if
+      PreparedStatement stmt = prepare (conn, query, params);
+      stmt.setFetchSize (fetchSize);
+      return stmt;
+   }//end prepareCursor
 
    /**
     * Method to execute an input query SQL instruction (i.e. SELECT).  This
     * method issues the query to the DBMS and returns the results as
     * a list of records. Each record in turn is a list of attribute values
     *
-    * @param query the input query string
+    * @param query the input query string, with '?' placeholders for the parameters
+    * @param params the values bound to the placeholders, in order
     * @return the query result as a list of records
     * @throws java.sql.SQLException when failed to execute the query
     */
-   public List<List<String>> executeQueryAndReturnResult (String query) throws SQLException {
-      // creates a statement object
-      Statement stmt = this._connection.createStatement ();
-
-      // issues the query instruction
-      ResultSet rs = stmt.executeQuery (query);
-
-      /*
-       ** obtains the metadata object for the returned result set.  The metadata
-       ** contains row and column info.
-       */
-      ResultSetMetaData rsmd = rs.getMetaData ();
-      int numCol = rsmd.getColumnCount ();
-      int rowCount = 0;
-
-      // iterates through the result set and saves the data returned by the query.
-      boolean outputHeader = false;
-      List<List<String>> result  = new ArrayList<List<String>>();
-      while (rs.next()){
-        List<String> record = new ArrayList<String>();
-		for (int i=1; i<=numCol; ++i)
-			record.add(rs.getString (i));
-        result.add(record);
-      }//end while
-      stmt.close ();
-      return result;
+   public List<List<String>> executeQueryAndReturnResult (String query, Object... params) throws SQLException {
+      long start = System.nanoTime ();
+      ConnectionPool.PooledConnection conn = this._pool.borrow ();
+      long borrowed = System.nanoTime ();
+      int rowCount = -1;
+      try {
+         // fetches the cached statement and binds the parameters
+         PreparedStatement stmt = prepare (conn, query, params);
+
+         // issues the query instruction
+         ResultSet rs = stmt.executeQuery ();
+
+         /*
+          ** obtains the metadata object for the returned result set.  The metadata
+          ** contains row and column info.
+          */
+         ResultSetMetaData rsmd = rs.getMetaData ();
+         int numCol = rsmd.getColumnCount ();
+
+         // iterates through the result set and saves the data returned by the query.
+         List<List<String>> result  = new ArrayList<List<String>>();
+         while (rs.next()){
+            List<String> record = new ArrayList<String>(numCol);
+            for (int i=1; i<=numCol; ++i)
+               record.add(rs.getString (i));
+            result.add(record);
+         }//end while
+         rs.close ();
+         rowCount = result.size ();
+         return result;
+      }finally {
+         conn.close ();
+         this._metrics.record (query, start, borrowed, rowCount);
+      }//end try
    }//end executeQueryAndReturnResult
 
    /**
     * Method to execute an input query SQL instruction (i.e. SELECT).  This
-    * method issues the query to the DBMS and returns the number of results
+    * method issues the query to the DBMS and returns the number of results.
+    * The rows are counted by the DBMS, see executeCount.
     *
-    * @param query the input query string
+    * @param query the input query string, with '?' placeholders for the parameters
+    * @param params the values bound to the placeholders, in order
     * @return the number of rows returned
     * @throws java.sql.SQLException when failed to execute the query
     */
-   public int executeQuery (String query) throws SQLException {
-       // creates a statement object
-       Statement stmt = this._connection.createStatement ();
+   public int executeQuery (String query, Object... params) throws SQLException {
+      return (int) executeCount (query, params);
+   }
 
-       // issues the query instruction
-       ResultSet rs = stmt.executeQuery (query);
+   /**
+    * Method to count the rows of a query. The query runs as a subquery of
+    * SELECT count(*), so a single number comes back however many rows
+    * there are.
+    *
+    * @param query the input query string, with '?' placeholders for the parameters
+    * @param params the values bound to the placeholders, in order
+    * @return the number of rows the query returns
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public long executeCount (String query, Object... params) throws SQLException {
+      return executeScalar ("SELECT count(*) FROM (" + query + ") AS Q", params);
+   }//end executeCount
 
-       int rowCount = 0;
+   /**
+    * Method to tell whether a query returns any row. The query runs inside
+    * SELECT EXISTS, so the DBMS stops at the first row and only a boolean
+    * comes back.
+    *
+    * @param query the input query string, with '?' placeholders for the parameters
+    * @param params the values bound to the placeholders, in order
+    * @return true when the query returns at least one row
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public boolean executeExists (String query, Object... params) throws SQLException {
+      return executeScalar ("SELECT CAST(EXISTS (" + query + ") AS integer)", params) != 0;
+   }//end executeExists
 
-       // iterates through the result set and count nuber of results.
-       while (rs.next()){
-          rowCount++;
-       }//end while
-       stmt.close ();
-       return rowCount;
-   }
+   /*
+    * Runs a query returning one integer in one row.
+    **/
+   private long executeScalar (String query, Object... params) throws SQLException {
+      long start = System.nanoTime ();
+      ConnectionPool.PooledConnection conn = this._pool.borrow ();
+      long borrowed = System.nanoTime ();
+      long rowCount = -1;
+      try {
+         ResultSet rs = prepare (conn, query, params).executeQuery ();
+         try {
+            rs.next ();
+            rowCount = 1;
+            return rs.getLong (1);
+         }finally {
+            rs.close ();
+         }//end try
+      }finally {
+         conn.close ();
+         this._metrics.record (query, start, borrowed, rowCount);
+      }//end try
+   }//end executeScalar
 
    /**
     * Method to fetch the last value from sequence. This
     * method issues the query to the DBMS and returns the current
-    * value of sequence used for autogenerated keys
+    * value of sequence used for autogenerated keys. The current value is
+    * per database session, so it only reflects a nextval issued on the
+    * same pooled connection.
     *
     * @param sequence name of the DB sequence
     * @return current value of a sequence
     * @throws java.sql.SQLException when failed to execute the query
     */
    public int getCurrSeqVal(String sequence) throws SQLException {
-	Statement stmt = this._connection.createStatement ();
-
-	ResultSet rs = stmt.executeQuery (String.format("Select currval('%s')", sequence));
-	if (rs.next())
-		return rs.getInt(1);
-	return -1;
+	long start = System.nanoTime ();
+	ConnectionPool.PooledConnection conn = this._pool.borrow ();
+	long borrowed = System.nanoTime ();
+	long rowCount = -1;
+	try {
+		PreparedStatement stmt = prepare (conn, CURRVAL_QUERY, sequence);
+
+		ResultSet rs = stmt.executeQuery ();
+		try {
+			if (rs.next()) {
+				rowCount = 1;
+				return rs.getInt(1);
+			}
+			rowCount = 0;
+			return -1;
+		} finally {
+			rs.close ();
+		}
+	} finally {
+		conn.close ();
+		this._metrics.record (CURRVAL_QUERY, start, borrowed, rowCount);
+	}
    }
 
+   private static final String CURRVAL_QUERY = "SELECT currval(CAST(? AS regclass))";
+
    /**
-    * Method to close the physical connection if it is open.
+    * Work run by executeTransaction on a single borrowed connection.
     */
-   public void cleanup(){
-      try{
-         if (this._connection != null){
-            this._connection.close ();
+   public interface Transaction<T> {
+      T run (ConnectionPool.PooledConnection conn) throws SQLException;
+   }//end Transaction
+
+   /**
+    * Method to run several statements as one transaction. The work gets a
+    * connection with autocommit turned off; it is committed when the work
+    * returns and rolled back when it throws.
+    *
+    * @param work the statements to run
+    * @return the value returned by the work
+    * @throws java.sql.SQLException when the work or the commit failed
+    */
+   public <T> T executeTransaction (Transaction<T> work) throws SQLException {
+      return executeTransaction ("transaction", work);
+   }//end executeTransaction
+
+   /**
+    * Same as executeTransaction, measured in the metrics under a name of
+    * its own rather than with every other transaction.
+    *
+    * @param name the name the transaction is measured under
+    * @param work the statements to run
+    */
+   public <T> T executeTransaction (String name, Transaction<T> work) throws SQLException {
+      long start = System.nanoTime ();
+      ConnectionPool.PooledConnection conn = this._pool.borrow ();
+      long borrowed = System.nanoTime ();
+      long rowCount = -1;
+      try {
+         conn.connection ().setAutoCommit (false);
+         try {
+            T result = work.run (conn);
+            conn.connection ().commit ();
+            rowCount = 0;
+            return result;
+         }catch (SQLException e) {
+            rollbackQuietly (conn);
+            throw e;
+         }catch (RuntimeException e) {
+            rollbackQuietly (conn);
+            throw e;
+         }//end try
+      }finally {
+         // the pool restores autocommit when the connection is returned.
+         conn.close ();
+         this._metrics.record (name, start, borrowed, rowCount);
+      }//end try
+   }//end executeTransaction
+
+   /**
+    * Method to place an order in a single transaction. The prices of all the
+    * items are read in one query, the FoodOrder row is inserted with its
+    * orderID returned by the orderID_seq trigger, and the ItemsInOrder rows
+    * are inserted as one batch, which the driver rewrites into a single
+    * multi-row INSERT. The sales rollups are updated in the same
+    * transaction (see SalesAnalytics).
+    *
+    * @param login the customer placing the order
+    * @param storeID the store the order is placed at
+    * @param quantities the quantity ordered per item name
+    * @return the committed order, with its orderID and total price
+    * @throws java.sql.SQLException when an item is not on the menu, a
+    *         quantity is not positive or the order could not be committed
+    */
+   public OrderReceipt commitOrder (final String login, final int storeID,
+                                    final Map<String, Integer> quantities) throws SQLException {
+      if (quantities.isEmpty ()) {
+         throw new SQLException ("An order needs at least one item");
+      }//end if
+      for (Map.Entry<String, Integer> line : quantities.entrySet ()) {
+         // a negative quantity would refund the customer and drive the rollups below zero
+         if (line.getValue () == null || line.getValue ().intValue () <= 0) {
+            throw new SQLException ("Sorry, the quantity of " + line.getKey () + " must be at least 1.");
+         }//end if
+      }//end for
+      final Timestamp orderTimestamp = new Timestamp (System.currentTimeMillis ());
+      final long start = System.nanoTime ();
+      OrderReceipt receipt = executeTransaction ("transaction: place order", new Transaction<OrderReceipt> () {
+         public OrderReceipt run (ConnectionPool.PooledConnection conn) throws SQLException {
+            // resolve every price and itemID in one round trip
+            Map<String, Integer> itemIDs = new HashMap<String, Integer> ();
+            Map<String, BigDecimal> prices = lookupPrices (conn, quantities.keySet (), itemIDs);
+            BigDecimal total = BigDecimal.ZERO;
+            for (Map.Entry<String, Integer> line : quantities.entrySet ()) {
+               BigDecimal price = prices.get (line.getKey ());
+               if (price == null) {
+                  throw new SQLException ("Sorry, " + line.getKey () + " is not part of the menu.");
+               }//end if
+               total = total.add (price.multiply (BigDecimal.valueOf (line.getValue ().intValue ())));
+            }//end for
+            total = total.setScale (2, RoundingMode.HALF_UP);
+
+            // the trigger assigns the orderID, RETURNING hands it back
+            PreparedStatement insertOrder = prepare (conn,
+               "INSERT INTO FoodOrder (login, storeID, totalPrice, orderTimestamp, orderStatus) " +
+               "VALUES (?, ?, ?, ?, ?) RETURNING orderID",
+               login, storeID, total, orderTimestamp, NEW_ORDER_STATUS);
+            ResultSet rs = insertOrder.executeQuery ();
+            int orderID;
+            try {
+               rs.next ();
+               orderID = rs.getInt (1);
+            }finally {
+               rs.close ();
+            }//end try
+
+            PreparedStatement insertItem = prepare (conn,
+               "INSERT INTO ItemsInOrder (orderID, itemID, quantity) VALUES (?, ?, ?)");
+            for (Map.Entry<String, Integer> line : quantities.entrySet ()) {
+               insertItem.setInt (1, orderID);
+               insertItem.setInt (2, itemIDs.get (line.getKey ()).intValue ());
+               insertItem.setInt (3, line.getValue ().intValue ());
+               insertItem.addBatch ();
+            }//end for
+            insertItem.executeBatch ();
+
+            SalesAnalytics.recordOrder (conn, orderID, login, storeID, orderTimestamp, total);
+
+            return new OrderReceipt (orderID, login, storeID, orderTimestamp, NEW_ORDER_STATUS,
+                                     new LinkedHashMap<String, Integer> (quantities),
+                                     prices, total, System.nanoTime () - start);
+         }
+      });
+      this._recentOrders.orderPlaced (receipt);
+      return receipt;
+   }//end commitOrder
+
+   /**
+    * Method to read the prices of several items in one query. The number of
+    * placeholders is rounded up to a power of two so that few distinct
+    * statements end up in the statement cache.
+    *
+    * @param conn the borrowed connection to run the query on
+    * @param itemNames the names of the items
+    * @param itemIDs filled with the itemID per item name
+    * @return the price per item name; items not on the menu are absent
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   static Map<String, BigDecimal> lookupPrices (ConnectionPool.PooledConnection conn, Collection<String> itemNames,
+                                                Map<String, Integer> itemIDs) throws SQLException {
+      Map<String, BigDecimal> prices = new HashMap<String, BigDecimal> ();
+      if (itemNames.isEmpty ()) {
+         return prices;
+      }//end if
+      int slots = 1;
+      while (slots < itemNames.size ()) {
+         slots <<= 1;
+      }//end while
+      Object[] params = new Object[slots];
+      StringBuilder sql = new StringBuilder ("SELECT itemName, price, itemID FROM Items WHERE itemName IN (");
+      int i = 0;
+      String last = null;
+      for (String name : itemNames) {
+         params[i++] = last = name;
+      }//end for
+      for (; i < slots; ++i) {
+         params[i] = last;
+      }//end for
+      for (i = 0; i < slots; ++i) {
+         sql.append (i == 0 ? "?" : ", ?");
+      }//end for
+      sql.append (")");
+
+      ResultSet rs = prepare (conn, sql.toString (), params).executeQuery ();
+      try {
+         while (rs.next ()) {
+            prices.put (rs.getString (1), rs.getBigDecimal (2));
+            itemIDs.put (rs.getString (1), rs.getInt (3));
+         }//end while
+      }finally {
+         rs.close ();
+      }//end try
+      return prices;
+   }//end lookupPrices
+
+   /**
+    * Returns the cache of recent orders per login, which placing an order
+    * and changing an order status keep up to date.
+    *
+    * @return the recent orders cache
+    */
+   public RecentOrdersCache getRecentOrders () {
+      return this._recentOrders;
+   }//end getRecentOrders
+
+   /**
+    * Returns the password hasher, whose pool verifies every login.
+    *
+    * @return the credentials
+    */
+   public Credentials getCredentials () {
+      return this._credentials;
+   }//end getCredentials
+
+   /**
+    * Returns the limiter of login attempts per login.
+    *
+    * @return the login rate limiter
+    */
+   public LoginRateLimiter getLoginLimiter () {
+      return this._loginLimiter;
+   }//end getLoginLimiter
+
+   /**
+    * Returns the queue through which order statuses are changed.
+    *
+    * @return the order status queue
+    */
+   public OrderStatusQueue getStatusQueue () {
+      return this._statusQueue;
+   }//end getStatusQueue
+
+   /**
+    * Returns the latency, rows and errors measured per SQL template.
+    *
+    * @return the query metrics
+    */
+   public QueryMetrics getMetrics () {
+      return this._metrics;
+   }//end getMetrics
+
+   /**
+    * Returns the orders with their lines, complete ones cached.
+    *
+    * @return the order detail cache
+    */
+   public OrderDetailCache getOrderDetails () {
+      return this._orderDetails;
+   }//end getOrderDetails
+
+   /**
+    * Returns the open orders per store.
+    *
+    * @return the order board
+    */
+   public OrderBoard getOrderBoard () {
+      return this._orderBoard;
+   }//end getOrderBoard
+
+   /**
+    * Returns the engine of the reports over the whole order history.
+    *
+    * @return the report engine
+    */
+   public ReportEngine getReportEngine () {
+      return this._reportEngine;
+   }//end getReportEngine
+
+   /**
+    * Returns the in-memory menu, which serves menu browsing without a query.
+    *
+    * @return the menu catalog
+    */
+   public MenuCatalog getMenuCatalog () {
+      return this._menuCatalog;
+   }//end getMenuCatalog
+
+   /**
+    * Returns the in-memory stores, which serve store search without a query.
+    *
+    * @return the store locator
+    */
+   public StoreLocator getStoreLocator () {
+      return this._storeLocator;
+   }//end getStoreLocator
+
+   /**
+    * Returns the connection pool, so its size and the statement cache
+    * hit/miss/eviction counters can be inspected.
+    *
+    * @return the connection pool
+    */
+   public ConnectionPool getConnectionPool () {
+      return this._pool;
+   }//end getConnectionPool
+
+   /**
+    * Fetches the cached prepared statement for the SQL template from the
+    * connection and binds the parameters to it.
+    *
+    * @param conn the borrowed connection to run the statement on
+    * @param sql the SQL template
+    * @param params the values bound to the placeholders, in order
+    * @return the statement ready to execute
+    * @throws java.sql.SQLException when the statement could not be prepared
+    */
+   static PreparedStatement prepare (ConnectionPool.PooledConnection conn, String sql, Object... params) throws SQLException {
+      PreparedStatement stmt = conn.statements ().prepare (sql);
+      for (int i = 0; i < params.length; ++i) {
+         Object value = params[i];
+         if (value == null) {
+            stmt.setNull (i + 1, Types.VARCHAR);
+         }else if (value instanceof Integer) {
+            stmt.setInt (i + 1, ((Integer) value).intValue ());
+         }else if (value instanceof BigDecimal) {
+            stmt.setBigDecimal (i + 1, (BigDecimal) value);
+         }else if (value instanceof Timestamp) {
+            stmt.setTimestamp (i + 1, (Timestamp) value);
+         }else {
+            stmt.setString (i + 1, value.toString ());
          }//end if
-      }catch (SQLException e){
-         // ignored.
+      }//end for
+      return stmt;
+   }//end prepare
+
+   private static void rollbackQuietly (ConnectionPool.PooledConnection conn) {
+      try {
+         conn.connection ().rollback ();
+      }catch (SQLException e) {
+         // the connection is unusable, do not hand it out again.
+         conn.markBroken ();
       }//end try
+   }//end rollbackQuietly
+
+   /**
+    * Method to drain the connection pool, closing every physical connection.
+    */
+   public void cleanup(){
+      if (this._statusQueue != null){
+         // writes the status changes still queued while connections remain
+         this._statusQueue.close ();
+      }//end if
+      if (this._orderBoard != null){
+         this._orderBoard.close ();
+      }//end if
+      if (this._reportEngine != null){
+         this._reportEngine.close ();
+      }//end if
+      if (this._storeLocator != null){
+         this._storeLocator.close ();
+      }//end if
+      if (this._menuCatalog != null){
+         this._menuCatalog.close ();
+      }//end if
+      if (this._credentials != null){
+         this._credentials.close ();
+      }//end if
+      if (this._metrics != null){
+         this._metrics.close ();
+      }//end if
+      if (this._pool != null){
+         this._pool.close ();
+      }//end if
    }//end cleanup
 
    /**
@@ -232,12 +889,12 @@ public class PizzaStore {
     * @param args the command line arguments this inclues the <mysql|pgsql> <login file>
     */
    public static void main (String[] args) {
-      if (args.length != 3) {
+      if (args.length != 3 && args.length != 4) {
          System.err.println (
             "Usage: " +
             "java [-classpath <classpath>] " +
             PizzaStore.class.getName () +
-            " <dbname> <port> <user>");
+            " <dbname> <port> <user> [<listen port>]");
          return;
       }//end if
 
@@ -245,109 +902,25 @@ public class PizzaStore {
       PizzaStore esql = null;
       try{
          // use postgres JDBC driver.
-         Class.forName ("org.postgresql.Driver").newInstance ();
+         Class.forName ("org.postgresql.Driver");
          // instantiate the PizzaStore object and creates a physical
          // connection.
          String dbname = args[0];
          String dbport = args[1];
          String user = args[2];
          esql = new PizzaStore (dbname, dbport, user, "");
-         boolean keepon = true;
-         while(keepon) {
-            // These are sample SQL statements
-            System.out.println("MAIN MENU");
-            System.out.println("---------");
-            System.out.println("1. Create user");
-            System.out.println("2. Log in");
-            System.out.println("9. < EXIT");
-            //String authorisedUser = null;
-            switch (readChoice()){
-               case 1: CreateUser(esql); break;
-               case 2: authorisedUser = LogIn(esql); break;
-               case 9: keepon = false; break;
-               default : System.out.println("Unrecognized choice!"); break;
-            }//end switch
-            if (authorisedUser != null) {
-               //Added by Hugo Centeno
-               String permissionsQuery = "SELECT role FROM Users WHERE login = '"+authorisedUser+"'";
-               List<List<String>> outputpermissionQuery = esql.executeQueryAndReturnResult(permissionsQuery);
-               String permission = outputpermissionQuery.get(0).get(0);
-              boolean usermenu = true;
-              while(usermenu) {
-                  if(permission.trim().equals("customer")){
-                     System.out.println("MAIN MENU");
-                     System.out.println("---------");   
-                     System.out.println("1. View Profile");
-                     System.out.println("2. Update Profile");
-                     System.out.println("3. View Menu");
-                     System.out.println("4. Place Order"); //make sure user specifies which store
-                     System.out.println("5. View Full Order ID History");
-                     System.out.println("6. View Past 5 Order IDs");
-                     System.out.println("7. View Order Information"); //user should specify orderID and then be able to see detailed information about the order
-                     System.out.println("8. View Stores"); 
-                     System.out.println(".........................");
-                     System.out.println("20. Log out");
-                  }else if(permission.trim().equals("driver")){
-                     System.out.println("MAIN MENU");
-                     System.out.println("---------");   
-                     System.out.println("1. View Profile");
-                     System.out.println("2. Update Profile");
-                     System.out.println("3. View Menu");
-                     System.out.println("4. Place Order"); //make sure user specifies which store
-                     System.out.println("5. View Full Order ID History");
-                     System.out.println("6. View Past 5 Order IDs");
-                     System.out.println("7. View Order Information"); //user should specify orderID and then be able to see detailed information about the order
-                     System.out.println("8. View Stores"); 
-                     //**the following functionalities should only be able to be used by drivers & managers**
-                     System.out.println("9. Update Order Status");   
-                      System.out.println(".........................");
-                     System.out.println("20. Log out");                                      
-                  }else{
-                  System.out.println("MAIN MENU");
-                  System.out.println("---------");
-                  System.out.println("1. View Profile");
-                  System.out.println("2. Update Profile");
-                  System.out.println("3. View Menu");
-                  System.out.println("4. Place Order"); //make sure user specifies which store
-                  System.out.println("5. View Full Order ID History");
-                  System.out.println("6. View Past 5 Order IDs");
-                  System.out.println("7. View Order Information"); //user should specify orderID and then be able to see detailed information about the order
-                  System.out.println("8. View Stores"); 
-
-                  //**the following functionalities should only be able to be used by drivers & managers**
-                  System.out.println("9. Update Order Status");
-
-                  //**the following functionalities should ony be able to be used by managers**
-                  System.out.println("10. Update Menu");
-                  System.out.println("11. Update User");
-
-                  System.out.println(".........................");
-                  System.out.println("20. Log out");                    
-                  }
-                switch (readChoice()){
-                   case 1: viewProfile(esql); break;
-                   case 2: updateProfile(esql); break;
-                   case 3: viewMenu(esql); break;
-                   case 4: placeOrder(esql); break;
-                   /* case 5: viewAllOrders(esql); break;
-                   case 6: viewRecentOrders(esql); break;
-                   case 7: viewOrderInfo(esql); break; */
-                   case 5: viewAllOrders(esql, authorisedUser); break;
-                   case 6: viewRecentOrders(esql, authorisedUser); break;
-                   case 7: viewOrderInfo(esql, authorisedUser); break;
-                   case 8: viewStores(esql); break;
-                   case 9: updateOrderStatus(esql); break;
-                   case 10: updateMenu(esql); break;
-                   case 11: updateUser(esql); break;
-
-
-
-                   case 20: usermenu = false; break;
-                   default : System.out.println("Unrecognized choice!"); break;
-                }
-              }
-            }
-         }//end while
+         if (QueryMetrics.DEFAULT_HTTP_PORT > 0) {
+            // e.g. curl http://localhost:<port>/metrics
+            esql.getMetrics ().serveHttp (QueryMetrics.DEFAULT_HTTP_PORT);
+         }//end if
+         if (args.length == 4) {
+            // server mode: every terminal that connects gets its own session.
+            new PizzaStoreServer (esql, Integer.parseInt (args[3])).serve ();
+         }else {
+            runSession (esql);
+         }//end if
+      }catch(Session.Disconnected e) {
+         // standard input was closed.
       }catch(Exception e) {
          System.err.println (e.getMessage ());
       }finally{
@@ -364,6 +937,149 @@ public class PizzaStore {
       }//end try
    }//end main
 
+   /*
+    * Runs the main menu for the session of the calling thread until the
+    * operator exits.
+    **/
+   public static void runSession (PizzaStore esql) throws SQLException {
+      Session session = Session.current ();
+      boolean keepon = true;
+      while(keepon) {
+         // These are sample SQL statements
+         System.out.println("MAIN MENU");
+         System.out.println("---------");
+         System.out.println("1. Create user");
+         System.out.println("2. Log in");
+         System.out.println("9. < EXIT");
+         //String authorisedUser = null;
+         switch (readChoice()){
+            case 1: CreateUser(esql); break;
+            case 2: LogIn(esql); break;
+            case 9: keepon = false; break;
+            default : System.out.println("Unrecognized choice!"); break;
+         }//end switch
+         if (authorisedUser() != null) {
+            //Added by Hugo Centeno
+           boolean usermenu = true;
+           while(usermenu) {
+               // the role is read again only after a change to the user
+               UserProfile profile = currentProfile(esql);
+               if (profile == null) {
+                  System.out.println("Your account was changed, please log in again");
+                  break;
+               }
+               if(profile.isCustomer()){
+                  System.out.println("MAIN MENU");
+                  System.out.println("---------");   
+                  System.out.println("1. View Profile");
+                  System.out.println("2. Update Profile");
+                  System.out.println("3. View Menu");
+                  System.out.println("4. Place Order"); //make sure user specifies which store
+                  System.out.println("5. View Full Order ID History");
+                  System.out.println("6. View Recent Orders");
+                  System.out.println("7. View Order Information"); //user should specify orderID and then be able to see detailed information about the order
+                  System.out.println("8. View Stores"); 
+                  System.out.println(".........................");
+                  System.out.println("20. Log out");
+               }else if(profile.isDriver()){
+                  System.out.println("MAIN MENU");
+                  System.out.println("---------");   
+                  System.out.println("1. View Profile");
+                  System.out.println("2. Update Profile");
+                  System.out.println("3. View Menu");
+                  System.out.println("4. Place Order"); //make sure user specifies which store
+                  System.out.println("5. View Full Order ID History");
+                  System.out.println("6. View Recent Orders");
+                  System.out.println("7. View Order Information"); //user should specify orderID and then be able to see detailed information about the order
+                  System.out.println("8. View Stores"); 
+                  //**the following functionalities should only be able to be used by drivers & managers**
+                  System.out.println("9. Update Order Status");   
+                  System.out.println("12. View Store Order Board");
+                   System.out.println(".........................");
+                  System.out.println("20. Log out");                                      
+               }else{
+               System.out.println("MAIN MENU");
+               System.out.println("---------");
+               System.out.println("1. View Profile");
+               System.out.println("2. Update Profile");
+               System.out.println("3. View Menu");
+               System.out.println("4. Place Order"); //make sure user specifies which store
+               System.out.println("5. View Full Order ID History");
+               System.out.println("6. View Recent Orders");
+               System.out.println("7. View Order Information"); //user should specify orderID and then be able to see detailed information about the order
+               System.out.println("8. View Stores"); 
+
+               //**the following functionalities should only be able to be used by drivers & managers**
+               System.out.println("9. Update Order Status");
+               System.out.println("12. View Store Order Board");
+
+               //**the following functionalities should ony be able to be used by managers**
+               System.out.println("10. Update Menu");
+               System.out.println("11. Update User");
+               System.out.println("13. View Sales Reports");
+               System.out.println("14. View Query Metrics");
+
+               System.out.println(".........................");
+               System.out.println("20. Log out");                    
+               }
+             switch (readChoice()){
+                case 1: viewProfile(esql); break;
+                case 2: updateProfile(esql); break;
+                case 3: viewMenu(esql); break;
+                case 4: placeOrder(esql); break;
+                /* case 5: viewAllOrders(esql); break;
+                case 6: viewRecentOrders(esql); break;
+                case 7: viewOrderInfo(esql); break; */
+                case 5: viewAllOrders(esql, authorisedUser()); break;
+                case 6: viewRecentOrders(esql, authorisedUser()); break;
+                case 7: viewOrderInfo(esql, authorisedUser()); break;
+                case 8: viewStores(esql); break;
+                case 9: updateOrderStatus(esql); break;
+                case 10: updateMenu(esql); break;
+                case 11: updateUser(esql); break;
+                case 12: viewOrderBoard(esql); break;
+                case 13: viewSalesReports(esql); break;
+                case 14: viewQueryMetrics(esql); break;
+
+
+
+                case 20: usermenu = false; session.logout(); break;
+                default : System.out.println("Unrecognized choice!"); break;
+             }
+           }
+         }
+      }//end while
+   }//end runSession
+
+   /*
+    * Returns the login of the user signed in on the calling thread's session
+    * @return User login or null if nobody is logged in
+    **/
+   public static String authorisedUser() {
+      return Session.current().getLogin();
+   }//end authorisedUser
+
+   /*
+    * Returns the profile of the user signed in on the calling thread's
+    * session. It is read again only when it was invalidated since LogIn; a
+    * user whose login no longer exists is logged out.
+    * @return User profile or null if nobody is logged in
+    **/
+   public static UserProfile currentProfile(PizzaStore esql) throws SQLException {
+      Session session = Session.current();
+      UserProfile profile = session.getProfile();
+      String login = session.getLogin();
+      if (profile == null && login != null) {
+         profile = UserProfile.find(esql, login);
+         if (profile == null) {
+            session.logout();
+         }else {
+            session.login(profile);
+         }//end if
+      }//end if
+      return profile;
+   }//end currentProfile
+
    public static void Greeting(){
       System.out.println(
          "\n\n*******************************************************\n" +
@@ -383,6 +1099,8 @@ public class PizzaStore {
          try { // read the integer, parse it and break.
             input = Integer.parseInt(in.readLine());
             break;
+         }catch (Session.Disconnected e) {
+            throw e;
          }catch (Exception e) {
             System.out.println("Your input is invalid!");
             continue;
@@ -438,12 +1156,9 @@ public class PizzaStore {
          }
          
         //Construct the query
-        String query = "INSERT INTO Users (login, password, phoneNum, role) VALUES ('" 
-                        + login + "', '" 
-                        + password + "', '" 
-                        + phoneNumber + "', 'manager')";
+        String query = "INSERT INTO Users (login, password, phoneNum, role) VALUES (?, ?, ?, 'manager')";
 		   
-		   esql.executeQuery(query);
+		   esql.executeUpdate(query, login, esql.getCredentials().hashOnPool(password), phoneNumber);
 	   }catch(Exception e){
 	         System.err.println (e.getMessage());
 	   }
@@ -451,7 +1166,8 @@ public class PizzaStore {
 
 
    /*
-    * Check log in credentials for an existing user
+    * Check log in credentials for an existing user. The matching Users row
+    * becomes the profile of the session.
     * @return User login or null is the user does not exist
     **/
    public static String LogIn(PizzaStore esql){
@@ -465,12 +1181,19 @@ public class PizzaStore {
             //Ask for password
             System.out.print("\tEnter password: ");
             String password = in.readLine();
-            String query = "SELECT password, login FROM Users WHERE login = '" + login + "' AND password = '" + password + "'";
             //Check if the user exists and the password is matching
-            if(esql.executeQuery(query) == 0){
+            UserProfile profile;
+            try {
+               profile = UserProfile.authenticate(esql, login, password);
+            }catch (LoginRateLimiter.Throttled e) {
+               System.out.println(e.getMessage());
+               return null;
+            }
+            if(profile == null){
                System.out.println("Invalid combination for login and password!");
             }else{
                invalidCombination = false;
+               Session.current().login(profile);
                System.out.println("\nWelcome again " + login);
                return login;
                }
@@ -487,26 +1210,19 @@ public class PizzaStore {
 
    public static void viewProfile(PizzaStore esql) {
       try{
-         String query = "SELECT role FROM Users WHERE login = '" + authorisedUser + "'";
-         List<List<String>> output = esql.executeQueryAndReturnResult(query);
-         System.out.println(output.get(0).get(0));
-         if(output.get(0).get(0).trim().equals("manager")){
-         query = "SELECT password, favoriteItems, phoneNum, role FROM Users WHERE login = '" + authorisedUser + "'";
-         output = esql.executeQueryAndReturnResult(query);
-            // Iterate through the result set
-            for (List<String> row : output) {
-               // Extract the values for password, favorite items, and phone number
-               String password = row.get(0);  // First column: password
-               String favoriteItems = row.get(1);  // Second column: favorite items
-               String phoneNum = row.get(2);  // Third column: phone number
-               String role = row.get(3); 
+         // the own profile was read at LogIn
+         UserProfile profile = currentProfile(esql);
+         System.out.println(profile.getRole());
+         if(profile.isManager()){
+               String favoriteItems = favoriteNames(esql, authorisedUser().trim());
+               String phoneNum = profile.getPhoneNum();
+               String role = profile.getRole();
 
                // Print each piece of information on a new line
                System.out.println("---------");
                System.out.println("INFORMATION");
-               System.out.println("User: " + authorisedUser);
-               System.out.println("Password: " + password);
-               System.out.println("Favorite Item: " + favoriteItems);
+               System.out.println("User: " + authorisedUser());
+               System.out.println("Favorite Items: " + favoriteItems);
                System.out.println("Phone Number: " + phoneNum);
                //Managers can view all the users information
                System.out.println("---------");
@@ -515,60 +1231,39 @@ public class PizzaStore {
                while(invalidInput){
                   System.out.println("Select the user whose information you want to see");
                   String user = in.readLine();
-                  query = "SELECT password, favoriteItems, phoneNum, role, login FROM Users WHERE login = '" + user + "'";
-                  if(esql.executeQuery(query) == 0){
+                  UserProfile other = UserProfile.find(esql, user);
+                  if(other == null){
                      System.out.println("---------");
                      System.out.println("Non existent user");
                   }else{
-                  output = esql.executeQueryAndReturnResult(query);
-               // Iterate through the result set
-                  for (List<String> row1 : output) {
-                  // Extract the values for password, favorite items, and phone number
-                     password = row1.get(0);  // First column: password
-                     favoriteItems = row1.get(1);  // Second column: favorite items
-                     phoneNum = row1.get(2);  // Third column: phone number
-                     role = row1.get(3);
-                     String login = row1.get(4); 
-
                      // Print each piece of information on a new line
                      System.out.println("---------");
                      System.out.println("INFORMATION");
-                     System.out.println("User: " + login);
-                     System.out.println("Password: " + password);
-                     System.out.println("Favorite Item: " + favoriteItems);
-                     System.out.println("Phone Number: " + phoneNum);
-                     System.out.println("Role: " + role);
+                     System.out.println("User: " + other.getLogin());
+                     System.out.println("Favorite Items: " + favoriteNames(esql, other.getLogin()));
+                     System.out.println("Phone Number: " + other.getPhoneNum());
+                     System.out.println("Role: " + other.getRole());
                      invalidInput = false;
-                     }                     
                   }
                }  
 
                //System.out.println();  // Adds a blank line for separation between records
-               }
                        
          }else{
-         query = "SELECT password, favoriteItems, phoneNum, role FROM Users WHERE login = '" + authorisedUser + "'";
-         output = esql.executeQueryAndReturnResult(query);
-            // Iterate through the result set
-            for (List<String> row : output) {
-               // Extract the values for password, favorite items, and phone number
-               String password = row.get(0);  // First column: password
-               String favoriteItems = row.get(1);  // Second column: favorite items
-               String phoneNum = row.get(2);  // Third column: phone number
-               String role = row.get(3); 
+               String favoriteItems = favoriteNames(esql, authorisedUser().trim());
+               String phoneNum = profile.getPhoneNum();
+               String role = profile.getRole();
 
                // Print each piece of information on a new line
                System.out.println("---------");
                System.out.println("INFORMATION");
-               System.out.println("User: " + authorisedUser);
-               System.out.println("Password: " + password);
-               System.out.println("Favorite Item: " + favoriteItems);
+               System.out.println("User: " + authorisedUser());
+               System.out.println("Favorite Items: " + favoriteItems);
                System.out.println("Phone Number: " + phoneNum);
-               if(!role.trim().equals("customer")){
+               if(!profile.isCustomer()){
                   System.out.println("Role: " + role);
                }
                System.out.println();  // Adds a blank line for separation between records
-            }           
          }
          }
       catch(Exception e){
@@ -576,46 +1271,69 @@ public class PizzaStore {
       }   
       
    }
+   // the favorite items of a user, by name.
+   private static String favoriteNames(PizzaStore esql, String login) throws SQLException {
+      StringBuilder names = new StringBuilder();
+      for (FavoriteItems.Favorite favorite : FavoriteItems.of(esql, login)) {
+         names.append(names.length() == 0 ? "" : ", ").append(favorite.getItemName());
+      }
+      return names.toString();
+   }
+
    public static void updateProfile(PizzaStore esql) {
       try{
             //Get the role. Depending on it less/more options
-            String query = "SELECT role FROM Users WHERE login = '" + authorisedUser + "'";
-            List<List<String>> output = esql.executeQueryAndReturnResult(query);
-            String role = output.get(0).get(0);
+            UserProfile profile = currentProfile(esql);
+            String query;
 /*             System.out.println("---------");
             System.out.println("What would you like to update?"); */
             boolean invalidInput = true;
             while(invalidInput){
-               if(!role.trim().equals("manager")){
+               if(!profile.canUpdateUsers()){
                   System.out.println("---------");
                   System.out.println("What would you like to update?");
                   System.out.println("1. Add new favorite item");
-                  System.out.println("2. Change phone number");
-                  System.out.println("3. Change password");
-                  System.out.println("4. Go back");
+                  System.out.println("2. Remove a favorite item");
+                  System.out.println("3. Change phone number");
+                  System.out.println("4. Change password");
+                  System.out.println("5. Go back");
                   int input = readChoice();
                   if(input == 1){
                      System.out.println("---------");
                      System.out.println("Insert new item name");
                      String choice2 = in.readLine();
-                     String query2 = "UPDATE Users SET favoriteItems = '"+choice2+"' WHERE login = '" + authorisedUser + "'";
-                     esql.executeUpdate(query2);
-                     System.out.println("Your favorite item has correctly been updated to " + choice2);
+                     if(esql.getMenuCatalog().snapshot().item(choice2) == null){
+                        System.out.println("Sorry, that item is not part of the menu.");
+                     }else if(FavoriteItems.add(esql, authorisedUser().trim(), choice2)){
+                        System.out.println(choice2 + " has correctly been added to your favorite items");
+                     }else{
+                        System.out.println(choice2 + " already is one of your favorite items");
+                     }
                   }else if(input == 2){
+                     System.out.println("---------");
+                     System.out.println("Insert the item name");
+                     String choice2 = in.readLine();
+                     if(FavoriteItems.remove(esql, authorisedUser().trim(), choice2)){
+                        System.out.println(choice2 + " has correctly been removed from your favorite items");
+                     }else{
+                        System.out.println(choice2 + " is not one of your favorite items");
+                     }
+                  }else if(input == 3){
                      System.out.println("---------");
                      System.out.println("Insert new phone number");
                      String choice2 = in.readLine();
-                     String query2 = "UPDATE Users SET phoneNum = '"+choice2+"' WHERE login = '" + authorisedUser + "'";
-                     esql.executeUpdate(query2);
+                     String query2 = "UPDATE Users SET phoneNum = ? WHERE login = ?";
+                     esql.executeUpdate(query2, choice2, authorisedUser());
+                     Session.invalidate(authorisedUser());
                      System.out.println("Your phone number has correctly been updated to " + choice2);
-                  }else if(input == 3){
+                  }else if(input == 4){
                      System.out.println("---------");
                      System.out.println("Insert new password");
                      String choice2 = in.readLine();
-                     String query2 = "UPDATE Users SET password = '"+choice2+"' WHERE login = '" + authorisedUser + "'";
-                     esql.executeUpdate(query2);
-                     System.out.println("Your password has correctly been updated to " + choice2);
-                  }else if(input == 4){
+                     UserProfile.changePassword(esql, authorisedUser(), choice2);
+                     Session.invalidate(authorisedUser());
+                     System.out.println("Your password has correctly been updated");
+                  }else if(input == 5){
                      invalidInput = false;
                   }else{
 
@@ -627,8 +1345,8 @@ public class PizzaStore {
                   while(invalidInput){
                      System.out.println("Insert the user whose information you want to change:");
                      String user = in.readLine();
-                     String query2 = "SELECT * FROM Users WHERE login = '"+user+"'";
-                     if(esql.executeQuery(query2) == 0){
+                     String query2 = "SELECT 1 FROM Users WHERE login = ?";
+                     if(!esql.executeExists(query2, user)){
                         System.out.println("---------");
                         System.out.println("Non existent user");
                      }else{
@@ -642,15 +1360,19 @@ public class PizzaStore {
                            if(input == 1){
                               System.out.println("Insert new login");
                               String newLogin = in.readLine();
-                              query = "UPDATE Users SET login = '"+newLogin+"' WHERE login = '"+user+"'";
-                              esql.executeUpdate(query);
+                              query = "UPDATE Users SET login = ? WHERE login = ?";
+                              esql.executeUpdate(query, newLogin, user);
+                              // sessions of the old login are logged out
+                              Session.invalidate(user);
                               invalidInput2 = false;
                               invalidInput = false;
                            }else if(input == 2){
                               System.out.println("Insert new role");
                               String newRole = in.readLine();
-                              query = "UPDATE Users SET role = '"+newRole+"' WHERE login = '"+user+"'";
-                              esql.executeUpdate(query2);
+                              query = "UPDATE Users SET role = ? WHERE login = ?";
+                              esql.executeUpdate(query, newRole, user);
+                              // the user's menus change with the role
+                              Session.invalidate(user);
                               invalidInput2 = false;
                               invalidInput = false;
                            }else if(input == 3){
@@ -680,49 +1402,32 @@ public class PizzaStore {
          System.out.println("4. Go back");
          int input = readChoice();
          if(input == 1){
-            String query = "SELECT DISTINCT typeOfItem FROM Items";
-            List<List<String>> items = null;
-            
-               items = esql.executeQueryAndReturnResult(query);
+            //The menu is served from the in-memory catalog
+            MenuCatalog.Snapshot menu = esql.getMenuCatalog().snapshot();
                // Iterate through the result
                System.out.println("---------");
                System.out.println("Choose among:");
-               for (List<String> row : items) {
-                  for (String item : row) {
-                        System.out.println(item);  // Print the item
-                  }
+               for (String item : menu.types()) {
+                     System.out.println(item);  // Print the item
                }
              
             
             System.out.println("---------");
             System.out.println("Please enter your choice");
             String choice2 = in.readLine();
-            String query2 = "SELECT itemName, price FROM Items WHERE typeOfItem = ' "+choice2+"'";
-            
-            //Execute query
-            List<List<String>> selecteditems = esql.executeQueryAndReturnResult(query2);
+            List<MenuCatalog.MenuItem> selecteditems = menu.ofType(choice2);
             System.out.println("---------");
             System.out.println("Items available:");
-            for (List<String> row : selecteditems) {
-               String itemName = row.get(0); 
-               String price = row.get(1);
-               System.out.println(itemName + " - $" + price);
-            }
+            printMenuItems(selecteditems);
          //invalidInput = false;
          }else if(input == 2){
             System.out.println("---------");
             System.out.println("Input your limit price");
             String choice2 = in.readLine();
-            String query2 = "SELECT itemName, price FROM Items WHERE price <= " + choice2;
-            //Execute query
-            List<List<String>> selecteditems = esql.executeQueryAndReturnResult(query2);
+            List<MenuCatalog.MenuItem> selecteditems = esql.getMenuCatalog().snapshot().atMost(new BigDecimal(choice2.trim()));
             System.out.println("---------");
             System.out.println("Items available within the selected price limit:");
-            for (List<String> row : selecteditems) {
-               String itemName = row.get(0); 
-               String price = row.get(1);
-               System.out.println(itemName + " - $" + price);
-            }
+            printMenuItems(selecteditems);
             //invalidInput = false;
          }else if(input == 3){
             boolean invalidSorting = true;
@@ -733,25 +1438,15 @@ public class PizzaStore {
             System.out.println("3. Go back");
             input = Integer.parseInt(in.readLine());
                if(input == 1){
-                  String query2 = "SELECT itemName, price FROM Items ORDER BY price DESC";
-                  List<List<String>> selecteditems = esql.executeQueryAndReturnResult(query2);
+                  List<MenuCatalog.MenuItem> selecteditems = esql.getMenuCatalog().snapshot().byPriceDescending();
                   System.out.println("---------");
                   System.out.println("Items from highest to lowest price:");
-                  for (List<String> row : selecteditems) {
-                     String itemName = row.get(0); 
-                     String price = row.get(1);
-                     System.out.println(itemName + " - $" + price);
-                  }
+                  printMenuItems(selecteditems);
                }else if(input == 2){
-                  String query2 = "SELECT itemName, price FROM Items ORDER BY price ASC";
-                  List<List<String>> selecteditems = esql.executeQueryAndReturnResult(query2);
+                  List<MenuCatalog.MenuItem> selecteditems = esql.getMenuCatalog().snapshot().byPriceAscending();
                   System.out.println("---------");
                   System.out.println("Items from lowest to highest price:");
-                  for (List<String> row : selecteditems) {
-                     String itemName = row.get(0); 
-                     String price = row.get(1);
-                     System.out.println(itemName + " - $" + price);
-                  }
+                  printMenuItems(selecteditems);
                }else if(input == 3){
                   invalidSorting = false;
                }else{
@@ -771,126 +1466,121 @@ public class PizzaStore {
       }   
    
    }
+   /*
+    * Prints menu items as "name - $price", one per line
+    **/
+   private static void printMenuItems(List<MenuCatalog.MenuItem> items) {
+      for (MenuCatalog.MenuItem item : items) {
+         System.out.println(item.getItemName() + " - $" + item.getPrice());
+      }
+   }
+
    public static void placeOrder(PizzaStore esql) {
       try{
          boolean invalidInput = true;
-            System.out.println("---------");
-            System.out.println("From what store would you like to order? \n The following are available");
-            String query2 = "SELECT storeID, address FROM Store";
-            List<List<String>> selectedstores = esql.executeQueryAndReturnResult(query2);
-            System.out.println("---------");
-            System.out.println("Displaying its IDs and addresses");
-            int max = 0;
-            int storeIDtoInt = 0;
-            for (List<String> row : selectedstores) {
-               String storeID = row.get(0); 
-               String address = row.get(1);
-               storeIDtoInt = Integer.parseInt(storeID);
-               //To have one last option: exit the current screen
-               if (storeIDtoInt > max){
-                  max = storeIDtoInt;
-               }
-               System.out.println(storeID + " - " + address);
-            }
-            max += 1;
-            System.out.println(max + ". Go back");         
          while(invalidInput){
+            System.out.println("---------");
+            System.out.println("From what store would you like to order? Search the open stores");
+            searchStores(esql, true);
+            System.out.println("Enter the ID of the store, 0 to search again or -1 to go back");
             int storeIDChoice = readChoice();
             //Handling possible inputs. Consider invalid ones as well.
-            if(storeIDChoice == max){
+            StoreLocator.Store selectedstore = esql.getStoreLocator().snapshot().store(storeIDChoice);
+            if(storeIDChoice == -1){
                invalidInput = false;
-            }else if(storeIDChoice >= 0 && storeIDChoice < max){
-               query2 = "SELECT address FROM Store WHERE storeID = '"+storeIDChoice+"'";
-               selectedstores = esql.executeQueryAndReturnResult(query2);
+            }else if(storeIDChoice == 0){
+               continue;
+            }else if(selectedstore == null){
+               System.out.println("Invalid option!");
+            }else if(!selectedstore.isOpen()){
+               System.out.println("Sorry, that store is closed.");
+            }else{
                System.out.println("---------");
-               System.out.println("You have selected the store located at "+selectedstores.get(0).get(0));
+               System.out.println("You have selected the store located at "+selectedstore.getAddress());
                boolean invalidItem = true;
                //Create array to store order information
                ArrayList<ArrayList<String>> OrderArrayOfArrays = new ArrayList<>();
-               int i = 0;
                while(invalidItem){
                   System.out.println("---------");
-                  System.out.println("Select what item you want to order");
+                  System.out.println("Select what item you want to order (\"" + FAVORITES + "\" to reorder your favorite items)");
                   String choice2 = in.readLine();
-                  query2 = "SELECT price FROM Items WHERE itemName = '"+choice2+"'";
-                  if(esql.executeQuery(query2) == 0){//That item does not exist in the Menu.
-                     System.out.println("---------");
-                     System.out.println("Sorry, that item is not part of the menu.");
+                  //Each item picked is a row [Quantity, Item, Final Price]
+                  List<ArrayList<String>> picked = new ArrayList<ArrayList<String>>();
+                  if(choice2.trim().equalsIgnoreCase(FAVORITES)){
+                     //One of each favorite, with its price, in a single query
+                     for (FavoriteItems.Favorite favorite : FavoriteItems.of(esql, authorisedUser().trim())) {
+                        picked.add(orderRow(1, favorite.getItemName(), favorite.getPrice()));
+                     }
+                     if(picked.isEmpty()){
+                        System.out.println("---------");
+                        System.out.println("You have no favorite items yet.");
+                        continue;
+                     }
                   }else{
+                     MenuCatalog.MenuItem selecteditem = esql.getMenuCatalog().snapshot().item(choice2);
+                     if(selecteditem == null){//That item does not exist in the Menu.
+                        System.out.println("---------");
+                        System.out.println("Sorry, that item is not part of the menu.");
+                        continue;
+                     }
                      System.out.println("---------");
                      System.out.println("How many "+choice2);
                      int quantity = readChoice();
-                     //Execute query
-                     System.out.println(query2);
-                     List<List<String>> selectedprice = esql.executeQueryAndReturnResult(query2);
-                     String selectedpriceString = selectedprice.get(0).get(0);
-                     double price = Double.parseDouble(selectedpriceString);
-                     double finalPrice = price * quantity;
-                     //System.out.println(finalPrice);
-                     System.out.println("---------");
-                     System.out.println("You are ordering " + quantity + " " + choice2 + " for " + finalPrice+" $");
-
-                     //Update the Orders Array with the new info.
-                     OrderArrayOfArrays.add(new ArrayList<String>());
-                     ArrayList<String> firstRow = OrderArrayOfArrays.get(i);
-                     //Casting to String
-                     String strfinalPrice = String.valueOf(finalPrice);
-                     String strquantity = Integer.toString(quantity);
-                     //Adding to the Array of arrays. The structure of it is [[Quantity, Item, Final Price]]
-                     firstRow.add(strquantity);
-                     firstRow.add(choice2);
-                     firstRow.add(strfinalPrice);
-                     //System.out.println(OrderArrayOfArrays);
+                     while(quantity <= 0){
+                        System.out.println("Please order at least one "+choice2);
+                        quantity = readChoice();
+                     }
+                     //The price charged is read again from the database at checkout
+                     picked.add(orderRow(quantity, choice2, selecteditem.getPrice()));
+                  }
+                  System.out.println("---------");
+                  for (ArrayList<String> row : picked) {
+                     System.out.println("You are ordering " + row.get(0) + " " + row.get(1) + " for " + row.get(2)+" $");
+                  }
+                  //Update the Orders Array with the new info.
+                  OrderArrayOfArrays.addAll(picked);
+                  System.out.println("---------");
+                  System.out.println("Keep on ordering?");
+                  System.out.println("1. YES");
+                  System.out.println("2. NO");
+                  int choice = readChoice();
+                  if(choice == 1){
+                     continue;
+                  }else if(choice == 2){
                      System.out.println("---------");
-                     System.out.println("Keep on ordering?");
-                     System.out.println("1. YES");
-                     System.out.println("2. NO");
-                     int choice = readChoice();
-                     if(choice == 1){
-                        i += 1;
-                     }else if(choice == 2){
-                        System.out.println("---------");
-                        System.out.println("Order summary:");
-                        finalPrice = 0;
-                        for (ArrayList<String> order : OrderArrayOfArrays) {
-                        String quantitySummary = order.get(0);  // Get the first element (quantity)
-                        String itemSummary = order.get(1); // Get the second element (item)
-                        String totalPriceSummary = order.get(2); // Get the third element (total price)
-                        //Compute final price
-                        double doubletotalPriceSummary = Double.parseDouble(totalPriceSummary);
-                        finalPrice += doubletotalPriceSummary;
-                        // Print the details
-                        System.out.println("Quantity: " + quantitySummary + ", Item: " + itemSummary + ", Price: " + totalPriceSummary);
-                        }
-                        finalPrice = Math.round(finalPrice * 100.0) / 100.0;
-                        System.out.println("Checkout: " + finalPrice + "$");
-                        invalidItem = false;
-                        //Insert order into FoodOrder table
-                        Timestamp orderTimestamp = new Timestamp(System.currentTimeMillis());  // Current timestamp
-
-                        query2 = "INSERT INTO FoodOrder (login, storeID, totalPrice, orderTimestamp) VALUES ('" 
-                                 + authorisedUser + "', '" 
-                                 + storeIDChoice + "', '" 
-                                 + finalPrice + "', '" 
-                                 + orderTimestamp.toString() + "')";
-                        System.out.println(query2);
-                        //Get the orderID
-                        String query = "SELECT * FROM FoodOrder WHERE login = '"+authorisedUser.trim()+"'";
-                        List<List<String>> selectedOrderID = esql.executeQueryAndReturnResult(query);
-                        //String StringselectedOrderID = selectedOrderID.get(0).get(0);
-                        System.out.println("---------");
-                        System.out.println(selectedOrderID);
-                     }else{
-                        System.out.println("Invalid choice!");
+                     System.out.println("Order summary:");
+                     double finalPrice = 0;
+                     for (ArrayList<String> order : OrderArrayOfArrays) {
+                     String quantitySummary = order.get(0);  // Get the first element (quantity)
+                     String itemSummary = order.get(1); // Get the second element (item)
+                     String totalPriceSummary = order.get(2); // Get the third element (total price)
+                     //Compute final price
+                     double doubletotalPriceSummary = Double.parseDouble(totalPriceSummary);
+                     finalPrice += doubletotalPriceSummary;
+                     // Print the details
+                     System.out.println("Quantity: " + quantitySummary + ", Item: " + itemSummary + ", Price: " + totalPriceSummary);
+                     }
+                     finalPrice = Math.round(finalPrice * 100.0) / 100.0;
+                     System.out.println("Checkout: " + finalPrice + "$");
+                     invalidItem = false;
+                     //Insert the order and its items in one transaction. Repeated items are merged.
+                     Map<String, Integer> quantities = new LinkedHashMap<String, Integer>();
+                     for (ArrayList<String> order : OrderArrayOfArrays) {
+                        Integer previous = quantities.get(order.get(1));
+                        int quantitySummary = Integer.parseInt(order.get(0));
+                        quantities.put(order.get(1), previous == null ? quantitySummary : previous + quantitySummary);
                      }
-                     
+                     OrderReceipt receipt = esql.commitOrder(authorisedUser().trim(), storeIDChoice, quantities);
+                     System.out.println("---------");
+                     System.out.println("Order " + receipt.getOrderID() + " placed, total charged: " + receipt.getTotalPrice() + "$");
+                     System.out.println(String.format("(committed in %.1f ms)", receipt.getCommitMillis()));
+                  }else{
+                     System.out.println("Invalid choice!");
                   }
                   
                }
                invalidInput = false;
-            }else{
-               System.out.println("Invalid option!");
-            }      
+            }
          }            
       }catch(Exception e){
          System.err.println(e.getMessage());
@@ -898,78 +1588,89 @@ public class PizzaStore {
    }
    
 
+   /*
+    * A row of the order being placed: [Quantity, Item, Final Price], the
+    * price of the quantity as shown before checkout.
+    **/
+   private static ArrayList<String> orderRow(int quantity, String itemName, BigDecimal price) {
+      ArrayList<String> row = new ArrayList<String>();
+      row.add(Integer.toString(quantity));
+      row.add(itemName);
+      row.add(String.valueOf(price.doubleValue() * quantity));
+      return row;
+   }
+
    //ADDED
    public static void viewAllOrders(PizzaStore esql, String login) {//see orderID history
       try{
          //System.out.println("as user " + login);
-         String rolequery = 
-         "SELECT * " +
-         "FROM Users " +
-         "WHERE role = 'customer' and login = '" + login + "'";
-         int isCustomer = esql.executeQuery(rolequery);
-
-         String query = "";
-         //System.out.println("iscustomer = " + isCustomer);
-         if (isCustomer != 0) {
-            query = 
-            "SELECT orderID " +
-            "FROM FoodOrder F " +
-            "WHERE login = '" + login + "'";
-         }
-         else {
-            query = 
-            "SELECT orderID " +
-            "FROM FoodOrder F " +
-            "WHERE login = ";
+         String orderLogin = login;
+         if (!currentProfile(esql).isCustomer()) {
             System.out.print("\tlogin name: ");
-            String input = "'" + in.readLine() + "'";
-            query += input;
+            orderLogin = in.readLine();
          }
          
-         int rowCount = esql.executeQueryAndPrintResult(query);
-
-         if (rowCount != 0) {
-            System.out.println ("Total orders: " + rowCount);
+         //Newest orders first, one page at a time
+         OrderHistoryPager pager = new OrderHistoryPager(esql, orderLogin, OrderHistoryPager.DEFAULT_PAGE_SIZE);
+         List<OrderHistoryPager.Entry> page = pager.first();
+         if (page.isEmpty()) {
+            System.out.println("No Orders");
+            return;
+         }
+         boolean browsing = true;
+         while (browsing) {
+            TablePrinter printer = new TablePrinter(System.out, TablePrinter.DEFAULT_FORMAT, pager.getPageSize());
+            printer.setHeader("orderid", "ordertimestamp", "totalprice", "orderstatus");
+            for (OrderHistoryPager.Entry order : page) {
+               printer.add(Integer.toString(order.getOrderID()), String.valueOf(order.getOrderTimestamp()),
+                           String.valueOf(order.getTotalPrice()), order.getOrderStatus());
+            }
+            printer.finish();
+            System.out.println("---------");
+            System.out.println("Page " + pager.getPageNumber());
+            if (!pager.hasNext() && !pager.hasPrevious()) {
+               break;
+            }
+            System.out.println("1. Next page (older)");
+            System.out.println("2. Previous page (newer)");
+            System.out.println("3. Go back");
+            switch (readChoice()) {
+               case 1:
+                  if (pager.hasNext()) { page = pager.next(); }
+                  else { System.out.println("This is the last page"); }
+                  break;
+               case 2:
+                  if (pager.hasPrevious()) { page = pager.previous(); }
+                  else { System.out.println("This is the first page"); }
+                  break;
+               case 3: browsing = false; break;
+               default: System.out.println("Invalid option!"); break;
+            }
          }
-         else {System.out.println("No Orders");}
 
       }catch(Exception e){
          System.err.println (e.getMessage());
       }
    }
    //ADDED
- public static void viewRecentOrders(PizzaStore esql, String login) {//see recent 5 orderids
+ public static void viewRecentOrders(PizzaStore esql, String login) {//see the most recent orders
       try {
          //System.out.println("as user " + login);
-         String rolequery = 
-         "SELECT * " +
-         "FROM Users " +
-         "WHERE role = 'customer' and login = '" + login + "'";
-         int isCustomer = esql.executeQuery(rolequery);
-
-         //get first 5 order id's
-         String query = "";
-         //System.out.println("iscustomer = " + isCustomer);
-         if (isCustomer != 0) {
-            query = 
-            "SELECT orderID " +
-            "FROM FoodOrder F " +
-            "WHERE login = '" + login + "' " +
-            "limit 5";
-         }
-         else {
-            query = 
-            "SELECT orderID " +
-            "FROM FoodOrder F " +
-            "WHERE login = ";
+         String orderLogin = login;
+         if (!currentProfile(esql).isCustomer()) {
             System.out.print("\tlogin name: ");
-            String input = "'" + in.readLine() + "' " +
-            "limit 5";
-            query += input;
+            orderLogin = in.readLine();
          }
          
-         //execute query
-         int rowCount = esql.executeQueryAndPrintResult(query);
+         //newest first, served from the recent orders cache
+         List<OrderHistoryPager.Entry> orders = esql.getRecentOrders().get(orderLogin);
+         TablePrinter printer = new TablePrinter(System.out, TablePrinter.DEFAULT_FORMAT, TablePrinter.DEFAULT_PAGE_SIZE);
+         printer.setHeader("orderid", "ordertimestamp", "totalprice", "orderstatus");
+         for (OrderHistoryPager.Entry order : orders) {
+            printer.add(Integer.toString(order.getOrderID()), String.valueOf(order.getOrderTimestamp()),
+                        String.valueOf(order.getTotalPrice()), order.getOrderStatus());
+         }
+         int rowCount = (int) printer.finish();
 
          if (rowCount != 0) {
             System.out.println ("Total orders: " + rowCount);
@@ -983,96 +1684,99 @@ public class PizzaStore {
 //ADDED
  public static void viewOrderInfo(PizzaStore esql, String login) {
       try{
-         //System.out.println("as user " + login); //check if customer
-         String rolequery = 
-         "SELECT * " +
-         "FROM Users " +
-         "WHERE role = 'customer' and login = '" + login + "'";
-         int isCustomer = esql.executeQuery(rolequery);
-
-         String query = "";
-         //System.out.println("iscustomer = " + isCustomer);
-         
-         if (isCustomer != 0) {//customer check their own orders 
-            System.out.print("\tID of your order: ");
-            String orderId = in.readLine();
-            String orderQuery = //list order details
-            "SELECT orderTimestamp, totalPrice, orderStatus " +
-            "FROM FoodOrder F " +
-            "WHERE orderID = '" + orderId + "' " + "and login = '" + login + "'";
-
-            int rowCount = esql.executeQueryAndPrintResult(orderQuery);
-            //System.out.println(": " + rowCount);
-            
-            if (rowCount != 0) { //customer is checking their own order
-               String itemsQuery = //list items in the order
-               "SELECT itemName, quantity " +
-               "FROM ItemsInOrder I " +
-               "WHERE orderID = '" + orderId + "'";
-
-               int itemsCount = esql.executeQueryAndPrintResult(itemsQuery);
-               System.out.println ("total items(s): " + itemsCount);
-            }
-            else {System.out.println("No matching order");}
-            
-         }
-         else {// manager/driver check any orderid
-            System.out.print("\tID of order: ");
-            String orderId = in.readLine();
-            String orderQuery = //list order details
-            "SELECT orderTimestamp, totalPrice, orderStatus " +
-            "FROM FoodOrder F " +
-            "WHERE orderID = '" + orderId + "'";
-
-            String itemsQuery = //list items in order
-            "SELECT itemName, quantity " +
-            "FROM ItemsInOrder I " +
-            "WHERE orderID = '" + orderId + "'";
-
-            int rowCount = esql.executeQueryAndPrintResult(orderQuery);
-            //System.out.println("total row(s): " + rowCount);
-            if (rowCount != 0) {
-               int itemsCount = esql.executeQueryAndPrintResult(itemsQuery);
-               System.out.println("total items(s): " + itemsCount);
-            }
-            else {System.out.println("No matching order");}            
+         boolean customer = currentProfile(esql).isCustomer();
+         //customers check their own orders, managers and drivers any orderid
+         System.out.print(customer ? "\tID of your order: " : "\tID of order: ");
+         int orderId = Integer.parseInt(in.readLine().trim());
+         OrderDetail order = esql.getOrderDetails().get(orderId);
+         if (order == null || (customer && !order.getLogin().equals(login))) {
+            System.out.println("No matching order");
+         }else {
+            printOrderDetail(order);
          }
       }catch(Exception e){
          System.err.println (e.getMessage());
       }
    }
 
+   private static void printOrderDetail(OrderDetail order) {
+      System.out.println(String.format("Order %d by %s at store %d, %s", order.getOrderID(), order.getLogin(),
+                                       order.getStoreID(), order.getOrderTimestamp()));
+      System.out.println("Status: " + order.getOrderStatus());
+      TablePrinter printer = new TablePrinter(System.out, TablePrinter.DEFAULT_FORMAT, TablePrinter.DEFAULT_PAGE_SIZE);
+      printer.setHeader("itemname", "quantity", "price", "amount");
+      for (OrderDetail.Line line : order.getLines()) {
+         printer.add(line.getItemName(), Integer.toString(line.getQuantity()),
+                     line.getPrice().toPlainString(), line.getAmount().toPlainString());
+      }
+      printer.finish();
+      System.out.println("total items(s): " + order.getItemCount());
+      System.out.println("Total price: " + order.getTotalPrice());
+   }
+
    public static void viewStores(PizzaStore esql) {
       try {
-         String query = 
-         "SELECT address, city, state, storeID, reviewScore, isOpen " +
-         "FROM Store";
-         int rowCount = esql.executeQueryAndPrintResult(query);
-         System.out.println("Number of stores: " + rowCount);
+         System.out.print("\topen stores only? (y/n): ");
+         boolean openOnly = in.readLine().trim().equalsIgnoreCase("y");
+         searchStores(esql, openOnly);
       }catch(Exception e){
          System.err.println (e.getMessage());
       }
    }
 
+   /*
+    * Reads a store search from the terminal and prints the best reviewed
+    * matching stores, answered from the in-memory StoreLocator.
+    * @return the stores printed
+    **/
+   private static List<StoreLocator.Store> searchStores(PizzaStore esql, boolean openOnly) throws Exception {
+      System.out.print("\tcity (blank for any): ");
+      String city = in.readLine();
+      System.out.print("\tstate (blank for any): ");
+      String state = in.readLine();
+      System.out.print("\tminimum review score (blank for any): ");
+      String score = in.readLine().trim();
+      double minScore = score.isEmpty() ? 0 : Double.parseDouble(score);
+      List<StoreLocator.Store> stores = esql.getStoreLocator().search(city, state, openOnly, minScore,
+                                                                      StoreLocator.DEFAULT_LIMIT);
+      TablePrinter printer = new TablePrinter(System.out, TablePrinter.DEFAULT_FORMAT, TablePrinter.DEFAULT_PAGE_SIZE);
+      printer.setHeader("storeid", "address", "city", "state", "reviewscore", "isopen");
+      for (StoreLocator.Store store : stores) {
+         printer.add(Integer.toString(store.getStoreID()), store.getAddress(), store.getCity(), store.getState(),
+                     String.valueOf(store.getReviewScore()), store.getIsOpen());
+      }
+      printer.finish();
+      System.out.println("Number of stores: " + stores.size()
+                         + (stores.size() == StoreLocator.DEFAULT_LIMIT ? " best reviewed shown" : ""));
+      return stores;
+   }
+
    public static void updateOrderStatus(PizzaStore esql) {
       try{
-         String query = "SELECT role FROM Users WHERE login = '" + authorisedUser + "'";
-         List<List<String>> output = esql.executeQueryAndReturnResult(query);
-         System.out.println(output.get(0).get(0));
-         if(output.get(0).get(0).trim().equals("manager") || output.get(0).get(0).trim().equals("driver")){
+         UserProfile profile = currentProfile(esql);
+         System.out.println(profile.getRole());
+         if(profile.canUpdateOrderStatus()){
+            boolean back = false;
+            while(!back){
                System.out.println("---------");
-               System.out.println("Select the ID of the order you want to update");
-               String choice2 = in.readLine();
-               query = "SELECT * FROM FoodOrder WHERE orderID = '"+choice2+"'";
-               if(esql.executeQuery(query) == 0){
-                  System.out.println("That order does not exist");
-               }else{
-                  System.out.println("What is the new status of the order?");
-                  String newStatus = in.readLine();
-                  query = "UPDATE FoodOrder SET orderStatus = '"+newStatus+"' WHERE orderID = '"+choice2+"'";
-                  esql.executeUpdate(query);
-               }
-
+               System.out.println("1. Update the status of an order");
+               System.out.println("2. Mark orders delivered");
+               System.out.println("3. View status update metrics");
+               System.out.println("4. Go back");
+               switch (readChoice()){
+                  case 1:
+                     updateOneOrderStatus(esql);
+                     break;
+                  case 2:
+                     markOrdersDelivered(esql);
+                     break;
+                  case 3:
+                     System.out.println(esql.getStatusQueue().stats());
+                     break;
+                  case 4: back = true; break;
+                  default : System.out.println("Unrecognized choice!"); break;
+               }//end switch
+            }//end while
          }else{
              //A non manager tries to enter
             System.out.println("Unauthorised");           
@@ -1082,22 +1786,243 @@ public class PizzaStore {
       }
 
    }
+
+   private static void updateOneOrderStatus(PizzaStore esql) throws Exception {
+      System.out.println("Select the ID of the order you want to update");
+      int orderID = Integer.parseInt(in.readLine().trim());
+      System.out.println("What is the new status of the order?");
+      OrderStatus[] statuses = OrderStatus.values();
+      for (int i = 0; i < statuses.length; ++i) {
+         System.out.println((i + 1) + ". " + statuses[i].label());
+      }
+      int choice = readChoice();
+      if (choice < 1 || choice > statuses.length) {
+         System.out.println("Unrecognized choice!");
+         return;
+      }
+      OrderStatus status = statuses[choice - 1];
+      if (awaitStatus(esql.getStatusQueue().submit(orderID, status))) {
+         System.out.println("Order " + orderID + " is now " + status.label());
+      }else{
+         System.out.println("That order does not exist or is already " + status.label() + " or later");
+      }
+   }
+
+   // completes every order listed, in one batch.
+   private static void markOrdersDelivered(PizzaStore esql) throws Exception {
+      System.out.println("Enter the IDs of the delivered orders, separated by spaces or commas");
+      String line = in.readLine().trim();
+      if (line.isEmpty()) {
+         return;
+      }
+      String[] ids = line.split("[\\s,]+");
+      List<CompletableFuture<Boolean>> results = new ArrayList<CompletableFuture<Boolean>>(ids.length);
+      for (String id : ids) {
+         results.add(esql.getStatusQueue().submit(Integer.parseInt(id), OrderStatus.COMPLETE));
+      }
+      int delivered = 0;
+      for (CompletableFuture<Boolean> result : results) {
+         if (awaitStatus(result)) {
+            delivered++;
+         }
+      }
+      System.out.println(delivered + " of " + ids.length + " orders marked delivered");
+   }
+
+   private static boolean awaitStatus(CompletableFuture<Boolean> result) throws Exception {
+      try {
+         return result.get();
+      }catch (ExecutionException e) {
+         throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+      }
+   }
+
+   public static void viewOrderBoard(PizzaStore esql) {
+      try{
+         if(!currentProfile(esql).canUpdateOrderStatus()){
+            System.out.println("Unauthorised");
+            return;
+         }
+         OrderBoard board = esql.getOrderBoard();
+         System.out.println("Enter the ID of the store");
+         int storeID = Integer.parseInt(in.readLine().trim());
+         long version = printOrderBoard(board.view(storeID), storeID);
+         boolean back = false;
+         while(!back){
+            System.out.println("---------");
+            System.out.println("1. Wait for changes");
+            System.out.println("2. Show the whole board");
+            System.out.println("3. View board statistics");
+            System.out.println("4. Go back");
+            switch (readChoice()){
+               case 1:
+                  // blocks until the listener applies a change to this store
+                  OrderBoard.Changes changes = board.awaitChanges(storeID, version, OrderBoard.DEFAULT_WAIT_MILLIS);
+                  if (changes.isReset()) {
+                     version = printOrderBoard(board.view(storeID), storeID);
+                     break;
+                  }
+                  if (changes.getChanges().isEmpty()) {
+                     System.out.println("No changes in the last " + OrderBoard.DEFAULT_WAIT_MILLIS / 1000 + " s");
+                  }
+                  for (OrderBoard.Change change : changes.getChanges()) {
+                     OrderBoard.OpenOrder order = change.getOrder();
+                     System.out.println(order == null ? "Order " + change.getOrderID() + " left the board"
+                                        : "Order " + order.getOrderID() + " of " + order.getLogin().trim()
+                                          + " is " + order.getStatus().label());
+                  }
+                  version = changes.getVersion();
+                  break;
+               case 2: version = printOrderBoard(board.view(storeID), storeID); break;
+               case 3: System.out.println(board); break;
+               case 4: back = true; break;
+               default : System.out.println("Unrecognized choice!"); break;
+            }
+         }
+      }catch(Exception e){
+         System.err.println(e.getMessage());
+      }
+   }
+
+   private static long printOrderBoard(OrderBoard.View view, int storeID) {
+      System.out.println("Open orders of store " + storeID + ":");
+      for (OrderBoard.OpenOrder order : view.getOrders()) {
+         System.out.println(String.format("%8d  %-20s %s  %10s  %s", order.getOrderID(), order.getLogin().trim(),
+                                          order.getOrderTimestamp(), order.getTotalPrice(), order.getStatus().label()));
+      }
+      System.out.println("Number of open orders: " + view.getOrders().size());
+      return view.getVersion();
+   }
+
+   public static void viewSalesReports(PizzaStore esql) {
+      try{
+         if(!currentProfile(esql).canViewSales()){
+            System.out.println("Unauthorised");
+            return;
+         }
+         boolean back = false;
+         while(!back){
+            System.out.println("---------");
+            System.out.println("1. Revenue of a store per day");
+            System.out.println("2. Revenue of a store per hour");
+            System.out.println("3. Top stores by revenue");
+            System.out.println("4. Best selling items");
+            System.out.println("5. Top customers");
+            System.out.println("6. Revenue per state, whole history");
+            System.out.println("7. Basket sizes, whole history");
+            System.out.println("8. Items bought together, whole history");
+            System.out.println("9. Users favoring an item");
+            System.out.println("10. Go back");
+            int choice = readChoice();
+            long start = System.nanoTime();
+            int storeID, days;
+            switch (choice){
+               case 1:
+                  System.out.print("\tstore ID: ");
+                  storeID = Integer.parseInt(in.readLine().trim());
+                  System.out.print("\tnumber of days: ");
+                  days = Integer.parseInt(in.readLine().trim());
+                  start = System.nanoTime();
+                  esql.executeQueryAndPrintResult(SalesAnalytics.STORE_DAYS, storeID, days);
+                  break;
+               case 2:
+                  System.out.print("\tstore ID: ");
+                  storeID = Integer.parseInt(in.readLine().trim());
+                  System.out.print("\tday (yyyy-mm-dd, blank for its last day with sales): ");
+                  String day = in.readLine().trim();
+                  String dayParam = day.isEmpty() ? null : day;
+                  start = System.nanoTime();
+                  esql.executeQueryAndPrintResult(SalesAnalytics.STORE_HOURS, storeID, dayParam, storeID, dayParam, storeID);
+                  break;
+               case 3:
+                  System.out.print("\tnumber of days: ");
+                  days = Integer.parseInt(in.readLine().trim());
+                  start = System.nanoTime();
+                  esql.executeQueryAndPrintResult(SalesAnalytics.TOP_STORES, days, SalesAnalytics.DEFAULT_TOP);
+                  break;
+               case 4: esql.executeQueryAndPrintResult(SalesAnalytics.TOP_ITEMS, SalesAnalytics.DEFAULT_TOP); break;
+               case 5: esql.executeQueryAndPrintResult(SalesAnalytics.TOP_CUSTOMERS, SalesAnalytics.DEFAULT_TOP); break;
+               case 6: printReport(esql.getReportEngine().run(ReportEngine.report("revenueByState"))); break;
+               case 7: printReport(esql.getReportEngine().run(ReportEngine.report("basketSize"))); break;
+               case 8: printReport(esql.getReportEngine().run(ReportEngine.report("itemPairs"))); break;
+               case 9:
+                  System.out.print("\titem name: ");
+                  String itemName = in.readLine();
+                  start = System.nanoTime();
+                  esql.executeQueryAndPrintResult(FavoriteItems.FAVORED_BY, itemName, SalesAnalytics.DEFAULT_TOP);
+                  break;
+               case 10: back = true; break;
+               default : System.out.println("Unrecognized choice!"); break;
+            }
+            if (choice >= 1 && choice <= 9) {
+               System.out.println(String.format("(answered in %.1f ms)", (System.nanoTime() - start) / 1e6));
+            }
+         }
+      }catch(Exception e){
+         System.err.println(e.getMessage());
+      }
+   }
+
+   private static void printReport(ReportEngine.Result result) {
+      TablePrinter printer = new TablePrinter(System.out, TablePrinter.DEFAULT_FORMAT, TablePrinter.DEFAULT_PAGE_SIZE);
+      printer.setHeader(result.getHeader());
+      for (String[] row : result.getRows()) {
+         printer.add(row);
+      }
+      printer.finish();
+      System.out.println(result);
+   }
+
+   public static void viewQueryMetrics(PizzaStore esql) {
+      try{
+         if(!currentProfile(esql).canViewMetrics()){
+            System.out.println("Unauthorised");
+            return;
+         }
+         boolean back = false;
+         while(!back){
+            System.out.println("---------");
+            System.out.println("1. Queries taking the most time");
+            System.out.println("2. Slow queries");
+            System.out.println("3. Prometheus exposition");
+            System.out.println("4. Go back");
+            switch (readChoice()){
+               case 1: esql.getMetrics().print(System.out, QueryMetrics.DEFAULT_TOP); break;
+               case 2:
+                  List<QueryMetrics.SlowCall> slow = esql.getMetrics().slowCalls();
+                  for (QueryMetrics.SlowCall call : slow) {
+                     System.out.println(call);
+                  }
+                  System.out.println("Number of slow queries kept: " + slow.size());
+                  break;
+               case 3: System.out.print(esql.getMetrics().exposition()); break;
+               case 4: back = true; break;
+               default : System.out.println("Unrecognized choice!"); break;
+            }
+         }
+      }catch(Exception e){
+         System.err.println(e.getMessage());
+      }
+   }
+
    public static void updateMenu(PizzaStore esql) {
       try{
-         String query = "SELECT role FROM Users WHERE login = '" + authorisedUser + "'";
-         List<List<String>> output = esql.executeQueryAndReturnResult(query);
-         System.out.println(output.get(0).get(0));
-         if(output.get(0).get(0).trim().equals("manager")){
+         UserProfile profile = currentProfile(esql);
+         System.out.println(profile.getRole());
+         String query;
+         if(profile.canUpdateMenu()){
             boolean validInput = true;
             while(validInput){
                System.out.println("---------");
                System.out.println("What item do you want to update?");
                String choice2 = in.readLine();
                //Check the item exists
-               query = "SELECT * FROM Items WHERE itemName = '"+choice2+"'";
-               if(esql.executeQuery(query) == 0){
+               query = "SELECT itemID FROM Items WHERE itemName = ?";
+               List<List<String>> item = esql.executeQueryAndReturnResult(query, choice2);
+               if(item.isEmpty()){
                   System.out.println("That item does not exist");
                }else{
+               int itemID = Integer.parseInt(item.get(0).get(0).trim());
                 System.out.println("---------");
                System.out.println("What do you want to update from "+choice2+"");
                System.out.println("1. Name");
@@ -1111,47 +2036,28 @@ public class PizzaStore {
                if(input == 1){
                   System.out.println("Choose new name for "+choice2);
                   String newName = in.readLine();
-                  query = "UPDATE Items SET itemName = '"+newName+"' WHERE itemName = '"+choice2+"'";
-                  String query2 = "UPDATE ItemsInOrder SET itemName = '"+newName+"' WHERE itemName = '"+choice2+"'";
-                  //Aparently the old name is not updated, but the new name added as well.
-                  esql.executeQuery(query);
-                  esql.executeQuery(query2);
+                  // past orders reference the itemID, so they follow the new name
+                  updateItem(esql, "itemName", newName, itemID);
                   validInput = false;
                }else if(input == 2){
                   System.out.println("Choose new ingredients for "+choice2);
                   String newName = in.readLine();
-                  query = "UPDATE Items SET ingredients = '"+newName+"' WHERE itemName = '"+choice2+"'";
-                  String query2 = "UPDATE ItemsInOrder SET ingredients = '"+newName+"' WHERE itemName = '"+choice2+"'";
-                  //Aparently the old name is not updated, but the new name added as well.
-                  esql.executeUpdate(query);
-                  esql.executeUpdate(query2);
+                  updateItem(esql, "ingredients", newName, itemID);
                   validInput = false;
                }else if(input == 3){
                   System.out.println("Choose new category for "+choice2);
                   String newName = in.readLine();
-                  query = "UPDATE Items SET typeOfItem = '"+newName+"' WHERE itemName = '"+choice2+"'";
-                  String query2 = "UPDATE ItemsInOrder SET typeOfItem = '"+newName+"' WHERE itemName = '"+choice2+"'";
-                  //Aparently the old name is not updated, but the new name added as well.
-                  esql.executeQuery(query);
-                  esql.executeQuery(query2);
+                  updateItem(esql, "typeOfItem", newName, itemID);
                   validInput = false;
                }else if(input == 4){
                   System.out.println("Choose new price for "+choice2);
                   String newName = in.readLine();
-                  query = "UPDATE Items SET price = '"+newName+"' WHERE itemName = '"+choice2+"'";
-                  String query2 = "UPDATE ItemsInOrder SET price = '"+newName+"' WHERE itemName = '"+choice2+"'";
-                  //Aparently the old name is not updated, but the new name added as well.
-                  esql.executeUpdate(query);
-                  esql.executeUpdate(query2);
+                  updateItem(esql, "price", new BigDecimal(newName.trim()), itemID);
                   validInput = false;
                }else if(input == 5){
                   System.out.println("Choose new description for "+choice2);
                   String newName = in.readLine();
-                  query = "UPDATE Items SET description = '"+newName+"' WHERE itemName = '"+choice2+"'";
-                  String query2 = "UPDATE ItemsInOrder SET description = '"+newName+"' WHERE itemName = '"+choice2+"'";
-                  //Aparently the old name is not updated, but the new name added as well.
-                  esql.executeUpdate(query);
-                  esql.executeUpdate(query2);
+                  updateItem(esql, "description", newName, itemID);
                   validInput = false;
                }else if(input == 6){
                   System.out.println("Choose an item name");
@@ -1166,12 +2072,10 @@ public class PizzaStore {
                   String newDescription = in.readLine();
 
                   // Constructing the SQL query
-                  query = "INSERT INTO Items (itemName, ingredients, typeOfItem, price, description) VALUES ('" 
-                              + newName + "', '" 
-                              + newIngredients + "', '" 
-                              + newTypeOfItem + "', '" 
-                              + newPrice + "', '" 
-                              + newDescription + "')";
+                  query = "INSERT INTO Items (itemName, ingredients, typeOfItem, price, description) VALUES (?, ?, ?, ?, ?)";
+                  esql.executeUpdate(query, newName, newIngredients, newTypeOfItem,
+                                     new BigDecimal(newPrice.trim()), newDescription);
+                  esql.getMenuCatalog().refresh();
 
                }else if(input == 7){
                   validInput = false;
@@ -1189,6 +2093,24 @@ public class PizzaStore {
       }
    }
 
+   /*
+    * Changes one column of one item. The statement updates the single Items
+    * row of the itemID, in its own transaction, however many orders hold
+    * the item.
+    **/
+   private static void updateItem(PizzaStore esql, String column, Object value, int itemID) throws SQLException {
+      if(esql.executeUpdate("UPDATE Items SET " + column + " = ? WHERE itemID = ?", value, itemID) == 0){
+         System.out.println("That item does not exist");
+         return;
+      }
+      esql.getMenuCatalog().refresh();
+      if(column.equals("itemName") || column.equals("price")){
+         // past orders show the items by their current name and price
+         esql.getOrderDetails().clear();
+      }
+      System.out.println("Item updated");
+   }
+
    public static void updateUser(PizzaStore esql) {
       //The functionality of this method was implemented inside the method updateProfile.
       //Inside updateProfile, if you have the permission to do so, you can update either your
@@ -0,0 +1,145 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class serves the PizzaStore menus to many terminals from one process.
+ * It listens on a local TCP port and runs every connected terminal as its
+ * own Session on its own thread; all sessions share the PizzaStore
+ * connection pool.
+ *
+ */
+public class PizzaStoreServer {
+
+   private final PizzaStore _esql;
+   private final ServerSocket _serverSocket;
+   private final ThreadFactory _threads;
+   private final AtomicInteger _active = new AtomicInteger();
+
+   /**
+    * Creates a new server bound to the loopback interface
+    *
+    * @param esql the data layer shared by every session
+    * @param port the local TCP port to listen on
+    * @throws java.io.IOException when the port cannot be bound
+    */
+   public PizzaStoreServer(PizzaStore esql, int port) throws IOException {
+      this._esql = esql;
+      this._serverSocket = new ServerSocket(port, 128, InetAddress.getLoopbackAddress());
+      this._threads = sessionThreadFactory();
+   }//end PizzaStoreServer
+
+   /**
+    * Accepts terminals until the server socket is closed.
+    */
+   public void serve() throws IOException {
+      Session.redirectStandardStreams();
+      Session.current().out().println("Listening for terminals on "
+         + this._serverSocket.getInetAddress().getHostAddress() + ":" + this._serverSocket.getLocalPort());
+      while (!this._serverSocket.isClosed()) {
+         final Socket socket;
+         try {
+            socket = this._serverSocket.accept();
+         }catch (IOException e) {
+            if (this._serverSocket.isClosed()) {
+               return;
+            }//end if
+            throw e;
+         }//end try
+         this._threads.newThread(new Runnable() {
+            public void run() { runTerminal(socket); }
+         }).start();
+      }//end while
+   }//end serve
+
+   /**
+    * Stops accepting terminals. Sessions already running finish normally.
+    */
+   public void close() {
+      try {
+         this._serverSocket.close();
+      }catch (IOException e) {
+         // ignored.
+      }//end try
+   }//end close
+
+   public int activeSessions() { return this._active.get(); }
+
+   /*
+    * Runs the menus for one connected terminal until it exits or disconnects.
+    **/
+   private void runTerminal(Socket socket) {
+      this._active.incrementAndGet();
+      try {
+         BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+         PrintStream out = new PrintStream(new BufferedOutputStream(socket.getOutputStream()), false, "UTF-8");
+         Session.bind(new Session(reader, out, out));
+         try {
+            PizzaStore.Greeting();
+            PizzaStore.runSession(this._esql);
+         }catch (Session.Disconnected e) {
+            // the terminal went away.
+         }catch (Exception e) {
+            out.println(e.getMessage());
+         }finally {
+            out.flush();
+            Session.current().logout();
+            Session.unbind();
+         }//end try
+      }catch (IOException e) {
+         // the terminal went away before the session started.
+      }finally {
+         this._active.decrementAndGet();
+         try {
+            socket.close();
+         }catch (IOException e) {
+            // ignored.
+         }//end try
+      }//end try
+   }//end runTerminal
+
+   /*
+    * Sessions spend nearly all their time blocked on the terminal, so they run
+    * on virtual threads when the runtime has them (Java 21+). Older runtimes
+    * fall back to one daemon platform thread per session.
+    **/
+   private static ThreadFactory sessionThreadFactory() {
+      try {
+         Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+         Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+         builder = builderType.getMethod("name", String.class, long.class).invoke(builder, "session-", 0L);
+         return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+      }catch (ReflectiveOperationException e) {
+         final AtomicInteger count = new AtomicInteger();
+         return new ThreadFactory() {
+            public Thread newThread(Runnable task) {
+               Thread thread = new Thread(task, "session-" + count.getAndIncrement());
+               thread.setDaemon(true);
+               return thread;
+            }
+         };
+      }//end try
+   }//end sessionThreadFactory
+
+}//end PizzaStoreServer
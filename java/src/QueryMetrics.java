@@ -0,0 +1,457 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class measures the calls of the data layer: per SQL template, a
+ * latency histogram, the rows returned or changed, the errors and the time
+ * spent waiting for a pooled connection. Calls slower than a threshold are
+ * reported on the console and kept in a short log. Everything can be read
+ * as a table from the managers' menu, or in the Prometheus text format,
+ * also over HTTP on a loopback port.
+ *
+ */
+public class QueryMetrics {
+
+   // calls taking longer than this are logged.
+   public static final long DEFAULT_SLOW_MILLIS =
+      Long.getLong("pizzastore.metrics.slowMillis", 250L);
+
+   // slow calls kept for the menu and the dump.
+   public static final int DEFAULT_SLOW_LOG =
+      Integer.getInteger("pizzastore.metrics.slowLog", 100);
+
+   // templates measured apart; calls of any further ones are counted together.
+   public static final int DEFAULT_MAX_TEMPLATES =
+      Integer.getInteger("pizzastore.metrics.maxTemplates", 256);
+
+   // loopback port serving /metrics, or 0 for none.
+   public static final int DEFAULT_HTTP_PORT =
+      Integer.getInteger("pizzastore.metrics.port", 0);
+
+   // templates shown by the menu table.
+   public static final int DEFAULT_TOP =
+      Integer.getInteger("pizzastore.metrics.top", 15);
+
+   private static final int LABEL_LENGTH = 120;
+   private static final String OTHER = "(other)";
+   private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+   /**
+    * A histogram of durations in microseconds. Buckets are log-linear, as
+    * in HdrHistogram: every power of two is cut into SUB_BUCKETS buckets,
+    * so a value is known within 1/SUB_BUCKETS of itself, up to about 19
+    * hours, in a fixed array of counters updated without locks.
+    */
+   public static class Histogram {
+
+      private static final int SUB_BITS = 3;
+      private static final int SUB_BUCKETS = 1 << SUB_BITS;
+      private static final int MAX_BITS = 36;
+      private static final int BUCKETS = SUB_BUCKETS * (MAX_BITS - SUB_BITS + 2);
+
+      private final AtomicLongArray _counts = new AtomicLongArray(BUCKETS);
+      private final LongAdder _count = new LongAdder();
+      private final LongAdder _sum = new LongAdder();
+      private final AtomicLong _max = new AtomicLong();
+
+      public void record(long micros) {
+         long value = Math.max(0, micros);
+         this._counts.incrementAndGet(index(value));
+         this._count.increment();
+         this._sum.add(value);
+         long max = this._max.get();
+         while (value > max && !this._max.compareAndSet(max, value)) {
+            max = this._max.get();
+         }//end while
+      }//end record
+
+      public long count() { return this._count.sum(); }
+      public long sumMicros() { return this._sum.sum(); }
+      public long maxMicros() { return this._max.get(); }
+
+      public double meanMicros() {
+         long count = count();
+         return count == 0 ? 0 : sumMicros() / (double) count;
+      }//end meanMicros
+
+      /**
+       * Returns the highest value of the bucket holding the given quantile,
+       * at most the largest value recorded.
+       */
+      public long quantileMicros(double quantile) {
+         long[] counts = new long[BUCKETS];
+         long total = 0;
+         for (int i = 0; i < BUCKETS; ++i) {
+            counts[i] = this._counts.get(i);
+            total += counts[i];
+         }//end for
+         if (total == 0) {
+            return 0;
+         }//end if
+         long rank = Math.max(1, (long) Math.ceil(quantile * total));
+         long seen = 0;
+         for (int i = 0; i < BUCKETS; ++i) {
+            seen += counts[i];
+            if (seen >= rank) {
+               return Math.min(highestOf(i), maxMicros());
+            }//end if
+         }//end for
+         return maxMicros();
+      }//end quantileMicros
+
+      static int index(long value) {
+         if (value < SUB_BUCKETS) {
+            return (int) value;
+         }//end if
+         int bits = Math.min(63 - Long.numberOfLeadingZeros(value), MAX_BITS);
+         int sub = (int) (value >>> (bits - SUB_BITS)) & (SUB_BUCKETS - 1);
+         return SUB_BUCKETS * (bits - SUB_BITS + 1) + sub;
+      }//end index
+
+      static long highestOf(int index) {
+         if (index < SUB_BUCKETS) {
+            return index;
+         }//end if
+         int bits = index / SUB_BUCKETS + SUB_BITS - 1;
+         long sub = index % SUB_BUCKETS;
+         return ((SUB_BUCKETS + sub + 1) << (bits - SUB_BITS)) - 1;
+      }//end highestOf
+
+   }//end Histogram
+
+   /**
+    * What was measured of one SQL template.
+    */
+   public static class Template {
+
+      private final String _label;
+      private final Histogram _latency = new Histogram();
+      private final LongAdder _rows = new LongAdder();
+      private final LongAdder _errors = new LongAdder();
+      private final LongAdder _waitMicros = new LongAdder();
+
+      Template(String label) {
+         this._label = label;
+      }//end Template
+
+      public String getLabel() { return this._label; }
+      public Histogram getLatency() { return this._latency; }
+      public long getRows() { return this._rows.sum(); }
+      public long getErrors() { return this._errors.sum(); }
+      public long getWaitMicros() { return this._waitMicros.sum(); }
+
+   }//end Template
+
+   /**
+    * A call slower than the threshold.
+    */
+   public static class SlowCall {
+
+      private final long _at;
+      private final String _label;
+      private final long _micros;
+      private final long _waitMicros;
+      private final long _rows;
+      private final String _login;
+
+      SlowCall(long at, String label, long micros, long waitMicros, long rows, String login) {
+         this._at = at;
+         this._label = label;
+         this._micros = micros;
+         this._waitMicros = waitMicros;
+         this._rows = rows;
+         this._login = login;
+      }//end SlowCall
+
+      @Override
+      public String toString() {
+         return String.format("%s  %8.1f ms (waited %.1f ms)  %s  %s  %s", new Timestamp(this._at),
+                              this._micros / 1e3, this._waitMicros / 1e3,
+                              this._rows < 0 ? "failed" : this._rows + " rows",
+                              this._login == null ? "-" : this._login, this._label);
+      }//end toString
+
+   }//end SlowCall
+
+   private final ConcurrentHashMap<String, Template> _templates = new ConcurrentHashMap<String, Template>();
+   private final Template _other = new Template(OTHER);
+   private final Histogram _wait = new Histogram();
+   private final LongAdder _slowCalls = new LongAdder();
+   private final ArrayDeque<SlowCall> _slowLog = new ArrayDeque<SlowCall>();
+   private final long _slowMicros;
+   private final int _slowLogSize;
+   private final int _maxTemplates;
+   private HttpServer _http = null;
+
+   /**
+    * Creates new metrics.
+    *
+    * @param slowMillis the duration above which a call is logged
+    * @param slowLogSize the slow calls kept
+    * @param maxTemplates the templates measured apart
+    */
+   public QueryMetrics(long slowMillis, int slowLogSize, int maxTemplates) {
+      this._slowMicros = slowMillis * 1000;
+      this._slowLogSize = slowLogSize;
+      this._maxTemplates = maxTemplates;
+   }//end QueryMetrics
+
+   /**
+    * Records one call of the data layer.
+    *
+    * @param sql the SQL template, or the name of a transaction
+    * @param start System.nanoTime() before the connection was borrowed
+    * @param borrowed System.nanoTime() once the connection was borrowed
+    * @param rows the rows returned or changed, or -1 when the call failed
+    */
+   public void record(String sql, long start, long borrowed, long rows) {
+      long end = System.nanoTime();
+      long micros = (end - start) / 1000;
+      long waitMicros = (borrowed - start) / 1000;
+      Template template = template(sql);
+      template._latency.record(micros);
+      template._waitMicros.add(waitMicros);
+      this._wait.record(waitMicros);
+      if (rows < 0) {
+         template._errors.increment();
+      }else {
+         template._rows.add(rows);
+      }//end if
+      if (micros >= this._slowMicros) {
+         slow(new SlowCall(System.currentTimeMillis(), template._label, micros, waitMicros, rows,
+                           Session.current().getLogin()));
+      }//end if
+   }//end record
+
+   private Template template(String sql) {
+      Template template = this._templates.get(sql);
+      if (template == null) {
+         if (this._templates.size() >= this._maxTemplates) {
+            return this._other;
+         }//end if
+         Template created = new Template(label(sql));
+         template = this._templates.putIfAbsent(sql, created);
+         if (template == null) {
+            template = created;
+         }//end if
+      }//end if
+      return template;
+   }//end template
+
+   /*
+    * One line of the SQL; a long one is cut, and told apart from others
+    * starting alike by the hash of the whole of it.
+    **/
+   private static String label(String sql) {
+      String label = sql.trim().replaceAll("\\s+", " ");
+      if (label.length() <= LABEL_LENGTH) {
+         return label;
+      }//end if
+      String hash = String.format("%08x", sql.hashCode());
+      return label.substring(0, LABEL_LENGTH - hash.length() - 5) + "... #" + hash;
+   }//end label
+
+   private void slow(SlowCall call) {
+      this._slowCalls.increment();
+      synchronized (this._slowLog) {
+         if (this._slowLog.size() == this._slowLogSize) {
+            this._slowLog.removeFirst();
+         }//end if
+         if (this._slowLogSize > 0) {
+            this._slowLog.addLast(call);
+         }//end if
+      }//end synchronized
+      // on the operator's console, not on the terminal of the session
+      Session.console().err().println("Slow query: " + call);
+   }//end slow
+
+   /**
+    * Returns the slow calls kept, oldest first.
+    */
+   public List<SlowCall> slowCalls() {
+      synchronized (this._slowLog) {
+         return new ArrayList<SlowCall>(this._slowLog);
+      }//end synchronized
+   }//end slowCalls
+
+   /**
+    * Returns the templates measured so far, the most total time first.
+    */
+   public List<Template> templates() {
+      List<Template> templates = new ArrayList<Template>(this._templates.values());
+      if (this._other._latency.count() > 0) {
+         templates.add(this._other);
+      }//end if
+      Collections.sort(templates, new Comparator<Template>() {
+         public int compare(Template a, Template b) {
+            return Long.compare(b._latency.sumMicros(), a._latency.sumMicros());
+         }
+      });
+      return templates;
+   }//end templates
+
+   /**
+    * Prints the templates taking the most total time as a table, then the
+    * latest slow calls.
+    *
+    * @param out where to print
+    * @param top the templates shown
+    */
+   public void print(PrintStream out, int top) {
+      TablePrinter printer = new TablePrinter(out, TablePrinter.DEFAULT_FORMAT, TablePrinter.DEFAULT_PAGE_SIZE);
+      printer.setHeader("calls", "errors", "rows", "total ms", "avg ms", "p50 ms", "p99 ms", "max ms",
+                        "wait ms", "query");
+      List<Template> templates = templates();
+      for (Template t : templates.subList(0, Math.min(top, templates.size()))) {
+         Histogram h = t._latency;
+         printer.add(Long.toString(h.count()), Long.toString(t.getErrors()), Long.toString(t.getRows()),
+                     millis(h.sumMicros()), millis(h.meanMicros()), millis(h.quantileMicros(0.5)),
+                     millis(h.quantileMicros(0.99)), millis(h.maxMicros()),
+                     millis(h.count() == 0 ? 0 : t.getWaitMicros() / (double) h.count()), t._label);
+      }//end for
+      printer.finish();
+      out.println(String.format("connection wait: avg %s ms, p99 %s ms, max %s ms; %d slow calls (over %d ms)",
+                                millis(this._wait.meanMicros()), millis(this._wait.quantileMicros(0.99)),
+                                millis(this._wait.maxMicros()), this._slowCalls.sum(), this._slowMicros / 1000));
+   }//end print
+
+   private static String millis(double micros) {
+      return String.format("%.2f", micros / 1e3);
+   }//end millis
+
+   /**
+    * Returns the metrics in the Prometheus text exposition format.
+    */
+   public String exposition() {
+      StringBuilder out = new StringBuilder(4096);
+      List<Template> templates = templates();
+      out.append("# HELP pizzastore_query_seconds Duration of the data layer calls per SQL template.\n");
+      out.append("# TYPE pizzastore_query_seconds summary\n");
+      for (Template t : templates) {
+         String query = "query=\"" + escape(t._label) + "\"";
+         for (double q : QUANTILES) {
+            metric(out, "pizzastore_query_seconds", query + ",quantile=\"" + q + "\"",
+                   t._latency.quantileMicros(q) / 1e6);
+         }//end for
+         metric(out, "pizzastore_query_seconds_sum", query, t._latency.sumMicros() / 1e6);
+         metric(out, "pizzastore_query_seconds_count", query, t._latency.count());
+      }//end for
+      counters(out, templates, "pizzastore_query_rows_total", "Rows returned or changed per SQL template.", 0);
+      counters(out, templates, "pizzastore_query_errors_total", "Failed calls per SQL template.", 1);
+      counters(out, templates, "pizzastore_query_wait_seconds_total",
+               "Time spent waiting for a pooled connection per SQL template.", 2);
+      out.append("# HELP pizzastore_query_max_seconds Slowest call per SQL template.\n");
+      out.append("# TYPE pizzastore_query_max_seconds gauge\n");
+      for (Template t : templates) {
+         metric(out, "pizzastore_query_max_seconds", "query=\"" + escape(t._label) + "\"",
+                t._latency.maxMicros() / 1e6);
+      }//end for
+      out.append("# HELP pizzastore_connection_wait_seconds Time spent waiting for a pooled connection.\n");
+      out.append("# TYPE pizzastore_connection_wait_seconds summary\n");
+      for (double q : QUANTILES) {
+         metric(out, "pizzastore_connection_wait_seconds", "quantile=\"" + q + "\"",
+                this._wait.quantileMicros(q) / 1e6);
+      }//end for
+      metric(out, "pizzastore_connection_wait_seconds_sum", null, this._wait.sumMicros() / 1e6);
+      metric(out, "pizzastore_connection_wait_seconds_count", null, this._wait.count());
+      out.append("# HELP pizzastore_slow_queries_total Calls slower than the slow query threshold.\n");
+      out.append("# TYPE pizzastore_slow_queries_total counter\n");
+      metric(out, "pizzastore_slow_queries_total", null, this._slowCalls.sum());
+      return out.toString();
+   }//end exposition
+
+   private static void counters(StringBuilder out, List<Template> templates, String name, String help, int which) {
+      out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+      out.append("# TYPE ").append(name).append(" counter\n");
+      for (Template t : templates) {
+         double value = which == 0 ? t.getRows() : which == 1 ? t.getErrors() : t.getWaitMicros() / 1e6;
+         metric(out, name, "query=\"" + escape(t._label) + "\"", value);
+      }//end for
+   }//end counters
+
+   private static void metric(StringBuilder out, String name, String labels, double value) {
+      out.append(name);
+      if (labels != null) {
+         out.append('{').append(labels).append('}');
+      }//end if
+      out.append(' ');
+      if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+         out.append((long) value);
+      }else {
+         out.append(value);
+      }//end if
+      out.append('\n');
+   }//end metric
+
+   private static String escape(String label) {
+      return label.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+   }//end escape
+
+   /**
+    * Serves the exposition at /metrics on a loopback port.
+    *
+    * @param port the local TCP port to listen on
+    * @throws java.io.IOException when the port cannot be bound
+    */
+   public synchronized void serveHttp(int port) throws IOException {
+      HttpServer http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 16);
+      http.createContext("/metrics", new HttpHandler() {
+         public void handle(HttpExchange exchange) throws IOException {
+            byte[] body = exposition().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            OutputStream out = exchange.getResponseBody();
+            try {
+               out.write(body);
+            }finally {
+               out.close();
+            }//end try
+         }
+      });
+      // one thread is enough for a scraper
+      http.setExecutor(null);
+      http.start();
+      this._http = http;
+   }//end serveHttp
+
+   /**
+    * Stops serving the exposition over HTTP.
+    */
+   public synchronized void close() {
+      if (this._http != null) {
+         this._http.stop(0);
+         this._http = null;
+      }//end if
+   }//end close
+
+}//end QueryMetrics
@@ -0,0 +1,197 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class caches the most recent orders of recently active logins. A
+ * miss reads the newest orders with the first page query of
+ * OrderHistoryPager; placing an order or changing an order status updates
+ * the cached lists in place. Entries also expire after a short time so
+ * orders written by other processes show up.
+ *
+ */
+public class RecentOrdersCache {
+
+   // number of recent orders kept and shown per login.
+   public static final int DEFAULT_DEPTH =
+      Integer.getInteger("pizzastore.recentOrders.depth", 5);
+
+   // number of logins kept.
+   public static final int DEFAULT_CAPACITY =
+      Integer.getInteger("pizzastore.recentOrders.capacity", 1024);
+
+   // how long a cached list is trusted.
+   public static final long DEFAULT_TTL_MILLIS =
+      Long.getLong("pizzastore.recentOrders.ttlMillis", 30 * 1000L);
+
+   private static class Cached {
+      final List<OrderHistoryPager.Entry> orders;
+      final long loadedAt;
+
+      Cached(List<OrderHistoryPager.Entry> orders, long loadedAt) {
+         this.orders = orders;
+         this.loadedAt = loadedAt;
+      }
+   }//end Cached
+
+   private final PizzaStore _esql;
+   private final int _depth;
+   private final int _capacity;
+   private final long _ttlMillis;
+
+   // guarded by this.
+   private final LinkedHashMap<String, Cached> _byLogin;
+   private final Map<Integer, String> _loginByOrder = new HashMap<Integer, String>();
+
+   // bumped by every change, so a load that raced with one is not cached.
+   private long _version = 0;
+
+   /**
+    * Creates a new, empty cache
+    *
+    * @param esql the data layer misses are read through
+    * @param depth the number of recent orders kept per login
+    * @param capacity the number of logins kept
+    * @param ttlMillis how long a cached list is trusted
+    */
+   public RecentOrdersCache(PizzaStore esql, int depth, int capacity, long ttlMillis) {
+      this._esql = esql;
+      this._depth = depth;
+      this._capacity = capacity;
+      this._ttlMillis = ttlMillis;
+      this._byLogin = new LinkedHashMap<String, Cached>(16, 0.75f, true) {
+         @Override
+         protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+            if (size() <= RecentOrdersCache.this._capacity) {
+               return false;
+            }//end if
+            forgetOrders(eldest.getValue());
+            return true;
+         }
+      };
+   }//end RecentOrdersCache
+
+   public int getDepth() { return this._depth; }
+
+   /**
+    * Returns the most recent orders of a login, newest first.
+    *
+    * @param login the login whose orders are listed
+    * @return at most getDepth() orders
+    * @throws java.sql.SQLException when a miss could not be read
+    */
+   public List<OrderHistoryPager.Entry> get(String login) throws SQLException {
+      login = key(login);
+      long version;
+      synchronized (this) {
+         Cached cached = this._byLogin.get(login);
+         if (cached != null && System.currentTimeMillis() - cached.loadedAt < this._ttlMillis) {
+            return cached.orders;
+         }//end if
+         version = this._version;
+      }//end synchronized
+
+      List<OrderHistoryPager.Entry> orders = Collections.unmodifiableList(
+         new OrderHistoryPager(this._esql, login, this._depth).first());
+
+      synchronized (this) {
+         if (this._version == version) {
+            put(login, orders);
+         }//end if
+      }//end synchronized
+      return orders;
+   }//end get
+
+   /**
+    * Adds a committed order at the head of its login's cached list.
+    */
+   public synchronized void orderPlaced(OrderReceipt receipt) {
+      this._version++;
+      String login = key(receipt.getLogin());
+      Cached cached = this._byLogin.get(login);
+      if (cached == null) {
+         return;
+      }//end if
+      List<OrderHistoryPager.Entry> orders = new ArrayList<OrderHistoryPager.Entry>(this._depth);
+      orders.add(new OrderHistoryPager.Entry(receipt.getOrderID(), receipt.getOrderTimestamp(),
+                                             receipt.getTotalPrice(), receipt.getOrderStatus()));
+      for (OrderHistoryPager.Entry order : cached.orders) {
+         if (orders.size() == this._depth) {
+            this._loginByOrder.remove(order.getOrderID());
+         }else {
+            orders.add(order);
+         }//end if
+      }//end for
+      this._byLogin.put(login, new Cached(Collections.unmodifiableList(orders), cached.loadedAt));
+      this._loginByOrder.put(receipt.getOrderID(), login);
+   }//end orderPlaced
+
+   /**
+    * Records the new status of an order in whichever cached list holds it.
+    */
+   public synchronized void statusChanged(int orderID, String orderStatus) {
+      this._version++;
+      String login = this._loginByOrder.get(orderID);
+      Cached cached = login == null ? null : this._byLogin.get(login);
+      if (cached == null) {
+         return;
+      }//end if
+      List<OrderHistoryPager.Entry> orders = new ArrayList<OrderHistoryPager.Entry>(cached.orders.size());
+      for (OrderHistoryPager.Entry order : cached.orders) {
+         orders.add(order.getOrderID() != orderID ? order
+                    : new OrderHistoryPager.Entry(orderID, order.getOrderTimestamp(),
+                                                  order.getTotalPrice(), orderStatus));
+      }//end for
+      this._byLogin.put(login, new Cached(Collections.unmodifiableList(orders), cached.loadedAt));
+   }//end statusChanged
+
+   /**
+    * Drops the cached list of a login.
+    */
+   public synchronized void invalidate(String login) {
+      this._version++;
+      Cached cached = this._byLogin.remove(key(login));
+      if (cached != null) {
+         forgetOrders(cached);
+      }//end if
+   }//end invalidate
+
+   // the login as cached: typed logins may carry blanks, committed ones do not.
+   private static String key(String login) {
+      return login == null ? "" : login.trim();
+   }//end key
+
+   private void put(String login, List<OrderHistoryPager.Entry> orders) {
+      Cached previous = this._byLogin.put(login, new Cached(orders, System.currentTimeMillis()));
+      if (previous != null) {
+         forgetOrders(previous);
+      }//end if
+      for (OrderHistoryPager.Entry order : orders) {
+         this._loginByOrder.put(order.getOrderID(), login);
+      }//end for
+   }//end put
+
+   private void forgetOrders(Cached cached) {
+      for (OrderHistoryPager.Entry order : cached.orders) {
+         this._loginByOrder.remove(order.getOrderID());
+      }//end for
+   }//end forgetOrders
+
+}//end RecentOrdersCache
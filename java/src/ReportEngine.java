@@ -0,0 +1,661 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class runs reports over the whole order history. The orderIDs are
+ * split into ranges; a fork/join pool scans the ranges in parallel, each
+ * on its own pooled connection, into accumulators of primitive arrays
+ * indexed by dense int keys, and merges them pairwise on the way back up.
+ * runSequential scans the same ranges one after the other on the calling
+ * thread, as the baseline the parallel run is compared against.
+ *
+ */
+public class ReportEngine {
+
+   // ranges scanned at once; each holds a pooled connection while it runs,
+   // so by default half the pool is left to the menus.
+   public static final int DEFAULT_PARALLELISM =
+      Integer.getInteger("pizzastore.reports.parallelism",
+                         Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(),
+                                              ConnectionPool.DEFAULT_MAX_SIZE / 2)));
+
+   // orderIDs per scanned range.
+   public static final int DEFAULT_PARTITION_ORDERS =
+      Integer.getInteger("pizzastore.reports.partitionOrders", 100000);
+
+   // rows fetched per round trip by a range scan.
+   public static final int FETCH_SIZE =
+      Integer.getInteger("pizzastore.reports.fetchSize", 10000);
+
+   private static final String ORDER_RANGE = "SELECT min(orderID), max(orderID) FROM FoodOrder";
+
+   /**
+    * A report over ranges of orderIDs. query() reads one range, bound to
+    * its first orderID and the one after its last; add() folds one row
+    * into the range's accumulator and finish() closes it; merge() combines
+    * the accumulators of two ranges.
+    */
+   public abstract static class Report<A> {
+
+      // reads what the accumulators are indexed by, once per run.
+      void prepare(PizzaStore esql) throws SQLException {
+      }//end prepare
+
+      abstract String query();
+      abstract A newAccumulator();
+      abstract void add(A acc, Row row) throws SQLException;
+      void finish(A acc) {
+      }//end finish
+      abstract A merge(A left, A right);
+
+      abstract String[] header();
+      abstract List<String[]> rows(A acc);
+
+   }//end Report
+
+   /**
+    * The table a report produced, and what producing it took.
+    */
+   public static class Result {
+
+      private final String[] _header;
+      private final List<String[]> _rows;
+      private final long _rowsRead;
+      private final int _partitions;
+      private final int _parallelism;
+      private final long _nanos;
+
+      Result(String[] header, List<String[]> rows, long rowsRead, int partitions, int parallelism, long nanos) {
+         this._header = header;
+         this._rows = rows;
+         this._rowsRead = rowsRead;
+         this._partitions = partitions;
+         this._parallelism = parallelism;
+         this._nanos = nanos;
+      }//end Result
+
+      public String[] getHeader() { return this._header; }
+      public List<String[]> getRows() { return this._rows; }
+      public long getRowsRead() { return this._rowsRead; }
+      public int getPartitions() { return this._partitions; }
+      public int getParallelism() { return this._parallelism; }
+      public long getNanos() { return this._nanos; }
+
+      @Override
+      public String toString() {
+         double seconds = this._nanos / 1e9;
+         return String.format("%d rows in %d ranges on %d thread(s), %.3f s (%.0f rows/s)",
+                              this._rowsRead, this._partitions, this._parallelism, seconds,
+                              seconds == 0 ? 0 : this._rowsRead / seconds);
+      }//end toString
+
+   }//end Result
+
+   private final PizzaStore _esql;
+   private final int _parallelism;
+   private final int _partitionOrders;
+   private ForkJoinPool _forkJoin = null;
+
+   /**
+    * Creates a new engine; its threads start with the first parallel run.
+    *
+    * @param esql the data layer the ranges are read through
+    * @param parallelism the ranges scanned at once
+    * @param partitionOrders the orderIDs per range
+    */
+   public ReportEngine(PizzaStore esql, int parallelism, int partitionOrders) {
+      if (parallelism < 1 || partitionOrders < 1) {
+         throw new IllegalArgumentException("parallelism and partitionOrders must be positive");
+      }//end if
+      this._esql = esql;
+      this._parallelism = parallelism;
+      this._partitionOrders = partitionOrders;
+   }//end ReportEngine
+
+   /**
+    * Returns the report of that name: revenueByState, basketSize or itemPairs.
+    *
+    * @return the report, or null when there is none of that name
+    */
+   public static Report<?> report(String name) {
+      if ("revenueByState".equals(name)) {
+         return new RevenueByState();
+      }else if ("basketSize".equals(name)) {
+         return new BasketSize();
+      }else if ("itemPairs".equals(name)) {
+         return new ItemPairs(DEFAULT_TOP_PAIRS);
+      }//end if
+      return null;
+   }//end report
+
+   /**
+    * Runs a report, scanning the ranges in parallel.
+    */
+   public <A> Result run(Report<A> report) throws SQLException {
+      return execute(report, true);
+   }//end run
+
+   /**
+    * Runs a report, scanning the ranges one after the other on the calling
+    * thread.
+    */
+   public <A> Result runSequential(Report<A> report) throws SQLException {
+      return execute(report, false);
+   }//end runSequential
+
+   /**
+    * Stops the threads of the engine.
+    */
+   public synchronized void close() {
+      if (this._forkJoin != null) {
+         this._forkJoin.shutdown();
+      }//end if
+   }//end close
+
+   private synchronized ForkJoinPool forkJoin() {
+      if (this._forkJoin == null) {
+         this._forkJoin = new ForkJoinPool(this._parallelism);
+      }//end if
+      return this._forkJoin;
+   }//end forkJoin
+
+   private <A> Result execute(Report<A> report, boolean parallel) throws SQLException {
+      long start = System.nanoTime();
+      report.prepare(this._esql);
+      List<List<String>> bounds = this._esql.executeQueryAndReturnResult(ORDER_RANGE);
+      String min = bounds.get(0).get(0);
+      A acc;
+      AtomicLong rowsRead = new AtomicLong();
+      AtomicInteger partitions = new AtomicInteger();
+      if (min == null) {
+         acc = report.newAccumulator();
+         report.finish(acc);
+      }else {
+         // ranges are half open, the last one ends after the largest orderID
+         long lo = Long.parseLong(min.trim());
+         long hi = Long.parseLong(bounds.get(0).get(1).trim()) + 1;
+         Scan<A> scan = new Scan<A>(this, report, lo, hi, rowsRead, partitions);
+         if (parallel) {
+            try {
+               acc = forkJoin().invoke(scan);
+            }catch (Row.UncheckedSQLException e) {
+               throw e.getCause();
+            }catch (RuntimeException e) {
+               // the pool rethrows a copy of a task's exception, without its message
+               Throwable cause = e;
+               while (cause.getCause() != null) {
+                  cause = cause.getCause();
+               }//end while
+               SQLException failed = new SQLException("Report failed: " + cause);
+               failed.initCause(e);
+               throw failed;
+            }//end try
+         }else {
+            acc = report.newAccumulator();
+            for (long from = lo; from < hi; from += this._partitionOrders) {
+               acc = report.merge(acc, scanRange(report, from, Math.min(hi, from + this._partitionOrders),
+                                                  rowsRead, partitions));
+            }//end for
+         }//end if
+      }//end if
+      return new Result(report.header(), report.rows(acc), rowsRead.get(), partitions.get(),
+                        parallel ? this._parallelism : 1, System.nanoTime() - start);
+   }//end execute
+
+   private <A> A scanRange(final Report<A> report, long from, long to, AtomicLong rowsRead,
+                           AtomicInteger partitions) throws SQLException {
+      final A acc = report.newAccumulator();
+      long rows = this._esql.executeQueryAndStream(report.query(), FETCH_SIZE, new Row.Handler() {
+         public void handle(Row row) throws SQLException {
+            report.add(acc, row);
+         }
+      }, (int) from, (int) Math.min(to, Integer.MAX_VALUE));
+      report.finish(acc);
+      rowsRead.addAndGet(rows);
+      partitions.incrementAndGet();
+      return acc;
+   }//end scanRange
+
+   /*
+    * Splits a range in halves until it is one partition, scans that, and
+    * merges the two halves' accumulators.
+    **/
+   private static class Scan<A> extends RecursiveTask<A> {
+      private static final long serialVersionUID = 1L;
+
+      private final ReportEngine _engine;
+      private final Report<A> _report;
+      private final long _lo;
+      private final long _hi;
+      private final AtomicLong _rowsRead;
+      private final AtomicInteger _partitions;
+
+      Scan(ReportEngine engine, Report<A> report, long lo, long hi, AtomicLong rowsRead, AtomicInteger partitions) {
+         this._engine = engine;
+         this._report = report;
+         this._lo = lo;
+         this._hi = hi;
+         this._rowsRead = rowsRead;
+         this._partitions = partitions;
+      }//end Scan
+
+      @Override
+      protected A compute() {
+         long size = this._hi - this._lo;
+         if (size <= this._engine._partitionOrders) {
+            try {
+               return this._engine.scanRange(this._report, this._lo, this._hi, this._rowsRead, this._partitions);
+            }catch (SQLException e) {
+               throw new Row.UncheckedSQLException(e);
+            }//end try
+         }//end if
+         // split on a partition boundary, so both runs scan the same ranges
+         long partitions = (size + this._engine._partitionOrders - 1) / this._engine._partitionOrders;
+         long mid = this._lo + partitions / 2 * this._engine._partitionOrders;
+         Scan<A> left = new Scan<A>(this._engine, this._report, this._lo, mid, this._rowsRead, this._partitions);
+         Scan<A> right = new Scan<A>(this._engine, this._report, mid, this._hi, this._rowsRead, this._partitions);
+         left.fork();
+         A rightAcc = right.compute();
+         return this._report.merge(left.join(), rightAcc);
+      }//end compute
+   }//end Scan
+
+   /**
+    * Orders and revenue per state. The state of each store is read once,
+    * so the scan reads FoodOrder alone and adds each order to the arrays at
+    * the index of its store's state.
+    */
+   static class RevenueByState extends Report<RevenueByState.Totals> {
+
+      static class Totals {
+         final long[] cents;
+         final long[] orders;
+
+         Totals(int states) {
+            this.cents = new long[states];
+            this.orders = new long[states];
+         }
+      }//end Totals
+
+      private int[] _stateOfStore;
+      private String[] _states;
+
+      void prepare(PizzaStore esql) throws SQLException {
+         List<List<String>> rows = esql.executeQueryAndReturnResult("SELECT storeID, state FROM Store");
+         Map<String, Integer> index = new HashMap<String, Integer>();
+         List<String> states = new ArrayList<String>();
+         int maxStore = 0;
+         for (List<String> row : rows) {
+            maxStore = Math.max(maxStore, Integer.parseInt(row.get(0).trim()));
+         }//end for
+         int[] stateOfStore = new int[maxStore + 1];
+         // orders of a store that is gone count under the last index
+         Arrays.fill(stateOfStore, -1);
+         for (List<String> row : rows) {
+            String state = row.get(1).trim();
+            Integer i = index.get(state);
+            if (i == null) {
+               i = states.size();
+               index.put(state, i);
+               states.add(state);
+            }//end if
+            stateOfStore[Integer.parseInt(row.get(0).trim())] = i;
+         }//end for
+         states.add("(unknown store)");
+         for (int s = 0; s < stateOfStore.length; ++s) {
+            if (stateOfStore[s] < 0) {
+               stateOfStore[s] = states.size() - 1;
+            }//end if
+         }//end for
+         this._stateOfStore = stateOfStore;
+         this._states = states.toArray(new String[states.size()]);
+      }//end prepare
+
+      String query() {
+         return "SELECT storeID, totalPrice FROM FoodOrder WHERE orderID >= ? AND orderID < ?";
+      }//end query
+
+      Totals newAccumulator() {
+         return new Totals(this._states.length);
+      }//end newAccumulator
+
+      void add(Totals acc, Row row) throws SQLException {
+         int storeID = row.getInt(1);
+         int state = storeID >= 0 && storeID < this._stateOfStore.length
+            ? this._stateOfStore[storeID] : this._states.length - 1;
+         acc.cents[state] += Math.round(row.getDouble(2) * 100);
+         acc.orders[state]++;
+      }//end add
+
+      Totals merge(Totals left, Totals right) {
+         for (int i = 0; i < left.cents.length; ++i) {
+            left.cents[i] += right.cents[i];
+            left.orders[i] += right.orders[i];
+         }//end for
+         return left;
+      }//end merge
+
+      String[] header() {
+         return new String[] { "state", "orders", "revenue", "average" };
+      }//end header
+
+      List<String[]> rows(final Totals acc) {
+         Integer[] byRevenue = new Integer[this._states.length];
+         for (int i = 0; i < byRevenue.length; ++i) {
+            byRevenue[i] = i;
+         }//end for
+         Arrays.sort(byRevenue, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) { return Long.compare(acc.cents[b], acc.cents[a]); }
+         });
+         List<String[]> rows = new ArrayList<String[]>();
+         for (int i : byRevenue) {
+            if (acc.orders[i] > 0) {
+               rows.add(new String[] { this._states[i], Long.toString(acc.orders[i]), money(acc.cents[i]),
+                                       money(acc.cents[i] / acc.orders[i]) });
+            }//end if
+         }//end for
+         return rows;
+      }//end rows
+
+   }//end RevenueByState
+
+   // units above which baskets are counted together.
+   static final int MAX_BASKET = 20;
+
+   /**
+    * Items per order: the average number of lines and units, and how many
+    * orders have each number of units. The rows come in orderID order, so
+    * an order is complete when the next one starts.
+    */
+   static class BasketSize extends Report<BasketSize.Baskets> {
+
+      static class Baskets {
+         long orders;
+         long lines;
+         long units;
+         final long[] byUnits = new long[MAX_BASKET + 1];
+         // the order being read.
+         int orderID = -1;
+         int orderUnits;
+      }//end Baskets
+
+      String query() {
+         return "SELECT orderID, quantity FROM ItemsInOrder WHERE orderID >= ? AND orderID < ? ORDER BY orderID";
+      }//end query
+
+      Baskets newAccumulator() {
+         return new Baskets();
+      }//end newAccumulator
+
+      void add(Baskets acc, Row row) throws SQLException {
+         int orderID = row.getInt(1);
+         int quantity = row.getInt(2);
+         if (orderID != acc.orderID) {
+            finish(acc);
+            acc.orderID = orderID;
+         }//end if
+         acc.lines++;
+         acc.units += quantity;
+         acc.orderUnits += quantity;
+      }//end add
+
+      void finish(Baskets acc) {
+         if (acc.orderID >= 0) {
+            acc.orders++;
+            // orders without a positive quantity count as empty baskets
+            acc.byUnits[Math.max(0, Math.min(acc.orderUnits, MAX_BASKET))]++;
+         }//end if
+         acc.orderID = -1;
+         acc.orderUnits = 0;
+      }//end finish
+
+      Baskets merge(Baskets left, Baskets right) {
+         left.orders += right.orders;
+         left.lines += right.lines;
+         left.units += right.units;
+         for (int i = 0; i < left.byUnits.length; ++i) {
+            left.byUnits[i] += right.byUnits[i];
+         }//end for
+         return left;
+      }//end merge
+
+      String[] header() {
+         return new String[] { "units", "orders", "share" };
+      }//end header
+
+      List<String[]> rows(Baskets acc) {
+         List<String[]> rows = new ArrayList<String[]>();
+         rows.add(new String[] { "average", String.format("%.2f lines", ratio(acc.lines, acc.orders)),
+                                 String.format("%.2f units", ratio(acc.units, acc.orders)) });
+         for (int units = 1; units <= MAX_BASKET; ++units) {
+            if (acc.byUnits[units] > 0) {
+               rows.add(new String[] { units == MAX_BASKET ? MAX_BASKET + "+" : Integer.toString(units),
+                                       Long.toString(acc.byUnits[units]),
+                                       String.format("%.1f%%", 100 * ratio(acc.byUnits[units], acc.orders)) });
+            }//end if
+         }//end for
+         return rows;
+      }//end rows
+
+   }//end BasketSize
+
+   // pairs shown by the item pairs report.
+   static final int DEFAULT_TOP_PAIRS = 10;
+
+   /**
+    * The items most often bought together. Every item has a dense index,
+    * and each pair of items in an order adds one to a triangular matrix of
+    * counters; support is the share of orders holding the pair, and lift
+    * how much more often than by chance they are bought together.
+    */
+   static class ItemPairs extends Report<ItemPairs.Pairs> {
+
+      static class Pairs {
+         long orders;
+         final long[] single;
+         final long[] pairs;
+         // the distinct items of the order being read.
+         int orderID = -1;
+         int[] items = new int[8];
+         int count;
+
+         Pairs(int n) {
+            this.single = new long[n];
+            this.pairs = new long[n * (n - 1) / 2];
+         }
+      }//end Pairs
+
+      private final int _top;
+      // dense index per itemID, -1 for none.
+      private int[] _indexOfItem;
+      private String[] _names;
+
+      ItemPairs(int top) {
+         this._top = top;
+      }//end ItemPairs
+
+      void prepare(PizzaStore esql) throws SQLException {
+         List<List<String>> rows = esql.executeQueryAndReturnResult("SELECT itemID, itemName FROM Items ORDER BY itemName");
+         int maxItem = 0;
+         for (List<String> row : rows) {
+            maxItem = Math.max(maxItem, Integer.parseInt(row.get(0).trim()));
+         }//end for
+         int[] indexOfItem = new int[maxItem + 1];
+         Arrays.fill(indexOfItem, -1);
+         this._names = new String[rows.size()];
+         for (int i = 0; i < rows.size(); ++i) {
+            indexOfItem[Integer.parseInt(rows.get(i).get(0).trim())] = i;
+            this._names[i] = rows.get(i).get(1);
+         }//end for
+         this._indexOfItem = indexOfItem;
+      }//end prepare
+
+      String query() {
+         return "SELECT orderID, itemID FROM ItemsInOrder WHERE orderID >= ? AND orderID < ? ORDER BY orderID";
+      }//end query
+
+      Pairs newAccumulator() {
+         return new Pairs(this._names.length);
+      }//end newAccumulator
+
+      void add(Pairs acc, Row row) throws SQLException {
+         int orderID = row.getInt(1);
+         if (orderID != acc.orderID) {
+            finish(acc);
+            acc.orderID = orderID;
+         }//end if
+         int itemID = row.getInt(2);
+         int item = itemID < this._indexOfItem.length ? this._indexOfItem[itemID] : -1;
+         if (item < 0) {
+            // added to the menu after the report started
+            return;
+         }//end if
+         if (acc.count == acc.items.length) {
+            acc.items = Arrays.copyOf(acc.items, acc.count * 2);
+         }//end if
+         acc.items[acc.count++] = item;
+      }//end add
+
+      void finish(Pairs acc) {
+         if (acc.orderID >= 0) {
+            acc.orders++;
+            for (int i = 0; i < acc.count; ++i) {
+               int a = acc.items[i];
+               acc.single[a]++;
+               for (int j = i + 1; j < acc.count; ++j) {
+                  int b = acc.items[j];
+                  acc.pairs[pair(Math.min(a, b), Math.max(a, b))]++;
+               }//end for
+            }//end for
+         }//end if
+         acc.orderID = -1;
+         acc.count = 0;
+      }//end finish
+
+      Pairs merge(Pairs left, Pairs right) {
+         left.orders += right.orders;
+         for (int i = 0; i < left.single.length; ++i) {
+            left.single[i] += right.single[i];
+         }//end for
+         for (int i = 0; i < left.pairs.length; ++i) {
+            left.pairs[i] += right.pairs[i];
+         }//end for
+         return left;
+      }//end merge
+
+      // the counter of items a < b: row b of the triangle holds b counters.
+      private static int pair(int a, int b) {
+         return b * (b - 1) / 2 + a;
+      }//end pair
+
+      String[] header() {
+         return new String[] { "item", "item", "orders", "support", "lift" };
+      }//end header
+
+      List<String[]> rows(final Pairs acc) {
+         int n = acc.single.length;
+         // the pairs bought at least once, as {a, b, cell}
+         List<int[]> cells = new ArrayList<int[]>();
+         for (int b = 1; b < n; ++b) {
+            for (int a = 0; a < b; ++a) {
+               if (acc.pairs[pair(a, b)] > 0) {
+                  cells.add(new int[] { a, b, pair(a, b) });
+               }//end if
+            }//end for
+         }//end for
+         Collections.sort(cells, new Comparator<int[]>() {
+            public int compare(int[] x, int[] y) { return Long.compare(acc.pairs[y[2]], acc.pairs[x[2]]); }
+         });
+         List<String[]> rows = new ArrayList<String[]>();
+         for (int[] pair : cells.subList(0, Math.min(this._top, cells.size()))) {
+            int a = pair[0], b = pair[1], cell = pair[2];
+            double support = ratio(acc.pairs[cell], acc.orders);
+            double lift = support / (ratio(acc.single[a], acc.orders) * ratio(acc.single[b], acc.orders));
+            rows.add(new String[] { this._names[a], this._names[b], Long.toString(acc.pairs[cell]),
+                                    String.format("%.2f%%", 100 * support), String.format("%.2f", lift) });
+         }//end for
+         return rows;
+      }//end rows
+
+   }//end ItemPairs
+
+   private static double ratio(long part, long whole) {
+      return whole == 0 ? 0 : part / (double) whole;
+   }//end ratio
+
+   private static String money(long cents) {
+      return String.format("%s%d.%02d", cents < 0 ? "-" : "", Math.abs(cents) / 100, Math.abs(cents) % 100);
+   }//end money
+
+   /**
+    * Runs a report both in parallel and on one thread, and prints the two
+    * times.
+    *
+    * @param args the command line arguments: dbname, port, user and report
+    */
+   public static void main(String[] args) {
+      Report<?> report = args.length == 4 ? report(args[3]) : null;
+      if (report == null) {
+         System.err.println(
+            "Usage: " +
+            "java [-classpath <classpath>] [-Dpizzastore.reports.parallelism=N] " +
+            ReportEngine.class.getName() +
+            " <dbname> <port> <user> <revenueByState|basketSize|itemPairs>");
+         return;
+      }//end if
+
+      ConnectionPool pool = null;
+      ReportEngine engine = null;
+      try {
+         pool = new ConnectionPool(PizzaStore.connectionURL(args[0], args[1]), args[2], "", 1,
+                                   Math.max(DEFAULT_PARALLELISM, 1));
+         // a range scan of a large history may take longer than a menu call
+         pool.setLeakThresholdMillis(Long.MAX_VALUE / 2);
+         engine = new ReportEngine(new PizzaStore(pool), DEFAULT_PARALLELISM, DEFAULT_PARTITION_ORDERS);
+         Result sequential = engine.runSequential(report);
+         Result parallel = engine.run(report);
+         TablePrinter printer = new TablePrinter(System.out, TablePrinter.DEFAULT_FORMAT, TablePrinter.DEFAULT_PAGE_SIZE);
+         printer.setHeader(parallel.getHeader());
+         for (String[] row : parallel.getRows()) {
+            printer.add(row);
+         }//end for
+         printer.finish();
+         System.out.println("sequential: " + sequential);
+         System.out.println("parallel:   " + parallel);
+         System.out.println(String.format("speedup %.2fx", sequential.getNanos() / (double) parallel.getNanos()));
+      }catch (Exception e) {
+         System.err.println(e.getMessage());
+      }finally {
+         if (engine != null) {
+            engine.close();
+         }//end if
+         if (pool != null) {
+            pool.close();
+         }//end if
+      }//end try
+   }//end main
+
+}//end ReportEngine
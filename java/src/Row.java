@@ -0,0 +1,85 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+/**
+ * This class gives typed access to the current row of a streamed query.
+ * One Row object is reused for every row of a result, so it is only valid
+ * until the cursor moves on; copy out the values that must be kept.
+ *
+ */
+public class Row {
+
+   /**
+    * Callback invoked once per row by PizzaStore.executeQueryAndStream.
+    */
+   public interface Handler {
+      void handle (Row row) throws SQLException;
+   }//end Handler
+
+   /**
+    * Carries a SQLException out of a java.util.stream pipeline.
+    */
+   public static class UncheckedSQLException extends RuntimeException {
+      private static final long serialVersionUID = 1L;
+
+      public UncheckedSQLException(SQLException cause) { super(cause.getMessage(), cause); }
+
+      @Override
+      public SQLException getCause() { return (SQLException) super.getCause(); }
+   }//end UncheckedSQLException
+
+   private final ResultSet _rs;
+   private ResultSetMetaData _rsmd = null;
+
+   Row(ResultSet rs) {
+      this._rs = rs;
+   }//end Row
+
+   public int getInt(int column) throws SQLException { return this._rs.getInt(column); }
+   public int getInt(String column) throws SQLException { return this._rs.getInt(column); }
+
+   public long getLong(int column) throws SQLException { return this._rs.getLong(column); }
+   public long getLong(String column) throws SQLException { return this._rs.getLong(column); }
+
+   public double getDouble(int column) throws SQLException { return this._rs.getDouble(column); }
+   public double getDouble(String column) throws SQLException { return this._rs.getDouble(column); }
+
+   public BigDecimal getBigDecimal(int column) throws SQLException { return this._rs.getBigDecimal(column); }
+   public BigDecimal getBigDecimal(String column) throws SQLException { return this._rs.getBigDecimal(column); }
+
+   public Timestamp getTimestamp(int column) throws SQLException { return this._rs.getTimestamp(column); }
+   public Timestamp getTimestamp(String column) throws SQLException { return this._rs.getTimestamp(column); }
+
+   public String getString(int column) throws SQLException { return this._rs.getString(column); }
+   public String getString(String column) throws SQLException { return this._rs.getString(column); }
+
+   // true when the last column read was SQL NULL (getInt and friends return 0).
+   public boolean wasNull() throws SQLException { return this._rs.wasNull(); }
+
+   public int getColumnCount() throws SQLException { return metaData().getColumnCount(); }
+   public String getColumnName(int column) throws SQLException { return metaData().getColumnName(column); }
+
+   private ResultSetMetaData metaData() throws SQLException {
+      if (this._rsmd == null) {
+         this._rsmd = this._rs.getMetaData();
+      }//end if
+      return this._rsmd;
+   }//end metaData
+
+}//end Row
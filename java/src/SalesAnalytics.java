@@ -0,0 +1,188 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+/**
+ * This class keeps the sales rollups of create_tables.sql: orders and
+ * revenue per store per hour and per day, units sold per itemID, and orders
+ * and spending per customer. commitOrder adds every order to them in its
+ * own transaction, so the reports read a few rows of a rollup instead of
+ * scanning FoodOrder and ItemsInOrder. Orders loaded in bulk (BulkLoader,
+ * DataGenerator) bypass commitOrder; main rebuilds the rollups from the
+ * whole history afterwards.
+ *
+ */
+public class SalesAnalytics {
+
+   // rows shown by the top lists.
+   public static final int DEFAULT_TOP =
+      Integer.getInteger("pizzastore.sales.top", 10);
+
+   /*
+    * Adds one order to every rollup; its items are read from the
+    * ItemsInOrder rows the transaction inserted. The upserts are separate
+    * statements run one after the other, so the rows are always locked in
+    * the same order, hourly, daily, items by itemID and then customer, and
+    * concurrent orders cannot deadlock. The driver sends the four together,
+    * in one round trip.
+    **/
+   private static final String RECORD_ORDER =
+      "INSERT INTO StoreHourlySales AS S (storeID, hour, orders, revenue) " +
+      "VALUES (?, date_trunc('hour', ?::timestamp), 1, ?) " +
+      "ON CONFLICT (storeID, hour) DO UPDATE " +
+      "SET orders = S.orders + 1, revenue = S.revenue + EXCLUDED.revenue; " +
+      "INSERT INTO StoreDailySales AS S (storeID, day, orders, revenue) " +
+      "VALUES (?, ?::timestamp::date, 1, ?) " +
+      "ON CONFLICT (storeID, day) DO UPDATE " +
+      "SET orders = S.orders + 1, revenue = S.revenue + EXCLUDED.revenue; " +
+      "INSERT INTO ItemSales AS I (itemID, units, revenue, orders) " +
+      "SELECT O.itemID, O.quantity, O.quantity * M.price, 1 " +
+      "FROM ItemsInOrder O JOIN Items M ON M.itemID = O.itemID " +
+      "WHERE O.orderID = ? ORDER BY O.itemID " +
+      "ON CONFLICT (itemID) DO UPDATE " +
+      "SET units = I.units + EXCLUDED.units, revenue = I.revenue + EXCLUDED.revenue, orders = I.orders + 1; " +
+      "INSERT INTO CustomerSales AS C (login, orders, spent, lastOrder) " +
+      "VALUES (?, 1, ?, ?) " +
+      "ON CONFLICT (login) DO UPDATE " +
+      "SET orders = C.orders + 1, spent = C.spent + EXCLUDED.spent, " +
+      "    lastOrder = greatest(C.lastOrder, EXCLUDED.lastOrder)";
+
+   // the rebuild holds off new orders, so no order is counted twice or missed.
+   private static final String[] BACKFILL = {
+      "LOCK TABLE FoodOrder, ItemsInOrder IN SHARE MODE",
+      "TRUNCATE StoreHourlySales, StoreDailySales, ItemSales, CustomerSales",
+      "INSERT INTO StoreHourlySales (storeID, hour, orders, revenue) " +
+      "SELECT storeID, date_trunc('hour', orderTimestamp), count(*), sum(totalPrice) " +
+      "FROM FoodOrder GROUP BY 1, 2",
+      "INSERT INTO StoreDailySales (storeID, day, orders, revenue) " +
+      "SELECT storeID, hour::date, sum(orders), sum(revenue) " +
+      "FROM StoreHourlySales GROUP BY 1, 2",
+      // the history keeps no prices, so items are valued at today's price
+      "INSERT INTO ItemSales (itemID, units, revenue, orders) " +
+      "SELECT O.itemID, sum(O.quantity), sum(O.quantity * I.price), count(*) " +
+      "FROM ItemsInOrder O JOIN Items I ON I.itemID = O.itemID GROUP BY O.itemID",
+      "INSERT INTO CustomerSales (login, orders, spent, lastOrder) " +
+      "SELECT login, count(*), sum(totalPrice), max(orderTimestamp) " +
+      "FROM FoodOrder GROUP BY login"
+   };
+
+   // the most recent days of a store with sales, newest first.
+   public static final String STORE_DAYS =
+      "SELECT day, orders, revenue FROM StoreDailySales " +
+      "WHERE storeID = ? ORDER BY day DESC LIMIT ?";
+
+   // the hours of one day of a store; its last day with sales when the day is null.
+   public static final String STORE_HOURS =
+      "SELECT hour, orders, revenue FROM StoreHourlySales " +
+      "WHERE storeID = ? " +
+      "AND hour >= coalesce(?::date, (SELECT max(day) FROM StoreDailySales WHERE storeID = ?)) " +
+      "AND hour < coalesce(?::date, (SELECT max(day) FROM StoreDailySales WHERE storeID = ?)) + 1 " +
+      "ORDER BY hour";
+
+   // the stores with the most revenue in the last days with sales.
+   public static final String TOP_STORES =
+      "SELECT storeID, sum(orders) AS orders, sum(revenue) AS revenue FROM StoreDailySales " +
+      "WHERE day > (SELECT max(day) FROM StoreDailySales) - ?::integer " +
+      "GROUP BY storeID ORDER BY revenue DESC, storeID LIMIT ?";
+
+   // items are counted by itemID, so a renamed item keeps its sales.
+   public static final String TOP_ITEMS =
+      "SELECT I.itemName, S.units, S.orders, S.revenue FROM ItemSales S JOIN Items I ON I.itemID = S.itemID " +
+      "ORDER BY S.units DESC, I.itemName LIMIT ?";
+
+   public static final String TOP_CUSTOMERS =
+      "SELECT login, orders, spent, lastOrder FROM CustomerSales " +
+      "ORDER BY spent DESC, login LIMIT ?";
+
+   private SalesAnalytics() {
+   }//end SalesAnalytics
+
+   /**
+    * Adds an order to the rollups, on the connection of the transaction
+    * that inserted it and its items.
+    *
+    * @param conn the connection of the order's transaction
+    * @param orderID the order
+    * @param login the customer
+    * @param storeID the store
+    * @param orderTimestamp the time the order was placed
+    * @param total the total price of the order
+    * @throws java.sql.SQLException when the rollups could not be updated
+    */
+   static void recordOrder(ConnectionPool.PooledConnection conn, int orderID, String login, int storeID,
+                           Timestamp orderTimestamp, BigDecimal total) throws SQLException {
+      PizzaStore.prepare(conn, RECORD_ORDER, storeID, orderTimestamp, total, storeID, orderTimestamp, total,
+                         orderID, login, total, orderTimestamp).execute();
+   }//end recordOrder
+
+   /**
+    * Rebuilds every rollup from the order history in one transaction.
+    *
+    * @return the rows written per rollup: hourly, daily, items, customers
+    * @throws java.sql.SQLException when the rollups could not be rebuilt
+    */
+   public static int[] backfill(PizzaStore esql) throws SQLException {
+      return esql.executeTransaction("transaction: rebuild sales rollups", new PizzaStore.Transaction<int[]>() {
+         public int[] run(ConnectionPool.PooledConnection conn) throws SQLException {
+            int[] rows = new int[BACKFILL.length - 2];
+            for (int i = 0; i < BACKFILL.length; ++i) {
+               int count = PizzaStore.prepare(conn, BACKFILL[i]).executeUpdate();
+               if (i >= 2) {
+                  rows[i - 2] = count;
+               }//end if
+            }//end for
+            return rows;
+         }
+      });
+   }//end backfill
+
+   /**
+    * Rebuilds the rollups of a database, after a bulk load or to fill them
+    * for the first time.
+    *
+    * @param args the command line arguments: dbname, port and user
+    */
+   public static void main(String[] args) {
+      if (args.length != 3) {
+         System.err.println(
+            "Usage: " +
+            "java [-classpath <classpath>] " +
+            SalesAnalytics.class.getName() +
+            " <dbname> <port> <user>");
+         return;
+      }//end if
+
+      ConnectionPool pool = null;
+      try {
+         pool = new ConnectionPool(PizzaStore.connectionURL(args[0], args[1]), args[2], "", 1, 1);
+         // the rebuild may take longer than a menu call
+         pool.setLeakThresholdMillis(Long.MAX_VALUE / 2);
+         PizzaStore esql = new PizzaStore(pool);
+         long start = System.nanoTime();
+         int[] rows = backfill(esql);
+         System.out.println(String.format(
+            "Rebuilt the rollups in %.2f s: %d store hours, %d store days, %d items, %d customers",
+            (System.nanoTime() - start) / 1e9, rows[0], rows[1], rows[2], rows[3]));
+      }catch (Exception e) {
+         System.err.println(e.getMessage());
+      }finally {
+         if (pool != null) {
+            pool.close();
+         }//end if
+      }//end try
+   }//end main
+
+}//end SalesAnalytics
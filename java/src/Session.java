@@ -0,0 +1,197 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class holds the state of one operator terminal: the logged in user,
+ * their profile, and the reader/writer the menus talk to. The session of the
+ * running thread is found through current(), so the menu handlers can keep
+ * reading PizzaStore.in and writing System.out whether they serve the local
+ * console or a remote terminal.
+ *
+ */
+public class Session {
+
+   // thrown out of the menus when the terminal closes its input; every
+   // later read throws it again, so a handler that catches it still unwinds.
+   public static class Disconnected extends RuntimeException {
+      private static final long serialVersionUID = 1L;
+
+      public Disconnected() { super("Terminal disconnected"); }
+   }//end Disconnected
+
+   // the real standard streams, captured before they are redirected.
+   private static final PrintStream STDOUT = System.out;
+   private static final PrintStream STDERR = System.err;
+
+   // session used by threads that have not bound one, i.e. the local console.
+   private static final Session CONSOLE = new Session(
+      new BufferedReader(new InputStreamReader(System.in)), STDOUT, STDERR);
+
+   private static final ThreadLocal<Session> CURRENT = new ThreadLocal<Session>();
+
+   // sessions with a logged in user, so a change to a user reaches every terminal.
+   private static final Set<Session> LOGGED_IN = ConcurrentHashMap.newKeySet();
+
+   private final BufferedReader _reader;
+   private final PrintStream _out;
+   private final PrintStream _err;
+
+   private volatile boolean _disconnected = false;
+
+   private volatile String _login = null;
+   // null when nobody is logged in, or when the profile was invalidated.
+   private volatile UserProfile _profile = null;
+
+   /**
+    * Creates a new session
+    *
+    * @param reader where the operator input is read from
+    * @param out where menus and results are written to
+    * @param err where error messages are written to
+    */
+   public Session(BufferedReader reader, PrintStream out, PrintStream err) {
+      this._reader = reader;
+      this._out = out;
+      this._err = err;
+   }//end Session
+
+   /**
+    * Returns the session bound to the running thread, or the console session
+    * when none is bound.
+    */
+   public static Session current() {
+      Session session = CURRENT.get();
+      return session != null ? session : CONSOLE;
+   }//end current
+
+   /**
+    * Returns the session of the process's own terminal, which keeps
+    * System.in, System.out and System.err.
+    */
+   public static Session console() {
+      return CONSOLE;
+   }//end console
+
+   public static void bind(Session session) { CURRENT.set(session); }
+   public static void unbind() { CURRENT.remove(); }
+
+   /**
+    * Redirects System.out and System.err so that every thread writes to the
+    * streams of its own session.
+    */
+   public static synchronized void redirectStandardStreams() {
+      if (System.out instanceof SessionStream) {
+         return;
+      }//end if
+      System.setOut(new SessionStream(false));
+      System.setErr(new SessionStream(true));
+   }//end redirectStandardStreams
+
+   /**
+    * Returns a reader that reads from the session of whichever thread calls
+    * it, suitable for a shared static field.
+    */
+   public static BufferedReader reader() {
+      return new SessionReader();
+   }//end reader
+
+   public String getLogin() { return this._login; }
+   public UserProfile getProfile() { return this._profile; }
+   public PrintStream out() { return this._out; }
+   public PrintStream err() { return this._err; }
+
+   /**
+    * Logs a user in, or replaces the profile of the logged in user after it
+    * was read again.
+    */
+   public void login(UserProfile profile) {
+      this._login = profile.getLogin();
+      this._profile = profile;
+      LOGGED_IN.add(this);
+   }//end login
+
+   public void logout() {
+      LOGGED_IN.remove(this);
+      this._login = null;
+      this._profile = null;
+   }//end logout
+
+   /**
+    * Drops the cached profile of every session logged in as login, so the
+    * next permission check reads the Users row again. Call it after
+    * changing the row.
+    */
+   public static void invalidate(String login) {
+      for (Session session : LOGGED_IN) {
+         if (login.equals(session._login)) {
+            session._profile = null;
+         }//end if
+      }//end for
+   }//end invalidate
+
+   /*
+    * Reads one line of operator input, flushing any pending prompt first.
+    **/
+   private String readLine() throws IOException {
+      this._out.flush();
+      String line = this._disconnected ? null : this._reader.readLine();
+      if (line == null) {
+         this._disconnected = true;
+         throw new Disconnected();
+      }//end if
+      return line;
+   }//end readLine
+
+   /*
+    * BufferedReader that forwards readLine to the current session. Only
+    * readLine is used by the menus.
+    **/
+   private static class SessionReader extends BufferedReader {
+      SessionReader() { super(new StringReader(""), 1); }
+
+      @Override
+      public String readLine() throws IOException {
+         return current().readLine();
+      }//end readLine
+   }//end SessionReader
+
+   /*
+    * PrintStream that forwards every byte to the stream of the current session.
+    * It does not flush on newlines; a session flushes before it waits for input.
+    **/
+   private static class SessionStream extends PrintStream {
+      SessionStream(final boolean err) {
+         super(new OutputStream() {
+            private PrintStream target() {
+               return err ? current()._err : current()._out;
+            }
+            @Override
+            public void write(int b) { target().write(b); }
+            @Override
+            public void write(byte[] b, int off, int len) { target().write(b, off, len); }
+            @Override
+            public void flush() { target().flush(); }
+         }, false);
+      }//end SessionStream
+   }//end SessionStream
+
+}//end Session
@@ -0,0 +1,124 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class keeps a bounded, least-recently-used set of prepared statements
+ * for a single database connection, keyed by their SQL template. Reusing a
+ * statement lets the DBMS skip parsing and planning the same query again.
+ *
+ */
+public class StatementCache {
+
+   // default number of statements kept per connection.
+   public static final int DEFAULT_CAPACITY =
+      Integer.getInteger("pizzastore.statementCacheSize", 64);
+
+   // connection that owns every cached statement.
+   private final Connection _connection;
+
+   // maximum number of statements kept open at once.
+   private final int _capacity;
+
+   // statements in access order, the eldest is evicted first.
+   private final LinkedHashMap<String, PreparedStatement> _statements;
+
+   private long _hits = 0;
+   private long _misses = 0;
+   private long _evictions = 0;
+
+   /**
+    * Creates a new statement cache for the given connection
+    *
+    * @param connection the connection the statements are prepared on
+    * @param capacity the maximum number of statements kept open
+    */
+   public StatementCache(Connection connection, int capacity) {
+      if (capacity < 1) {
+         throw new IllegalArgumentException("capacity must be positive: " + capacity);
+      }//end if
+      this._connection = connection;
+      this._capacity = capacity;
+      this._statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+         @Override
+         protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+            if (size() <= StatementCache.this._capacity) {
+               return false;
+            }//end if
+            StatementCache.this._evictions++;
+            closeQuietly(eldest.getValue());
+            return true;
+         }
+      };
+   }//end StatementCache
+
+   /**
+    * Returns a prepared statement for the SQL template, preparing it on a
+    * miss. Parameters left over from a previous use are cleared.
+    *
+    * @param sql the SQL template, with '?' placeholders
+    * @return the prepared statement, owned by the cache
+    * @throws java.sql.SQLException when the statement could not be prepared
+    */
+   public synchronized PreparedStatement prepare(String sql) throws SQLException {
+      PreparedStatement stmt = this._statements.get(sql);
+      if (stmt != null) {
+         this._hits++;
+         stmt.clearParameters();
+         return stmt;
+      }//end if
+      this._misses++;
+      stmt = this._connection.prepareStatement(sql);
+      this._statements.put(sql, stmt);
+      return stmt;
+   }//end prepare
+
+   /**
+    * Closes every cached statement. The connection itself is left open.
+    */
+   public synchronized void close() {
+      Iterator<PreparedStatement> it = this._statements.values().iterator();
+      while (it.hasNext()) {
+         closeQuietly(it.next());
+         it.remove();
+      }//end while
+   }//end close
+
+   public synchronized int size() { return this._statements.size(); }
+   public int capacity() { return this._capacity; }
+   public synchronized long hits() { return this._hits; }
+   public synchronized long misses() { return this._misses; }
+   public synchronized long evictions() { return this._evictions; }
+
+   @Override
+   public synchronized String toString() {
+      return String.format("statements=%d/%d hits=%d misses=%d evictions=%d",
+                           this._statements.size(), this._capacity,
+                           this._hits, this._misses, this._evictions);
+   }//end toString
+
+   private static void closeQuietly(PreparedStatement stmt) {
+      try {
+         stmt.close();
+      }catch (SQLException e) {
+         // ignored.
+      }//end try
+   }//end closeQuietly
+
+}//end StatementCache
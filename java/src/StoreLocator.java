@@ -0,0 +1,470 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+/**
+ * This class keeps the Store table in memory as an immutable snapshot,
+ * indexed by state and city with the best reviewed stores first, so a
+ * search by place, opening and review score reads only the stores of the
+ * place and stops at the first one scoring too low. Changes of other
+ * processes arrive through the store_changed notification raised by the
+ * trigger in triggers.sql; only the stores named are read again, and the
+ * next snapshot shares every index list they are not in.
+ *
+ */
+public class StoreLocator {
+
+   // channel notified by the Store trigger.
+   public static final String CHANNEL = "store_changed";
+
+   // longest wait for a notification before the listener checks for close().
+   public static final long POLL_MILLIS =
+      Long.getLong("pizzastore.stores.pollMillis", 1000L);
+
+   // stores shown by one search.
+   public static final int DEFAULT_LIMIT =
+      Integer.getInteger("pizzastore.stores.limit", 10);
+
+   private static final String COLUMNS =
+      "SELECT storeID, address, city, state, isOpen, reviewScore FROM Store";
+
+   private static final String LOAD_QUERY = COLUMNS;
+
+   private static final String ROWS_QUERY =
+      COLUMNS + " WHERE storeID = ANY (string_to_array(?::text, ',')::integer[])";
+
+   private final PizzaStore _esql;
+   private final ConnectionPool _pool;
+
+   // null until the first read, and again after an invalidation.
+   private final AtomicReference<Snapshot> _snapshot = new AtomicReference<Snapshot>();
+
+   // bumped by every change, so a load that raced with one is dropped.
+   private final AtomicLong _generation = new AtomicLong();
+
+   private Thread _listener = null;
+   private volatile boolean _closed = false;
+
+   /**
+    * Creates a new, empty locator. Nothing is read until it is first used.
+    *
+    * @param esql the data layer the stores are read through
+    * @param pool the pool the listener connection is opened from
+    */
+   public StoreLocator(PizzaStore esql, ConnectionPool pool) {
+      this._esql = esql;
+      this._pool = pool;
+   }//end StoreLocator
+
+   /**
+    * Returns the current snapshot, reading the Store table when there is none.
+    *
+    * @return the current snapshot
+    * @throws java.sql.SQLException when the stores could not be read
+    */
+   public Snapshot snapshot() throws SQLException {
+      Snapshot snapshot = this._snapshot.get();
+      if (snapshot != null) {
+         return snapshot;
+      }//end if
+      startListener();
+      long generation = this._generation.get();
+      snapshot = new Snapshot(read(LOAD_QUERY));
+      if (this._generation.get() == generation && this._snapshot.compareAndSet(null, snapshot)
+          && this._generation.get() != generation) {
+         // a change was applied meanwhile to no snapshot; read it next time
+         this._snapshot.compareAndSet(snapshot, null);
+      }//end if
+      return snapshot;
+   }//end snapshot
+
+   /**
+    * Finds the best reviewed stores matching a search.
+    *
+    * @param city the city, any when null or blank; case is ignored
+    * @param state the state, any when null or blank; case is ignored
+    * @param openOnly whether to skip the closed stores
+    * @param minScore the lowest review score, 0 for any
+    * @param limit the most stores returned
+    * @return the stores, best reviewed first
+    * @throws java.sql.SQLException when the stores could not be read
+    */
+   public List<Store> search(String city, String state, boolean openOnly, double minScore, int limit)
+         throws SQLException {
+      return snapshot().search(city, state, openOnly, minScore, limit);
+   }//end search
+
+   /**
+    * Drops the current snapshot; the next read loads a new one.
+    */
+   public void invalidate() {
+      this._generation.incrementAndGet();
+      this._snapshot.set(null);
+   }//end invalidate
+
+   /**
+    * Stops listening for store changes.
+    */
+   public synchronized void close() {
+      this._closed = true;
+      if (this._listener != null) {
+         this._listener.interrupt();
+      }//end if
+   }//end close
+
+   private List<Store> read(String query, Object... params) throws SQLException {
+      List<List<String>> rows = this._esql.executeQueryAndReturnResult(query, params);
+      List<Store> stores = new ArrayList<Store>(rows.size());
+      for (List<String> row : rows) {
+         String score = row.get(5);
+         stores.add(new Store(Integer.parseInt(row.get(0).trim()), row.get(1), row.get(2), row.get(3),
+                              row.get(4), score == null ? null : Double.valueOf(score.trim())));
+      }//end for
+      return stores;
+   }//end read
+
+   /*
+    * Reads the notified stores again and swaps in a snapshot that differs
+    * from the current one in those stores only. An empty payload, sent on
+    * TRUNCATE, drops the snapshot.
+    **/
+   private void apply(List<String> payloads) throws SQLException {
+      StringBuilder storeIDs = new StringBuilder();
+      for (String payload : payloads) {
+         if (payload.isEmpty()) {
+            invalidate();
+            return;
+         }//end if
+         if (storeIDs.length() > 0) {
+            storeIDs.append(',');
+         }//end if
+         storeIDs.append(payload);
+      }//end for
+      this._generation.incrementAndGet();
+      Snapshot current = this._snapshot.get();
+      if (current == null) {
+         return;
+      }//end if
+      Map<Integer, Store> changed = new HashMap<Integer, Store>();
+      for (String id : storeIDs.toString().split(",")) {
+         changed.put(Integer.valueOf(id.trim()), null);
+      }//end for
+      for (Store store : read(ROWS_QUERY, storeIDs.toString())) {
+         changed.put(store.getStoreID(), store);
+      }//end for
+      Snapshot next = current;
+      for (Map.Entry<Integer, Store> entry : changed.entrySet()) {
+         next = next.with(entry.getKey(), entry.getValue());
+      }//end for
+      if (!this._snapshot.compareAndSet(current, next)) {
+         invalidate();
+      }//end if
+   }//end apply
+
+   private synchronized void startListener() {
+      if (this._listener != null || this._closed || this._pool == null) {
+         return;
+      }//end if
+      this._listener = new Thread(new Runnable() {
+         public void run() { listen(); }
+      }, "store-locator-listener");
+      this._listener.setDaemon(true);
+      this._listener.start();
+   }//end startListener
+
+   /*
+    * Holds a dedicated connection that LISTENs on the store channel and
+    * applies the stores named by each batch of notifications. The snapshot
+    * is dropped once LISTEN is in place, since a change made before it may
+    * have been missed, and again whenever the connection fails.
+    **/
+   private void listen() {
+      while (!this._closed) {
+         Connection conn = null;
+         try {
+            conn = this._pool.openDedicated();
+            Statement stmt = conn.createStatement();
+            stmt.execute("LISTEN " + CHANNEL);
+            invalidate();
+            while (!this._closed) {
+               PGNotification[] notifications =
+                  conn.unwrap(PGConnection.class).getNotifications((int) POLL_MILLIS);
+               if (notifications != null && notifications.length > 0) {
+                  List<String> payloads = new ArrayList<String>(notifications.length);
+                  for (PGNotification notification : notifications) {
+                     payloads.add(notification.getParameter());
+                  }//end for
+                  apply(payloads);
+               }//end if
+            }//end while
+         }catch (SQLException e) {
+            invalidate();
+            try {
+               Thread.sleep(POLL_MILLIS * 5);
+            }catch (InterruptedException ie) {
+               return;
+            }//end try
+         }finally {
+            if (conn != null) {
+               try {
+                  conn.close();
+               }catch (SQLException e) {
+                  // ignored.
+               }//end try
+            }//end if
+         }//end try
+      }//end while
+   }//end listen
+
+   // trimmed and lower case, so searches ignore case and padding.
+   static String key(String text) {
+      return text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+   }//end key
+
+   /**
+    * One row of the Store table.
+    */
+   public static class Store {
+
+      private final int _storeID;
+      private final String _address;
+      private final String _city;
+      private final String _state;
+      private final String _isOpen;
+      private final Double _reviewScore;
+
+      public Store(int storeID, String address, String city, String state, String isOpen, Double reviewScore) {
+         this._storeID = storeID;
+         this._address = address;
+         this._city = city;
+         this._state = state;
+         this._isOpen = isOpen;
+         this._reviewScore = reviewScore;
+      }//end Store
+
+      public int getStoreID() { return this._storeID; }
+      public String getAddress() { return this._address; }
+      public String getCity() { return this._city; }
+      public String getState() { return this._state; }
+      public String getIsOpen() { return this._isOpen; }
+      public Double getReviewScore() { return this._reviewScore; }
+
+      // isOpen holds "yes" or "no".
+      public boolean isOpen() { return "yes".equals(key(this._isOpen)); }
+
+   }//end Store
+
+   /**
+    * All stores at one point in time. Never modified after it is built.
+    */
+   public static class Snapshot {
+
+      // best reviewed first, unreviewed last, then by storeID.
+      private static final Comparator<Store> BEST_FIRST = new Comparator<Store>() {
+         public int compare(Store a, Store b) {
+            Double x = a.getReviewScore(), y = b.getReviewScore();
+            if (x == null || y == null) {
+               if (x != y) {
+                  return x == null ? 1 : -1;
+               }//end if
+            }else {
+               int cmp = Double.compare(y, x);
+               if (cmp != 0) {
+                  return cmp;
+               }//end if
+            }//end if
+            return Integer.compare(a.getStoreID(), b.getStoreID());
+         }
+      };
+
+      private final Map<Integer, Store> _byID;
+      // keyed by key(state) + '\n' + key(city).
+      private final Map<String, List<Store>> _byPlace;
+      private final Map<String, List<Store>> _byCity;
+      private final Map<String, List<Store>> _byState;
+      private final List<Store> _all;
+
+      Snapshot(List<Store> stores) {
+         List<Store> all = new ArrayList<Store>(stores);
+         Collections.sort(all, BEST_FIRST);
+         Map<Integer, Store> byID = new HashMap<Integer, Store>();
+         Map<String, List<Store>> byPlace = new HashMap<String, List<Store>>();
+         Map<String, List<Store>> byCity = new HashMap<String, List<Store>>();
+         Map<String, List<Store>> byState = new HashMap<String, List<Store>>();
+         // appended best first, so every list is sorted already
+         for (Store store : all) {
+            byID.put(store.getStoreID(), store);
+            append(byPlace, place(store), store);
+            append(byCity, key(store.getCity()), store);
+            append(byState, key(store.getState()), store);
+         }//end for
+         freeze(byPlace);
+         freeze(byCity);
+         freeze(byState);
+         this._byID = byID;
+         this._byPlace = byPlace;
+         this._byCity = byCity;
+         this._byState = byState;
+         this._all = Collections.unmodifiableList(all);
+      }//end Snapshot
+
+      private Snapshot(Map<Integer, Store> byID, Map<String, List<Store>> byPlace,
+                       Map<String, List<Store>> byCity, Map<String, List<Store>> byState, List<Store> all) {
+         this._byID = byID;
+         this._byPlace = byPlace;
+         this._byCity = byCity;
+         this._byState = byState;
+         this._all = all;
+      }//end Snapshot
+
+      // the store with that ID, or null.
+      public Store store(int storeID) { return this._byID.get(storeID); }
+
+      public int size() { return this._all.size(); }
+
+      /**
+       * Finds the best reviewed stores matching a search; see
+       * StoreLocator.search.
+       */
+      public List<Store> search(String city, String state, boolean openOnly, double minScore, int limit) {
+         String cityKey = key(city), stateKey = key(state);
+         List<Store> candidates;
+         if (!cityKey.isEmpty() && !stateKey.isEmpty()) {
+            candidates = this._byPlace.get(stateKey + '\n' + cityKey);
+         }else if (!cityKey.isEmpty()) {
+            candidates = this._byCity.get(cityKey);
+         }else if (!stateKey.isEmpty()) {
+            candidates = this._byState.get(stateKey);
+         }else {
+            candidates = this._all;
+         }//end if
+         List<Store> found = new ArrayList<Store>(Math.max(0, Math.min(limit, 16)));
+         if (candidates == null) {
+            return found;
+         }//end if
+         for (Store store : candidates) {
+            if (found.size() >= limit) {
+               break;
+            }//end if
+            if (minScore > 0 && (store.getReviewScore() == null || store.getReviewScore() < minScore)) {
+               // every store after this one scores lower still
+               break;
+            }//end if
+            if (!openOnly || store.isOpen()) {
+               found.add(store);
+            }//end if
+         }//end for
+         return found;
+      }//end search
+
+      /*
+       * A snapshot in which the store with that ID is replaced, or removed
+       * when it is null. Only the index lists holding the old or the new
+       * row are copied.
+       **/
+      Snapshot with(int storeID, Store store) {
+         Store old = this._byID.get(storeID);
+         if (old == null && store == null) {
+            return this;
+         }//end if
+         Map<Integer, Store> byID = new HashMap<Integer, Store>(this._byID);
+         if (store == null) {
+            byID.remove(storeID);
+         }else {
+            byID.put(storeID, store);
+         }//end if
+         Map<String, List<Store>> byPlace = new HashMap<String, List<Store>>(this._byPlace);
+         Map<String, List<Store>> byCity = new HashMap<String, List<Store>>(this._byCity);
+         Map<String, List<Store>> byState = new HashMap<String, List<Store>>(this._byState);
+         if (old != null) {
+            remove(byPlace, place(old), old);
+            remove(byCity, key(old.getCity()), old);
+            remove(byState, key(old.getState()), old);
+         }//end if
+         if (store != null) {
+            insert(byPlace, place(store), store);
+            insert(byCity, key(store.getCity()), store);
+            insert(byState, key(store.getState()), store);
+         }//end if
+         List<Store> all = old == null ? this._all : without(this._all, old);
+         if (store != null) {
+            all = inserted(all, store);
+         }//end if
+         return new Snapshot(byID, byPlace, byCity, byState, all);
+      }//end with
+
+      private static String place(Store store) {
+         return key(store.getState()) + '\n' + key(store.getCity());
+      }//end place
+
+      private static void append(Map<String, List<Store>> index, String key, Store store) {
+         List<Store> stores = index.get(key);
+         if (stores == null) {
+            stores = new ArrayList<Store>();
+            index.put(key, stores);
+         }//end if
+         stores.add(store);
+      }//end append
+
+      private static void freeze(Map<String, List<Store>> index) {
+         for (Map.Entry<String, List<Store>> entry : index.entrySet()) {
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+         }//end for
+      }//end freeze
+
+      private static void remove(Map<String, List<Store>> index, String key, Store store) {
+         List<Store> stores = without(index.get(key), store);
+         if (stores.isEmpty()) {
+            index.remove(key);
+         }else {
+            index.put(key, stores);
+         }//end if
+      }//end remove
+
+      private static void insert(Map<String, List<Store>> index, String key, Store store) {
+         List<Store> stores = index.get(key);
+         index.put(key, inserted(stores == null ? Collections.<Store>emptyList() : stores, store));
+      }//end insert
+
+      private static List<Store> without(List<Store> stores, Store store) {
+         List<Store> copy = new ArrayList<Store>(stores);
+         copy.remove(store);
+         return Collections.unmodifiableList(copy);
+      }//end without
+
+      private static List<Store> inserted(List<Store> stores, Store store) {
+         List<Store> copy = new ArrayList<Store>(stores.size() + 1);
+         copy.addAll(stores);
+         int at = Collections.binarySearch(copy, store, BEST_FIRST);
+         copy.add(at < 0 ? -at - 1 : at, store);
+         return Collections.unmodifiableList(copy);
+      }//end inserted
+
+   }//end Snapshot
+
+}//end StoreLocator
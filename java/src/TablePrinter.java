@@ -0,0 +1,256 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.sql.SQLException;
+
+/**
+ * This class renders query results as text. Rows are collected a page at a
+ * time into one reused buffer and written with a single flush per page,
+ * instead of one console write per cell. The header is printed once.
+ *
+ */
+public class TablePrinter implements Row.Handler {
+
+   /**
+    * Output layouts.
+    * ALIGNED pads every column to the widest value of the first page,
+    * TSV follows every value with a tab (the original layout),
+    * CSV quotes values as RFC 4180 requires.
+    */
+   public enum Format { ALIGNED, TSV, CSV }
+
+   // rows rendered per flush.
+   public static final int DEFAULT_PAGE_SIZE =
+      Integer.getInteger("pizzastore.print.pageSize", 100);
+
+   // layout used by PizzaStore.executeQueryAndPrintResult.
+   public static final Format DEFAULT_FORMAT =
+      Format.valueOf(System.getProperty("pizzastore.print.format", "ALIGNED").toUpperCase());
+
+   private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+   private final Writer _out;
+   private final Format _format;
+   private final int _pageSize;
+
+   // reused for every page.
+   private final StringBuilder _buffer = new StringBuilder(8192);
+   private char[] _chunk = new char[8192];
+
+   private String[] _header = null;
+   private String[][] _page = null;
+   private int[] _widths = null;
+   private int _pageRows = 0;
+   private long _rowCount = 0;
+   private boolean _headerPrinted = false;
+
+   /**
+    * Creates a new printer
+    *
+    * @param out where the rendered pages are written; it is flushed, not closed
+    * @param format the output layout
+    * @param pageSize the number of rows rendered per flush
+    */
+   public TablePrinter(OutputStream out, Format format, int pageSize) {
+      if (pageSize < 1) {
+         throw new IllegalArgumentException("pageSize must be positive: " + pageSize);
+      }//end if
+      this._out = new OutputStreamWriter(out);
+      this._format = format;
+      this._pageSize = pageSize;
+   }//end TablePrinter
+
+   /**
+    * Adds the current row of a streamed query, taking the header from its
+    * metadata the first time.
+    */
+   public void handle(Row row) throws SQLException {
+      if (this._header == null) {
+         String[] header = new String[row.getColumnCount()];
+         for (int i = 0; i < header.length; ++i) {
+            header[i] = row.getColumnName(i + 1);
+         }//end for
+         setHeader(header);
+      }//end if
+      String[] cells = this._page[this._pageRows];
+      for (int i = 0; i < cells.length; ++i) {
+         cells[i] = row.getString(i + 1);
+      }//end for
+      endRow();
+   }//end handle
+
+   /**
+    * Sets the column names; must be called before the first add.
+    */
+   public void setHeader(String... header) {
+      this._header = header.clone();
+      this._page = new String[this._pageSize][header.length];
+   }//end setHeader
+
+   /**
+    * Adds one row of values.
+    */
+   public void add(String... values) {
+      System.arraycopy(values, 0, this._page[this._pageRows], 0, this._header.length);
+      endRow();
+   }//end add
+
+   /**
+    * Writes out the last, partial page.
+    *
+    * @return the number of rows printed
+    */
+   public long finish() {
+      if (this._pageRows > 0) {
+         flushPage();
+      }//end if
+      return this._rowCount;
+   }//end finish
+
+   public long getRowCount() { return this._rowCount; }
+
+   private void endRow() {
+      this._pageRows++;
+      this._rowCount++;
+      if (this._pageRows == this._pageSize) {
+         flushPage();
+      }//end if
+   }//end endRow
+
+   private void flushPage() {
+      StringBuilder sb = this._buffer;
+      sb.setLength(0);
+      if (!this._headerPrinted) {
+         if (this._format == Format.ALIGNED) {
+            computeWidths();
+         }//end if
+         appendRow(sb, this._header);
+         if (this._format == Format.ALIGNED) {
+            for (int i = 0; i < this._widths.length; ++i) {
+               pad(sb, '-', this._widths[i]);
+               sb.append(i + 1 < this._widths.length ? "  " : "");
+            }//end for
+            sb.append(LINE_SEPARATOR);
+         }//end if
+         this._headerPrinted = true;
+      }//end if
+      for (int r = 0; r < this._pageRows; ++r) {
+         appendRow(sb, this._page[r]);
+      }//end for
+      this._pageRows = 0;
+      write(sb);
+   }//end flushPage
+
+   /*
+    * Column widths come from the header and the first page; later values
+    * that are wider simply push the rest of their line to the right.
+    **/
+   private void computeWidths() {
+      this._widths = new int[this._header.length];
+      for (int i = 0; i < this._header.length; ++i) {
+         this._widths[i] = this._header[i].length();
+         for (int r = 0; r < this._pageRows; ++r) {
+            this._widths[i] = Math.max(this._widths[i], displayLength(this._page[r][i]));
+         }//end for
+      }//end for
+   }//end computeWidths
+
+   private void appendRow(StringBuilder sb, String[] cells) {
+      switch (this._format) {
+         case TSV:
+            for (String cell : cells) {
+               sb.append(cell).append('\t');
+            }//end for
+            break;
+         case CSV:
+            for (int i = 0; i < cells.length; ++i) {
+               if (i > 0) {
+                  sb.append(',');
+               }//end if
+               appendCsv(sb, cells[i]);
+            }//end for
+            break;
+         default:
+            for (int i = 0; i < cells.length; ++i) {
+               String cell = cells[i] == null ? "null" : cells[i];
+               int length = displayLength(cell);
+               sb.append(cell, 0, length);
+               if (i + 1 < cells.length) {
+                  pad(sb, ' ', this._widths[i] - length + 2);
+               }//end if
+            }//end for
+            break;
+      }//end switch
+      sb.append(LINE_SEPARATOR);
+   }//end appendRow
+
+   private static void appendCsv(StringBuilder sb, String cell) {
+      if (cell == null) {
+         return;
+      }//end if
+      boolean quote = false;
+      for (int i = 0; i < cell.length() && !quote; ++i) {
+         char c = cell.charAt(i);
+         quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+      }//end for
+      if (!quote) {
+         sb.append(cell);
+         return;
+      }//end if
+      sb.append('"');
+      for (int i = 0; i < cell.length(); ++i) {
+         char c = cell.charAt(i);
+         if (c == '"') {
+            sb.append('"');
+         }//end if
+         sb.append(c);
+      }//end for
+      sb.append('"');
+   }//end appendCsv
+
+   // length without the trailing blanks Postgres pads char(n) columns with.
+   private static int displayLength(String cell) {
+      if (cell == null) {
+         return 4;
+      }//end if
+      int length = cell.length();
+      while (length > 0 && cell.charAt(length - 1) == ' ') {
+         length--;
+      }//end while
+      return length;
+   }//end displayLength
+
+   private static void pad(StringBuilder sb, char c, int count) {
+      for (int i = 0; i < count; ++i) {
+         sb.append(c);
+      }//end for
+   }//end pad
+
+   private void write(StringBuilder sb) {
+      if (this._chunk.length < sb.length()) {
+         this._chunk = new char[Math.max(sb.length(), this._chunk.length * 2)];
+      }//end if
+      sb.getChars(0, sb.length(), this._chunk, 0);
+      try {
+         this._out.write(this._chunk, 0, sb.length());
+         this._out.flush();
+      }catch (IOException e) {
+         // the terminal went away; nothing left to print to.
+      }//end try
+   }//end write
+
+}//end TablePrinter
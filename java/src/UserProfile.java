@@ -0,0 +1,135 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * This class holds the Users row of a logged in user. It is read once at
+ * LogIn, by the query whose password hash is checked, and kept in the
+ * Session so the menus check permissions without going back to the
+ * database. The favorite items of a user are read from FavoriteItems when
+ * shown.
+ *
+ */
+public class UserProfile {
+
+   public static final String CUSTOMER = "customer";
+   public static final String DRIVER = "driver";
+   public static final String MANAGER = "manager";
+
+   // width of Users.password, enough for a hash of Credentials.
+   public static final int PASSWORD_LENGTH = 128;
+
+   private static final String COLUMNS =
+      "SELECT login, password, phoneNum, role FROM Users ";
+
+   private static final String BY_LOGIN = COLUMNS + "WHERE login = ?";
+
+   private static final String SET_PASSWORD = "UPDATE Users SET password = ? WHERE login = ?";
+
+   // replaces an outdated hash unless the password changed meanwhile.
+   private static final String REHASH = "UPDATE Users SET password = ? WHERE login = ? AND password = ?";
+
+   private final String _login;
+   private final String _password;
+   private final String _phoneNum;
+   private final String _role;
+
+   public UserProfile(String login, String password, String phoneNum, String role) {
+      this._login = login;
+      this._password = password;
+      this._phoneNum = phoneNum;
+      // role is a char(20), padded with blanks
+      this._role = role == null ? "" : role.trim();
+   }//end UserProfile
+
+   /**
+    * Reads the profile of a user.
+    *
+    * @return the profile, or null when there is no such login
+    */
+   public static UserProfile find(PizzaStore esql, String login) throws SQLException {
+      return first(esql.executeQueryAndReturnResult(BY_LOGIN, login));
+   }//end find
+
+   /**
+    * Reads the profile of a user if the password matches. An unknown login
+    * takes as long as a wrong password, and every attempt counts against
+    * the login's rate limit. A plain or outdated stored password is
+    * replaced with a current hash once it has matched.
+    *
+    * @return the profile, or null when the login or the password is wrong
+    * @throws LoginRateLimiter.Throttled when the login has no attempts left
+    * @throws Credentials.Busy when too many logins are being verified
+    */
+   public static UserProfile authenticate(PizzaStore esql, String login, String password)
+         throws SQLException, LoginRateLimiter.Throttled, Credentials.Busy {
+      esql.getLoginLimiter().acquire(login);
+      Credentials credentials = esql.getCredentials();
+      UserProfile profile = find(esql, login);
+      if (!credentials.verify(password, profile == null ? null : profile.getPassword())) {
+         return null;
+      }//end if
+      esql.getLoginLimiter().reset(login);
+      if (credentials.needsRehash(profile.getPassword())) {
+         String hash = credentials.hashOnPool(password);
+         try {
+            if (esql.executeUpdate(REHASH, hash, login, profile.getPassword()) == 1) {
+               profile = new UserProfile(profile._login, hash, profile._phoneNum, profile._role);
+            }//end if
+         }catch (SQLException e) {
+            // Users.password is still too narrow (see Credentials.main); try again next time
+         }//end try
+      }//end if
+      return profile;
+   }//end authenticate
+
+   /**
+    * Stores a new password of a user, hashed.
+    *
+    * @return the number of users changed
+    * @throws Credentials.Busy when too many logins are being verified
+    */
+   public static int changePassword(PizzaStore esql, String login, String password)
+         throws SQLException, Credentials.Busy {
+      return esql.executeUpdate(SET_PASSWORD, esql.getCredentials().hashOnPool(password), login);
+   }//end changePassword
+
+   private static UserProfile first(List<List<String>> rows) {
+      if (rows.isEmpty()) {
+         return null;
+      }//end if
+      List<String> row = rows.get(0);
+      return new UserProfile(row.get(0), row.get(1), row.get(2), row.get(3));
+   }//end first
+
+   public String getLogin() { return this._login; }
+   public String getPassword() { return this._password; }
+   public String getPhoneNum() { return this._phoneNum; }
+   public String getRole() { return this._role; }
+
+   public boolean isCustomer() { return CUSTOMER.equals(this._role); }
+   public boolean isDriver() { return DRIVER.equals(this._role); }
+   public boolean isManager() { return MANAGER.equals(this._role); }
+
+   // drivers and managers may change the status of any order.
+   public boolean canUpdateOrderStatus() { return isDriver() || isManager(); }
+
+   // only managers may change the menu and other users.
+   public boolean canUpdateMenu() { return isManager(); }
+   public boolean canUpdateUsers() { return isManager(); }
+   public boolean canViewSales() { return isManager(); }
+   public boolean canViewMetrics() { return isManager(); }
+
+}//end UserProfile
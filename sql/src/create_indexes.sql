@@ -1,9 +1,54 @@
-DROP INDEX loginIndex;
+DROP INDEX IF EXISTS loginIndex;
 
 CREATE INDEX loginIndex 
 ON Users(login);
 
-DROP INDEX foodOrderIndex;
+DROP INDEX IF EXISTS foodOrderIndex;
 
 CREATE INDEX foodOrderIndex
-ON FoodOrder(login);
\ No newline at end of file
+ON FoodOrder(login);
+
+DROP INDEX IF EXISTS foodOrderHistoryIndex;
+
+-- Keyset pagination of a login's order history (OrderHistoryPager):
+-- every page is one range scan of this index. The recent orders query
+-- (ORDER BY orderTimestamp DESC LIMIT n for one login) is the same first
+-- page, read by a backward scan, so it needs no index of its own.
+CREATE INDEX foodOrderHistoryIndex
+ON FoodOrder(login, orderTimestamp, orderID);
+
+DROP INDEX IF EXISTS foodOrderStoreStatusIndex;
+
+-- The open orders of one store (OrderBoard): an equality on storeID and a
+-- short IN list of the open statuses, read as a few range scans.
+CREATE INDEX foodOrderStoreStatusIndex
+ON FoodOrder(storeID, orderStatus);
+
+DROP INDEX IF EXISTS storeLocationIndex;
+
+-- The store search of StoreLocator run in SQL: the stores of a state and
+-- city, best reviewed first, ignoring case like the in-memory index.
+CREATE INDEX storeLocationIndex
+ON Store(lower(state), lower(city), reviewScore DESC);
+
+DROP INDEX IF EXISTS storeDailySalesDayIndex;
+
+-- The last days of every store (SalesAnalytics.TOP_STORES). The counters
+-- of the rollups are left unindexed, so adding an order to a rollup row
+-- rewrites it in place (a HOT update) without touching any index.
+CREATE INDEX storeDailySalesDayIndex
+ON StoreDailySales(day);
+
+DROP INDEX IF EXISTS itemsInOrderItemIndex;
+
+-- The lines of one item: taking an item off the menu deletes its lines
+-- (ON DELETE CASCADE) without scanning the whole order history.
+CREATE INDEX itemsInOrderItemIndex
+ON ItemsInOrder(itemID);
+
+DROP INDEX IF EXISTS favoriteItemsItemIndex;
+
+-- The users who favor an item (FavoriteItems.FAVORED_BY), answered from
+-- the index alone; the primary key serves the favorites of a user.
+CREATE INDEX favoriteItemsItemIndex
+ON FavoriteItems(itemID, login);
@@ -3,21 +3,46 @@ DROP TABLE IF EXISTS Items CASCADE;
 DROP TABLE IF EXISTS FoodOrder CASCADE;
 DROP TABLE IF EXISTS Store CASCADE;
 DROP TABLE IF EXISTS ItemsInOrder CASCADE;
+DROP TABLE IF EXISTS FavoriteItems;
+DROP TABLE IF EXISTS StoreHourlySales;
+DROP TABLE IF EXISTS StoreDailySales;
+DROP TABLE IF EXISTS ItemSales;
+DROP TABLE IF EXISTS CustomerSales;
+DROP SEQUENCE IF EXISTS itemID_seq;
 
 CREATE TABLE Users ( login varchar(50) NOT NULL,
-                     password varchar(30) NOT NULL,
+                     password varchar(128) NOT NULL,
                      role char(20) NOT NULL,
-                     favoriteItems text,
+                     favoriteItems text, --as loaded, see FavoriteItems
                      phoneNum varchar(20) NOT NULL,
                      PRIMARY KEY(login)
 );
 
-CREATE TABLE Items ( itemName varchar(50) NOT NULL,
+-- Items are keyed by itemID, so renaming an item rewrites its own row
+-- and none of the order history (see migrate_item_ids.sql).
+CREATE SEQUENCE itemID_seq;
+
+CREATE TABLE Items ( itemID integer NOT NULL DEFAULT nextval('itemID_seq'),
+                       itemName varchar(50) NOT NULL,
                        ingredients varchar(300) NOT NULL,
                        typeOfItem varchar(30) NOT NULL,
                        price decimal(10,2) NOT NULL,
                        description text,
-                       PRIMARY KEY(itemName)
+                       PRIMARY KEY(itemID),
+                       UNIQUE(itemName)
+);
+
+ALTER SEQUENCE itemID_seq OWNED BY Items.itemID;
+
+-- The favorite items of each user, imported from Users.favoriteItems when
+-- loaded (see FavoriteItems and migrate_favorites.sql).
+CREATE TABLE FavoriteItems ( login varchar(50) NOT NULL,
+                             itemID integer NOT NULL,
+                             PRIMARY KEY(login, itemID),
+                             FOREIGN KEY(login) REFERENCES Users(login)
+                             ON DELETE CASCADE ON UPDATE CASCADE,
+                             FOREIGN KEY(itemID) REFERENCES Items(itemID)
+                             ON DELETE CASCADE
 );
 
 CREATE TABLE Store ( storeID integer NOT NULL,
@@ -45,11 +70,41 @@ CREATE TABLE FoodOrder ( orderID integer NOT NULL,
 
 
 CREATE TABLE ItemsInOrder ( orderID integer NOT NULL,
-                           itemName varchar(50) NOT NULL,
+                           itemID integer NOT NULL,
                            quantity integer NOT NULL,
-                           PRIMARY KEY(orderID, itemName),
+                           PRIMARY KEY(orderID, itemID),
                            FOREIGN KEY(orderID) REFERENCES FoodOrder(orderID) ON DELETE CASCADE,
-                           FOREIGN KEY(itemName) REFERENCES Items(itemName)
+                           FOREIGN KEY(itemID) REFERENCES Items(itemID)
                            ON DELETE CASCADE
 );
 
+
+-- Sales rollups (see SalesAnalytics): every committed order is added to
+-- them, SalesAnalytics rebuilds them from the history after a bulk load.
+CREATE TABLE StoreHourlySales ( storeID integer NOT NULL,
+                                hour timestamp NOT NULL,
+                                orders integer NOT NULL,
+                                revenue decimal(12,2) NOT NULL,
+                                PRIMARY KEY(storeID, hour)
+);
+
+CREATE TABLE StoreDailySales ( storeID integer NOT NULL,
+                               day date NOT NULL,
+                               orders integer NOT NULL,
+                               revenue decimal(12,2) NOT NULL,
+                               PRIMARY KEY(storeID, day)
+);
+
+CREATE TABLE ItemSales ( itemID integer NOT NULL,
+                         units bigint NOT NULL,
+                         revenue decimal(14,2) NOT NULL,
+                         orders bigint NOT NULL,
+                         PRIMARY KEY(itemID)
+);
+
+CREATE TABLE CustomerSales ( login varchar(50) NOT NULL,
+                             orders integer NOT NULL,
+                             spent decimal(12,2) NOT NULL,
+                             lastOrder timestamp NOT NULL,
+                             PRIMARY KEY(login)
+);
@@ -1,12 +1,22 @@
 /* Replace the location to where you saved the data files*/
+/* When the server cannot read those files, use the BulkLoader of the java
+   program instead (see java/scripts/compile.sh) */
 COPY Users
 FROM '/home/csmajs/tsaka013/project/data/users.csv'
 WITH DELIMITER ',' CSV HEADER;
 
-COPY Items
+/* Items take their itemID from itemID_seq */
+COPY Items (itemName, ingredients, typeOfItem, price, description)
 FROM '/home/csmajs/tsaka013/project/data/items.csv'
 WITH DELIMITER ',' CSV HEADER;
 
+/* The favoriteItems text of the users, as FavoriteItems rows */
+INSERT INTO FavoriteItems (login, itemID)
+SELECT DISTINCT U.login, I.itemID
+FROM Users U CROSS JOIN LATERAL regexp_split_to_table(U.favoriteItems, ',') AS N(itemName)
+JOIN Items I ON lower(I.itemName) = lower(btrim(N.itemName))
+ON CONFLICT DO NOTHING;
+
 COPY Store
 FROM '/home/csmajs/tsaka013/project/data/store.csv'
 WITH DELIMITER ',' CSV HEADER;
@@ -15,6 +25,15 @@ COPY FoodOrder
 FROM '/home/csmajs/tsaka013/project/data/foodorder.csv'
 WITH DELIMITER ',' CSV HEADER;
 
-COPY ItemsInOrder
+/* The file names the items; their itemIDs are looked up once loaded */
+CREATE TEMP TABLE ItemsInOrderLoad ( orderID integer, itemName varchar(50), quantity integer );
+
+COPY ItemsInOrderLoad
 FROM '/home/csmajs/tsaka013/project/data/itemsinorder.csv'
 WITH DELIMITER ',' CSV HEADER;
+
+INSERT INTO ItemsInOrder (orderID, itemID, quantity)
+SELECT L.orderID, I.itemID, L.quantity
+FROM ItemsInOrderLoad L LEFT JOIN Items I ON I.itemName = L.itemName;
+
+DROP TABLE ItemsInOrderLoad;
@@ -0,0 +1,26 @@
+/* Adds FavoriteItems to a database created before it and imports the
+   favoriteItems text of every user into it, in one transaction. Favorites
+   already imported are kept, so it can run again. */
+BEGIN;
+
+CREATE TABLE IF NOT EXISTS FavoriteItems ( login varchar(50) NOT NULL,
+                                           itemID integer NOT NULL,
+                                           PRIMARY KEY(login, itemID),
+                                           FOREIGN KEY(login) REFERENCES Users(login)
+                                           ON DELETE CASCADE ON UPDATE CASCADE,
+                                           FOREIGN KEY(itemID) REFERENCES Items(itemID)
+                                           ON DELETE CASCADE
+);
+
+CREATE INDEX IF NOT EXISTS favoriteItemsItemIndex
+ON FavoriteItems(itemID, login);
+
+INSERT INTO FavoriteItems (login, itemID)
+SELECT DISTINCT U.login, I.itemID
+FROM Users U CROSS JOIN LATERAL regexp_split_to_table(U.favoriteItems, ',') AS N(itemName)
+JOIN Items I ON lower(I.itemName) = lower(btrim(N.itemName))
+ON CONFLICT DO NOTHING;
+
+ANALYZE FavoriteItems;
+
+COMMIT;
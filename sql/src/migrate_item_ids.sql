@@ -0,0 +1,67 @@
+/* Moves a database created before Items had an itemID to the schema of
+   create_tables.sql: Items get an itemID, in itemName order, and
+   ItemsInOrder and ItemSales refer to it. Everything runs in one
+   transaction; run once, it fails without changing anything when the
+   database already has itemID_seq. */
+BEGIN;
+
+CREATE SEQUENCE itemID_seq;
+
+ALTER TABLE Items ADD COLUMN itemID integer;
+
+UPDATE Items SET itemID = N.itemID
+FROM (SELECT itemName, row_number() OVER (ORDER BY itemName) AS itemID FROM Items) N
+WHERE N.itemName = Items.itemName;
+
+SELECT setval('itemID_seq', max(itemID)) FROM Items;
+
+ALTER TABLE Items ALTER COLUMN itemID SET DEFAULT nextval('itemID_seq'),
+                  ALTER COLUMN itemID SET NOT NULL;
+
+ALTER SEQUENCE itemID_seq OWNED BY Items.itemID;
+
+/* The lines are written once into a new table, rather than updated in
+   place, which would leave a dead copy of every row behind. */
+CREATE TABLE ItemsInOrderNew ( orderID integer NOT NULL,
+                               itemID integer NOT NULL,
+                               quantity integer NOT NULL
+);
+
+INSERT INTO ItemsInOrderNew (orderID, itemID, quantity)
+SELECT O.orderID, I.itemID, O.quantity
+FROM ItemsInOrder O JOIN Items I ON I.itemName = O.itemName;
+
+DROP TABLE ItemsInOrder;
+
+ALTER TABLE ItemsInOrderNew RENAME TO ItemsInOrder;
+
+ALTER TABLE Items DROP CONSTRAINT items_pkey;
+
+ALTER TABLE Items ADD PRIMARY KEY(itemID),
+                  ADD UNIQUE(itemName);
+
+ALTER TABLE ItemsInOrder ADD PRIMARY KEY(orderID, itemID),
+                         ADD FOREIGN KEY(orderID) REFERENCES FoodOrder(orderID) ON DELETE CASCADE,
+                         ADD FOREIGN KEY(itemID) REFERENCES Items(itemID) ON DELETE CASCADE;
+
+CREATE INDEX itemsInOrderItemIndex
+ON ItemsInOrder(itemID);
+
+/* The item rollup of SalesAnalytics is counted per itemID */
+DROP TABLE IF EXISTS ItemSales;
+
+CREATE TABLE ItemSales ( itemID integer NOT NULL,
+                         units bigint NOT NULL,
+                         revenue decimal(14,2) NOT NULL,
+                         orders bigint NOT NULL,
+                         PRIMARY KEY(itemID)
+);
+
+INSERT INTO ItemSales (itemID, units, revenue, orders)
+SELECT O.itemID, sum(O.quantity), sum(O.quantity * I.price), count(*)
+FROM ItemsInOrder O JOIN Items I ON I.itemID = O.itemID GROUP BY O.itemID;
+
+ANALYZE Items;
+ANALYZE ItemsInOrder;
+
+COMMIT;
@@ -14,3 +14,100 @@ DROP TRIGGER IF EXISTS mytrigger ON FoodOrder;
 CREATE TRIGGER mytrigger BEFORE INSERT ON FoodOrder
 FOR EACH ROW
 EXECUTE PROCEDURE myfun();
+
+-- Tells every PizzaStore process that the menu changed (see MenuCatalog).
+CREATE OR REPLACE FUNCTION notify_menu_changed() RETURNS trigger AS $notify_menu_changed$
+BEGIN
+    NOTIFY menu_changed;
+    RETURN NULL;
+    END;
+$notify_menu_changed$ LANGUAGE plpgsql VOLATILE;
+
+DROP TRIGGER IF EXISTS menu_changed_trigger ON Items;
+
+CREATE TRIGGER menu_changed_trigger AFTER INSERT OR UPDATE OR DELETE ON Items
+FOR EACH STATEMENT
+EXECUTE PROCEDURE notify_menu_changed();
+
+-- Tells every PizzaStore process which orders joined, changed on or left
+-- the open order board (see OrderBoard). One statement sends its orderIDs
+-- in notifications of at most 500, so a bulk load or a batch of status
+-- changes does not send one per row; the board reads the rows itself.
+CREATE OR REPLACE FUNCTION notify_orders(ids integer[]) RETURNS void AS $notify_orders$
+DECLARE
+    part text;
+BEGIN
+    FOR part IN
+        SELECT string_agg(I.id::text, ',')
+        FROM unnest(ids) WITH ORDINALITY AS I(id, n)
+        GROUP BY (I.n - 1) / 500
+    LOOP
+        PERFORM pg_notify('orders_changed', part);
+    END LOOP;
+    END;
+$notify_orders$ LANGUAGE plpgsql VOLATILE;
+
+CREATE OR REPLACE FUNCTION notify_orders_changed() RETURNS trigger AS $notify_orders_changed$
+BEGIN
+    IF TG_OP = 'INSERT' THEN
+        PERFORM notify_orders(ARRAY(SELECT orderID FROM new_orders
+                                    WHERE trim(orderStatus) IS DISTINCT FROM 'complete'));
+    ELSIF TG_OP = 'UPDATE' THEN
+        PERFORM notify_orders(ARRAY(SELECT N.orderID FROM new_orders N JOIN old_orders O ON O.orderID = N.orderID
+                                    WHERE N.orderStatus IS DISTINCT FROM O.orderStatus
+                                       OR N.storeID <> O.storeID));
+    ELSE
+        PERFORM notify_orders(ARRAY(SELECT orderID FROM old_orders
+                                    WHERE trim(orderStatus) IS DISTINCT FROM 'complete'));
+    END IF;
+    RETURN NULL;
+    END;
+$notify_orders_changed$ LANGUAGE plpgsql VOLATILE;
+
+DROP TRIGGER IF EXISTS orders_inserted_trigger ON FoodOrder;
+DROP TRIGGER IF EXISTS orders_updated_trigger ON FoodOrder;
+DROP TRIGGER IF EXISTS orders_deleted_trigger ON FoodOrder;
+
+CREATE TRIGGER orders_inserted_trigger AFTER INSERT ON FoodOrder
+REFERENCING NEW TABLE AS new_orders
+FOR EACH STATEMENT
+EXECUTE PROCEDURE notify_orders_changed();
+
+CREATE TRIGGER orders_updated_trigger AFTER UPDATE ON FoodOrder
+REFERENCING OLD TABLE AS old_orders NEW TABLE AS new_orders
+FOR EACH STATEMENT
+EXECUTE PROCEDURE notify_orders_changed();
+
+CREATE TRIGGER orders_deleted_trigger AFTER DELETE ON FoodOrder
+REFERENCING OLD TABLE AS old_orders
+FOR EACH STATEMENT
+EXECUTE PROCEDURE notify_orders_changed();
+
+-- Tells every PizzaStore process which stores changed (see StoreLocator);
+-- an empty payload, sent on TRUNCATE, means all of them.
+CREATE OR REPLACE FUNCTION notify_store_changed() RETURNS trigger AS $notify_store_changed$
+BEGIN
+    IF TG_OP = 'TRUNCATE' THEN
+        PERFORM pg_notify('store_changed', '');
+    ELSIF TG_OP = 'INSERT' THEN
+        PERFORM pg_notify('store_changed', NEW.storeID::text);
+    ELSIF TG_OP = 'DELETE' OR NEW.storeID <> OLD.storeID THEN
+        PERFORM pg_notify('store_changed', OLD.storeID::text);
+    END IF;
+    IF TG_OP = 'UPDATE' THEN
+        PERFORM pg_notify('store_changed', NEW.storeID::text);
+    END IF;
+    RETURN NULL;
+    END;
+$notify_store_changed$ LANGUAGE plpgsql VOLATILE;
+
+DROP TRIGGER IF EXISTS store_changed_trigger ON Store;
+DROP TRIGGER IF EXISTS store_truncated_trigger ON Store;
+
+CREATE TRIGGER store_changed_trigger AFTER INSERT OR UPDATE OR DELETE ON Store
+FOR EACH ROW
+EXECUTE PROCEDURE notify_store_changed();
+
+CREATE TRIGGER store_truncated_trigger AFTER TRUNCATE ON Store
+FOR EACH STATEMENT
+EXECUTE PROCEDURE notify_store_changed();